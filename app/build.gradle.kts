@@ -40,9 +40,25 @@ android {
     buildFeatures {
         viewBinding = true
     }
+
+    testOptions {
+        // JVM tests run the engine over in-memory fakes; stubbed android.util.Log returns 0
+        unitTests.isReturnDefaultValues = true
+
+        // ./gradlew :app:testDebugUnitTest --tests '*ScanTraceReplayRunner' -PscanTrace=scan.trace
+        unitTests.all { test ->
+            findProperty("scanTrace")?.let {
+                test.systemProperty("scanTrace", file(it).absolutePath)
+                test.testLogging.showStandardStreams = true
+            }
+        }
+    }
 }
 
 dependencies {
+    // Android-free detection core (models, scoring, identity, parsing)
+    implementation(project(":core"))
+
     // AndroidX Core
     implementation("androidx.core:core-ktx:1.12.0")
     implementation("androidx.appcompat:appcompat:1.6.1")
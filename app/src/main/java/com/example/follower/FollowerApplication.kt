@@ -2,6 +2,7 @@ package com.example.follower
 
 import android.app.Application
 import android.content.Context
+import android.util.Log
 import androidx.appcompat.app.AppCompatDelegate
 import androidx.datastore.core.DataStore
 import androidx.datastore.preferences.core.Preferences
@@ -9,6 +10,7 @@ import androidx.datastore.preferences.preferencesDataStore
 import com.example.follower.data.database.FollowerDatabase
 import com.example.follower.data.repository.DeviceRepository
 import com.example.follower.detection.CalibrationManager
+import com.example.follower.detection.DetectionLog
 import com.example.follower.detection.SuspicionSettings
 
 private val Context.settingsDataStore: DataStore<Preferences> by preferencesDataStore(name = "settings")
@@ -25,6 +27,7 @@ class FollowerApplication : Application() {
     override fun onCreate() {
         super.onCreate()
         instance = this
+        DetectionLog.sink = DetectionLog.Sink { priority, tag, message -> Log.println(priority, tag, message) }
         applyTheme(suspicionSettings.themeMode)
     }
 
@@ -1,9 +1,24 @@
 package com.example.follower.data.database
 
+import android.database.Cursor
 import androidx.room.*
 import com.example.follower.data.model.*
+import com.example.follower.detection.ScoreDecay
 import kotlinx.coroutines.flow.Flow
 
+/** `threatScore` decayed to the bound `:now`; see [ScoreDecay]. */
+private const val DECAYED_SCORE = "(threatScore * ${ScoreDecay.SQL_MODIFIER})"
+
+/** SQLite's default bound-variable limit is 999; stay well under it. */
+private const val MAX_BIND_ARGS = 500
+
+/** The columns only the user changes, read back so batched writes never overwrite them. */
+data class DeviceUserFlags(
+    val macAddress: String,
+    val isWhitelisted: Boolean,
+    val isFlagged: Boolean
+)
+
 @Dao
 interface DeviceDao {
 
@@ -27,11 +42,13 @@ interface DeviceDao {
     @Query("SELECT * FROM detected_devices ORDER BY lastSeenTimestamp DESC LIMIT :limit")
     suspend fun getRecentDevices(limit: Int): List<DetectedDevice>
 
-    @Query("SELECT * FROM detected_devices WHERE threatScore >= :minScore ORDER BY threatScore DESC")
-    fun getSuspiciousDevicesFlow(minScore: Float): Flow<List<DetectedDevice>>
+    // Stored scores are undecayed; score filters and ordering decay them to :now
+
+    @Query("SELECT * FROM detected_devices WHERE $DECAYED_SCORE >= :minScore ORDER BY $DECAYED_SCORE DESC")
+    fun getSuspiciousDevicesFlow(minScore: Float, now: Long): Flow<List<DetectedDevice>>
 
-    @Query("SELECT * FROM detected_devices WHERE isWhitelisted = 0 AND threatScore >= :threshold ORDER BY threatScore DESC")
-    suspend fun getThreateningDevices(threshold: Float): List<DetectedDevice>
+    @Query("SELECT * FROM detected_devices WHERE isWhitelisted = 0 AND $DECAYED_SCORE >= :threshold ORDER BY $DECAYED_SCORE DESC")
+    suspend fun getThreateningDevices(threshold: Float, now: Long): List<DetectedDevice>
 
     @Query("SELECT * FROM detected_devices WHERE lastSeenTimestamp >= :since")
     suspend fun getDevicesSeenSince(since: Long): List<DetectedDevice>
@@ -39,8 +56,8 @@ interface DeviceDao {
     @Query("SELECT * FROM detected_devices WHERE lastSeenTimestamp >= :since ORDER BY lastSeenTimestamp DESC")
     fun getNearbyDevicesFlow(since: Long): Flow<List<DetectedDevice>>
 
-    @Query("SELECT * FROM detected_devices WHERE threatScore >= :minScore AND lastSeenTimestamp >= :since ORDER BY threatScore DESC")
-    fun getSuspiciousDevicesDetailedFlow(minScore: Float, since: Long): Flow<List<DetectedDevice>>
+    @Query("SELECT * FROM detected_devices WHERE $DECAYED_SCORE >= :minScore AND lastSeenTimestamp >= :since ORDER BY $DECAYED_SCORE DESC")
+    fun getSuspiciousDevicesDetailedFlow(minScore: Float, since: Long, now: Long): Flow<List<DetectedDevice>>
 
     @Query("UPDATE detected_devices SET isWhitelisted = :whitelisted WHERE macAddress = :macAddress")
     suspend fun setWhitelisted(macAddress: String, whitelisted: Boolean)
@@ -48,14 +65,27 @@ interface DeviceDao {
     @Query("UPDATE detected_devices SET isFlagged = :flagged WHERE macAddress = :macAddress")
     suspend fun setFlagged(macAddress: String, flagged: Boolean)
 
+    @Query("SELECT macAddress, isWhitelisted, isFlagged FROM detected_devices WHERE macAddress IN (:macAddresses)")
+    suspend fun getUserFlags(macAddresses: List<String>): List<DeviceUserFlags>
+
     @Query("DELETE FROM detected_devices WHERE lastSeenTimestamp < :before AND isWhitelisted = 0 AND isFlagged = 0")
     suspend fun deleteOldDevices(before: Long): Int
 
+    /**
+     * Bulk upsert.  Unlike [insertDevice]'s REPLACE strategy this updates the
+     * existing row in place, so the CASCADE on device_sightings never fires.
+     */
+    @Upsert
+    suspend fun upsertDevices(devices: List<DetectedDevice>)
+
     // ==================== DeviceSighting Operations ====================
 
     @Insert
     suspend fun insertSighting(sighting: DeviceSighting): Long
 
+    @Insert
+    suspend fun insertSightings(sightings: List<DeviceSighting>)
+
     @Query("SELECT * FROM device_sightings WHERE deviceMacAddress = :macAddress ORDER BY timestamp DESC")
     suspend fun getSightingsForDevice(macAddress: String): List<DeviceSighting>
 
@@ -66,16 +96,34 @@ interface DeviceDao {
     suspend fun getAllSightingsSince(since: Long): List<DeviceSighting>
 
     /**
-     * Approximate distinct location count using ~500m grid cells.
-     * Multiplier 200 ≈ 1 / 0.005° ≈ 500m at mid-latitudes, consistent with the
-     * location clustering threshold used by [SuspicionCalculator].
+     * Scoring columns only, oldest first, as a raw cursor so the rows can be
+     * copied straight into a [com.example.follower.detection.SightingWindow]
+     * without materialising entities.  Blocking; the caller must close it.
+     */
+    @Query("""
+        SELECT timestamp, latitude, longitude, rssi FROM device_sightings
+        WHERE deviceMacAddress = :macAddress AND timestamp >= :since
+        ORDER BY timestamp ASC
+    """)
+    fun getScoringColumnsForDevice(macAddress: String, since: Long): Cursor
+
+    /**
+     * Scoring columns for every device, grouped by device and oldest first
+     * within each, for bulk rescoring.  Blocking; the caller must close it.
      */
     @Query("""
-        SELECT COUNT(DISTINCT
-            CAST((latitude * 200) AS INTEGER) || '_' || CAST((longitude * 200) AS INTEGER)
-        ) FROM device_sightings
-        WHERE deviceMacAddress = :macAddress
+        SELECT deviceMacAddress, timestamp, latitude, longitude, rssi FROM device_sightings
+        WHERE timestamp >= :since
+        ORDER BY deviceMacAddress, timestamp ASC
     """)
+    fun getScoringColumnsSince(since: Long): Cursor
+
+    /**
+     * Approximate distinct location count: the device's ~500m
+     * [com.example.follower.detection.GeoCell]s, consistent with the
+     * location clustering threshold used by [SuspicionCalculator].
+     */
+    @Query("SELECT COUNT(*) FROM device_cells WHERE deviceMacAddress = :macAddress")
     suspend fun getDistinctLocationCountForDevice(macAddress: String): Int
 
     /** Count of unique devices seen since a given timestamp. */
@@ -85,6 +133,178 @@ interface DeviceDao {
     @Query("DELETE FROM device_sightings WHERE timestamp < :before")
     suspend fun deleteOldSightings(before: Long): Int
 
+    // ==================== Encounter Operations ====================
+
+    /** Insert new encounters and rewrite open ones in place (keyed by device and start). */
+    @Upsert
+    suspend fun upsertEncounters(encounters: List<Encounter>)
+
+    @Query("SELECT * FROM encounters WHERE deviceMacAddress = :macAddress ORDER BY startTimestamp DESC LIMIT 1")
+    suspend fun getLatestEncounter(macAddress: String): Encounter?
+
+    /** Encounters that were still going at or after [since], oldest first. */
+    @Query("SELECT * FROM encounters WHERE deviceMacAddress = :macAddress AND endTimestamp >= :since ORDER BY startTimestamp ASC")
+    suspend fun getEncountersSince(macAddress: String, since: Long): List<Encounter>
+
+    /** Every device's encounters still going at or after [since], by device, oldest first. */
+    @Query("SELECT * FROM encounters WHERE endTimestamp >= :since ORDER BY deviceMacAddress, startTimestamp ASC")
+    suspend fun getAllEncountersSince(since: Long): List<Encounter>
+
+    @Query("DELETE FROM encounters WHERE endTimestamp < :before")
+    suspend fun deleteOldEncounters(before: Long): Int
+
+    // ==================== DeviceCell Operations ====================
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    suspend fun upsertDeviceCells(cells: List<DeviceCell>)
+
+    /** Stored cells among the cross product of [macAddresses] and [cellIds]. */
+    @Query("SELECT * FROM device_cells WHERE deviceMacAddress IN (:macAddresses) AND cellId IN (:cellIds)")
+    suspend fun getDeviceCells(macAddresses: List<String>, cellIds: List<Long>): List<DeviceCell>
+
+    @Query("SELECT cellId FROM device_cells WHERE deviceMacAddress = :macAddress")
+    suspend fun getCellIdsForDevice(macAddress: String): List<Long>
+
+    @Query("DELETE FROM device_cells WHERE lastSeenTimestamp < :before")
+    suspend fun deleteOldDeviceCells(before: Long): Int
+
+    // ==================== Rollup Operations ====================
+
+    /** Start of the newest bucket at [resolution], or null if there is none yet. */
+    @Query("SELECT MAX(bucketStart) FROM sighting_rollups WHERE resolution = :resolution")
+    suspend fun getLatestRollupBucket(resolution: RollupResolution): Long?
+
+    /** Aggregate raw sightings in [from, to) into [resolution] buckets per device and geocell. */
+    @Query("""
+        INSERT OR IGNORE INTO sighting_rollups (
+            deviceMacAddress, resolution, bucketStart, geocell, sightingCount,
+            rssiSum, rssiSumSquares, rssiMin, rssiMax,
+            latitudeSum, longitudeSum, firstTimestamp, lastTimestamp
+        )
+        SELECT deviceMacAddress, :resolution, (timestamp / :bucketMs) * :bucketMs,
+            geocell, COUNT(*),
+            SUM(rssi), SUM(rssi * rssi), MIN(rssi), MAX(rssi),
+            SUM(latitude), SUM(longitude), MIN(timestamp), MAX(timestamp)
+        FROM device_sightings
+        WHERE timestamp >= :from AND timestamp < :to
+        GROUP BY deviceMacAddress, timestamp / :bucketMs, geocell
+    """)
+    suspend fun insertSightingRollups(resolution: RollupResolution, bucketMs: Long, from: Long, to: Long)
+
+    /** Merge [source] rollups with bucketStart in [from, to) into coarser [target] buckets. */
+    @Query("""
+        INSERT OR IGNORE INTO sighting_rollups (
+            deviceMacAddress, resolution, bucketStart, geocell, sightingCount,
+            rssiSum, rssiSumSquares, rssiMin, rssiMax,
+            latitudeSum, longitudeSum, firstTimestamp, lastTimestamp
+        )
+        SELECT deviceMacAddress, :target, (bucketStart / :bucketMs) * :bucketMs,
+            geocell, SUM(sightingCount),
+            SUM(rssiSum), SUM(rssiSumSquares), MIN(rssiMin), MAX(rssiMax),
+            SUM(latitudeSum), SUM(longitudeSum), MIN(firstTimestamp), MAX(lastTimestamp)
+        FROM sighting_rollups
+        WHERE resolution = :source AND bucketStart >= :from AND bucketStart < :to
+        GROUP BY deviceMacAddress, bucketStart / :bucketMs, geocell
+    """)
+    suspend fun insertRollupRollups(
+        source: RollupResolution,
+        target: RollupResolution,
+        bucketMs: Long,
+        from: Long,
+        to: Long
+    )
+
+    /**
+     * Roll every level forward up to [upTo]: raw sightings into complete
+     * minutes, complete minutes into hours, complete hours into days.  Each
+     * level resumes after its newest bucket, so rerunning is harmless.
+     */
+    @Transaction
+    suspend fun rollUpSightings(upTo: Long) {
+        var sourceEnd = upTo
+        var source: RollupResolution? = null
+        for (target in RollupResolution.values()) {
+            val end = sourceEnd / target.bucketMs * target.bucketMs
+            val from = getLatestRollupBucket(target)?.plus(target.bucketMs) ?: 0L
+            if (end > from) {
+                if (source == null) insertSightingRollups(target, target.bucketMs, from, end)
+                else insertRollupRollups(source, target, target.bucketMs, from, end)
+            }
+            sourceEnd = end
+            source = target
+        }
+    }
+
+    @Query("""
+        SELECT * FROM sighting_rollups
+        WHERE deviceMacAddress = :macAddress AND resolution = :resolution AND bucketStart >= :since
+    """)
+    suspend fun getRollupsForDevice(macAddress: String, resolution: RollupResolution, since: Long): List<SightingRollup>
+
+    @Query("DELETE FROM sighting_rollups WHERE resolution = :resolution AND bucketStart < :before")
+    suspend fun deleteOldRollups(resolution: RollupResolution, before: Long): Int
+
+    // ==================== Batched Writes ====================
+
+    /**
+     * Write a buffered batch of device upserts, sighting inserts, encounter
+     * upserts and device cells in a single transaction.  Devices go first so
+     * every child row's parent exists when the foreign key is checked.
+     * Cells are merged with any stored row (earliest first-seen, latest
+     * last-seen) and written by one REPLACE statement, rather than an
+     * UPDATE per cell.
+     *
+     * Whitelist / flag are written straight to the table by
+     * [setWhitelisted] / [setFlagged], so for rows that already exist the
+     * stored values win over whatever the buffered copy carries: a device
+     * buffered before the user acted on it cannot undo that action.
+     */
+    @Transaction
+    suspend fun writeBatch(
+        devices: List<DetectedDevice>,
+        sightings: List<DeviceSighting>,
+        encounters: List<Encounter>,
+        cells: List<DeviceCell>
+    ) {
+        if (devices.isNotEmpty()) {
+            val stored = HashMap<String, DeviceUserFlags>()
+            for (chunk in devices.chunked(MAX_BIND_ARGS)) {
+                for (flags in getUserFlags(chunk.map { it.macAddress })) stored[flags.macAddress] = flags
+            }
+            upsertDevices(devices.map { device ->
+                val flags = stored[device.macAddress]
+                if (flags == null ||
+                    (flags.isWhitelisted == device.isWhitelisted && flags.isFlagged == device.isFlagged)
+                ) {
+                    device
+                } else {
+                    device.copy(isWhitelisted = flags.isWhitelisted, isFlagged = flags.isFlagged)
+                }
+            })
+        }
+        if (sightings.isNotEmpty()) insertSightings(sightings)
+        if (encounters.isNotEmpty()) upsertEncounters(encounters)
+        if (cells.isNotEmpty()) {
+            val stored = HashMap<Pair<String, Long>, DeviceCell>()
+            for (chunk in cells.chunked(MAX_BIND_ARGS / 2)) {
+                val macs = chunk.mapTo(HashSet()) { it.deviceMacAddress }.toList()
+                val cellIds = chunk.mapTo(HashSet()) { it.cellId }.toList()
+                for (c in getDeviceCells(macs, cellIds)) stored[c.deviceMacAddress to c.cellId] = c
+            }
+            upsertDeviceCells(cells.map { cell ->
+                val existing = stored[cell.deviceMacAddress to cell.cellId]
+                if (existing == null) {
+                    cell
+                } else {
+                    cell.copy(
+                        firstSeenTimestamp = minOf(existing.firstSeenTimestamp, cell.firstSeenTimestamp),
+                        lastSeenTimestamp = maxOf(existing.lastSeenTimestamp, cell.lastSeenTimestamp)
+                    )
+                }
+            })
+        }
+    }
+
     // ==================== LocationCluster Operations ====================
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
@@ -129,8 +349,8 @@ interface DeviceDao {
     @Query("SELECT COUNT(*) FROM detected_devices")
     suspend fun getTotalDeviceCount(): Int
 
-    @Query("SELECT COUNT(*) FROM detected_devices WHERE threatScore >= 31")
-    suspend fun getSuspiciousDeviceCount(): Int
+    @Query("SELECT COUNT(*) FROM detected_devices WHERE $DECAYED_SCORE >= 31")
+    suspend fun getSuspiciousDeviceCount(now: Long): Int
 
     @Query("SELECT COUNT(*) FROM device_sightings WHERE timestamp >= :since")
     suspend fun getSightingCountSince(since: Long): Int
@@ -11,10 +11,13 @@ import com.example.follower.data.model.*
     entities = [
         DetectedDevice::class,
         DeviceSighting::class,
+        DeviceCell::class,
+        Encounter::class,
+        SightingRollup::class,
         LocationCluster::class,
         ThreatAlert::class
     ],
-    version = 1,
+    version = 7,
     exportSchema = true
 )
 @TypeConverters(Converters::class)
@@ -60,4 +63,10 @@ class Converters {
 
     @androidx.room.TypeConverter
     fun toAlertAction(value: String): AlertAction = AlertAction.valueOf(value)
+
+    @androidx.room.TypeConverter
+    fun fromRollupResolution(value: RollupResolution): String = value.name
+
+    @androidx.room.TypeConverter
+    fun toRollupResolution(value: String): RollupResolution = RollupResolution.valueOf(value)
 }
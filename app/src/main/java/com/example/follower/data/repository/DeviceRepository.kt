@@ -1,30 +1,101 @@
 package com.example.follower.data.repository
 
+import android.database.CharArrayBuffer
 import com.example.follower.data.database.DeviceDao
 import com.example.follower.data.model.*
+import com.example.follower.detection.Clock
+import com.example.follower.detection.ScoreDecay
+import com.example.follower.detection.SightingWindow
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.withContext
+import java.util.concurrent.CopyOnWriteArrayList
 
 /**
  * Repository for managing device data.
  * Abstracts data operations from the rest of the app.
+ *
+ * Single device lookups go through a [DeviceStateCache]; Room is only
+ * queried on a miss.  Because the repository is an application-wide
+ * singleton, user actions from the UI (whitelist / flag) update the same
+ * cache the detection engine reads from.
+ *
+ * Retention cutoffs and "recent" windows are measured against [clock], so a
+ * simulation can run the repository on virtual time.
  */
-class DeviceRepository(private val deviceDao: DeviceDao) {
+class DeviceRepository(
+    private val deviceDao: DeviceDao,
+    private val clock: Clock = Clock.SYSTEM
+) {
+    companion object {
+        /** Fits "AA:BB:CC:DD:EE:FF"; longer resolved IDs grow the buffer once. */
+        private const val MAC_BUFFER_CHARS = 17
+
+        private fun CharArrayBuffer.contentEquals(s: String): Boolean {
+            if (sizeCopied != s.length) return false
+            for (i in 0 until sizeCopied) {
+                if (data[i] != s[i]) return false
+            }
+            return true
+        }
+    }
+
+    val deviceCache = DeviceStateCache()
+
+    /** Distinct devices over the last few minutes, fed by the detection engine. */
+    val recentDeviceCounter = SlidingDistinctCounter()
+
+    /** Running write-behind buffers, whose pending rows user edits must reach too. */
+    private val writeBuffers = CopyOnWriteArrayList<WriteBehindBuffer>()
+
+    fun attachWriteBuffer(buffer: WriteBehindBuffer) {
+        writeBuffers.addIfAbsent(buffer)
+    }
+
+    fun detachWriteBuffer(buffer: WriteBehindBuffer) {
+        writeBuffers.remove(buffer)
+    }
 
     // ==================== Device Operations ====================
 
     val allDevices: Flow<List<DetectedDevice>> = deviceDao.getAllDevicesFlow()
 
-    fun getSuspiciousDevices(minScore: Float = 0.25f): Flow<List<DetectedDevice>> =
-        deviceDao.getSuspiciousDevicesFlow(minScore)
-
-    suspend fun getDevice(macAddress: String): DetectedDevice? =
-        deviceDao.getDeviceByMac(macAddress)
+    /**
+     * Devices whose score, decayed to [now], is at least [minScore].  The
+     * decay is evaluated for [now] only; collectors that stay subscribed
+     * should re-query periodically so devices age out of the list.
+     */
+    fun getSuspiciousDevices(minScore: Float = 0.25f, now: Long = clock.now()): Flow<List<DetectedDevice>> =
+        deviceDao.getSuspiciousDevicesFlow(minScore, now)
+
+    /** A device with its threat score decayed to [now], as the DAO score queries see it. */
+    suspend fun getDevice(macAddress: String, now: Long = clock.now()): DetectedDevice? =
+        getStoredDevice(macAddress)?.let { ScoreDecay.decayed(it, now) }
+
+    /**
+     * A device as stored, score undecayed — for the detection engine, which
+     * writes it back.  Cache first, then Room.
+     */
+    suspend fun getStoredDevice(macAddress: String): DetectedDevice? =
+        deviceCache.get(macAddress)
+            ?: deviceDao.getDeviceByMac(macAddress)?.also { deviceCache.put(it) }
+
+    /** Cached state only, score undecayed — never touches Room. */
+    fun getCachedDevice(macAddress: String): DetectedDevice? = deviceCache.get(macAddress)
+
+    /**
+     * Update cached state without a database write.  Callers are responsible
+     * for persisting the device (see [WriteBehindBuffer]).
+     */
+    fun cacheDevice(device: DetectedDevice) {
+        deviceCache.put(device)
+    }
 
     suspend fun getRecentDevices(limit: Int = 100): List<DetectedDevice> =
         deviceDao.getRecentDevices(limit)
 
     suspend fun getThreateningDevices(threshold: Float = 0.5f): List<DetectedDevice> =
-        deviceDao.getThreateningDevices(threshold)
+        deviceDao.getThreateningDevices(threshold, clock.now())
 
     suspend fun getDevicesSeenSince(since: Long): List<DetectedDevice> =
         deviceDao.getDevicesSeenSince(since)
@@ -32,27 +103,48 @@ class DeviceRepository(private val deviceDao: DeviceDao) {
     fun getNearbyDevices(since: Long): Flow<List<DetectedDevice>> =
         deviceDao.getNearbyDevicesFlow(since)
 
-    fun getSuspiciousDevicesDetailed(minScore: Float, since: Long): Flow<List<DetectedDevice>> =
-        deviceDao.getSuspiciousDevicesDetailedFlow(minScore, since)
+    /** As [getSuspiciousDevices], restricted to devices seen since [since]. */
+    fun getSuspiciousDevicesDetailed(
+        minScore: Float,
+        since: Long,
+        now: Long = clock.now()
+    ): Flow<List<DetectedDevice>> =
+        deviceDao.getSuspiciousDevicesDetailedFlow(minScore, since, now)
 
     suspend fun insertOrUpdateDevice(device: DetectedDevice) {
+        deviceCache.put(device)
         deviceDao.insertDevice(device)
     }
 
     suspend fun updateDevice(device: DetectedDevice) {
+        deviceCache.put(device)
         deviceDao.updateDevice(device)
     }
 
     suspend fun whitelistDevice(macAddress: String, whitelist: Boolean = true) {
+        applyUserEdit(macAddress) { it.copy(isWhitelisted = whitelist) }
         deviceDao.setWhitelisted(macAddress, whitelist)
     }
 
     suspend fun flagDevice(macAddress: String, flag: Boolean = true) {
+        applyUserEdit(macAddress) { it.copy(isFlagged = flag) }
         deviceDao.setFlagged(macAddress, flag)
     }
 
+    /**
+     * Apply a user edit to the cached copy and to any copy still waiting in a
+     * write buffer, so neither can later be written back over it.  Running
+     * buffers apply it under their own lock, so it cannot interleave with a
+     * device they are buffering.
+     */
+    private fun applyUserEdit(macAddress: String, transform: (DetectedDevice) -> DetectedDevice) {
+        if (writeBuffers.isEmpty()) deviceCache.update(macAddress, transform)
+        for (buffer in writeBuffers) buffer.applyUserEdit(macAddress, transform)
+    }
+
     suspend fun deleteOldDevices(olderThanMs: Long): Int {
-        val cutoff = System.currentTimeMillis() - olderThanMs
+        val cutoff = clock.now() - olderThanMs
+        deviceCache.removeOlderThan(cutoff)
         return deviceDao.deleteOldDevices(cutoff)
     }
 
@@ -65,21 +157,126 @@ class DeviceRepository(private val deviceDao: DeviceDao) {
         deviceDao.getSightingsForDevice(macAddress)
 
     suspend fun getRecentSightingsForDevice(macAddress: String, windowMs: Long): List<DeviceSighting> {
-        val since = System.currentTimeMillis() - windowMs
+        val since = clock.now() - windowMs
         return deviceDao.getRecentSightingsForDevice(macAddress, since)
     }
 
     suspend fun getAllSightingsSince(since: Long): List<DeviceSighting> =
         deviceDao.getAllSightingsSince(since)
 
+    /**
+     * Append the last [windowMs] of sightings for [macAddress] to [into],
+     * oldest first, reading primitive columns off the cursor.
+     */
+    suspend fun loadSightingWindow(macAddress: String, windowMs: Long, into: SightingWindow) {
+        val since = clock.now() - windowMs
+        withContext(Dispatchers.IO) {
+            deviceDao.getScoringColumnsForDevice(macAddress, since).use { c ->
+                while (c.moveToNext()) {
+                    into.add(c.getLong(0), c.getDouble(1), c.getDouble(2), c.getInt(3))
+                }
+            }
+        }
+    }
+
+    /**
+     * Every device's sightings since [since], one [SightingWindow] per MAC,
+     * from a single cursor scan.  MACs are compared in a reused char buffer,
+     * so a String is only created once per device rather than per row.
+     */
+    suspend fun loadSightingWindows(since: Long): Map<String, SightingWindow> =
+        withContext(Dispatchers.IO) {
+            val windows = HashMap<String, SightingWindow>()
+            val macBuffer = CharArrayBuffer(MAC_BUFFER_CHARS)
+            var currentMac = ""
+            var current: SightingWindow? = null
+            deviceDao.getScoringColumnsSince(since).use { c ->
+                while (c.moveToNext()) {
+                    c.copyStringToBuffer(0, macBuffer)
+                    var window = current
+                    if (window == null || !macBuffer.contentEquals(currentMac)) {
+                        currentMac = String(macBuffer.data, 0, macBuffer.sizeCopied)
+                        window = windows.getOrPut(currentMac) { SightingWindow() }
+                        current = window
+                    }
+                    window.add(c.getLong(1), c.getDouble(2), c.getDouble(3), c.getInt(4))
+                }
+            }
+            windows
+        }
+
     suspend fun getDistinctLocationCount(macAddress: String): Int =
         deviceDao.getDistinctLocationCountForDevice(macAddress)
 
     suspend fun deleteOldSightings(olderThanMs: Long): Int {
-        val cutoff = System.currentTimeMillis() - olderThanMs
+        val cutoff = clock.now() - olderThanMs
         return deviceDao.deleteOldSightings(cutoff)
     }
 
+    // ==================== DeviceCell Operations ====================
+
+    suspend fun getCellIdsForDevice(macAddress: String): List<Long> =
+        deviceDao.getCellIdsForDevice(macAddress)
+
+    suspend fun deleteOldDeviceCells(olderThanMs: Long): Int {
+        val cutoff = clock.now() - olderThanMs
+        return deviceDao.deleteOldDeviceCells(cutoff)
+    }
+
+    // ==================== Encounter Operations ====================
+
+    suspend fun getLatestEncounter(macAddress: String): Encounter? =
+        deviceDao.getLatestEncounter(macAddress)
+
+    suspend fun getEncountersSince(macAddress: String, since: Long): List<Encounter> =
+        deviceDao.getEncountersSince(macAddress, since)
+
+    /** Every device's encounters overlapping [since], oldest first, keyed by MAC. */
+    suspend fun loadEncountersSince(since: Long): Map<String, List<Encounter>> =
+        deviceDao.getAllEncountersSince(since).groupBy { it.deviceMacAddress }
+
+    suspend fun deleteOldEncounters(olderThanMs: Long): Int {
+        val cutoff = clock.now() - olderThanMs
+        return deviceDao.deleteOldEncounters(cutoff)
+    }
+
+    // ==================== Rollup Operations ====================
+
+    /** Roll raw sightings up to [upTo] into minute, hour and day buckets (see [SightingRollup]). */
+    suspend fun rollUpSightings(upTo: Long) = deviceDao.rollUpSightings(upTo)
+
+    /**
+     * A device's rollups since [since], each stretch of time at the coarsest
+     * level that covers it: days, then hours after the last rolled-up day,
+     * then minutes after the last rolled-up hour.
+     */
+    suspend fun getRollupsForDevice(macAddress: String, since: Long): List<SightingRollup> {
+        val out = ArrayList<SightingRollup>()
+        var from = since
+        for (resolution in RollupResolution.values().reversed()) {
+            out.addAll(deviceDao.getRollupsForDevice(macAddress, resolution, from))
+            val latest = deviceDao.getLatestRollupBucket(resolution) ?: continue
+            from = maxOf(from, latest + resolution.bucketMs)
+        }
+        return out
+    }
+
+    /** Drop rollups past each level's [RollupResolution.retentionMs]. */
+    suspend fun deleteOldRollups(): Int {
+        val now = clock.now()
+        return RollupResolution.values().sumOf { deviceDao.deleteOldRollups(it, now - it.retentionMs) }
+    }
+
+    // ==================== Batched Writes ====================
+
+    /** Persist a write-behind batch (see [WriteBehindBuffer]) in one transaction. */
+    suspend fun writeBatch(
+        devices: List<DetectedDevice>,
+        sightings: List<DeviceSighting>,
+        encounters: List<Encounter>,
+        cells: List<DeviceCell>
+    ) = deviceDao.writeBatch(devices, sightings, encounters, cells)
+
     // ==================== Cluster Operations ====================
 
     suspend fun findOrCreateCluster(latitude: Double, longitude: Double): LocationCluster {
@@ -87,7 +284,7 @@ class DeviceRepository(private val deviceDao: DeviceDao) {
         if (existing != null) {
             // Update visit count
             val updated = existing.copy(
-                lastVisitTimestamp = System.currentTimeMillis(),
+                lastVisitTimestamp = clock.now(),
                 visitCount = existing.visitCount + 1
             )
             deviceDao.insertCluster(updated)
@@ -98,8 +295,8 @@ class DeviceRepository(private val deviceDao: DeviceDao) {
         val newCluster = LocationCluster(
             centerLatitude = latitude,
             centerLongitude = longitude,
-            firstVisitTimestamp = System.currentTimeMillis(),
-            lastVisitTimestamp = System.currentTimeMillis()
+            firstVisitTimestamp = clock.now(),
+            lastVisitTimestamp = clock.now()
         )
         val id = deviceDao.insertCluster(newCluster)
         return newCluster.copy(id = id)
@@ -130,12 +327,23 @@ class DeviceRepository(private val deviceDao: DeviceDao) {
 
     suspend fun getTotalDeviceCount(): Int = deviceDao.getTotalDeviceCount()
 
-    suspend fun getSuspiciousDeviceCount(): Int = deviceDao.getSuspiciousDeviceCount()
+    suspend fun getSuspiciousDeviceCount(): Int = deviceDao.getSuspiciousDeviceCount(clock.now())
 
     suspend fun getSightingCountSince(since: Long): Int = deviceDao.getSightingCountSince(since)
 
     suspend fun getUnacknowledgedAlertCount(): Int = deviceDao.getUnacknowledgedAlertCount()
 
-    suspend fun getUniqueDeviceCountSince(since: Long): Int =
-        deviceDao.getUniqueDeviceCountSince(since)
+    /**
+     * Count of unique devices seen since [since].  Served from
+     * [recentDeviceCounter] in O(1) when the range is recent enough, otherwise
+     * by a COUNT(DISTINCT) over device_sightings.
+     */
+    suspend fun getUniqueDeviceCountSince(since: Long): Int {
+        val now = clock.now()
+        return if (recentDeviceCounter.covers(since, now)) {
+            recentDeviceCounter.estimateSince(since, now)
+        } else {
+            deviceDao.getUniqueDeviceCountSince(since)
+        }
+    }
 }
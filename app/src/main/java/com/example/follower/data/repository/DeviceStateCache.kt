@@ -0,0 +1,98 @@
+package com.example.follower.data.repository
+
+import com.example.follower.data.model.DetectedDevice
+import com.example.follower.detection.BoundedCache
+import com.example.follower.detection.CacheStats
+import com.example.follower.detection.ScoreDecay
+
+/**
+ * Bounded in-memory cache of [DetectedDevice] state for recently active devices.
+ *
+ * Owns the hot per-device fields the detection pipeline mutates on every
+ * accepted scan (detection count, last RSSI, first/last seen, threat score)
+ * so Room is only read on a miss.  Entries live in a [BoundedCache] weighed
+ * by estimated bytes; the least recently used are evicted once the byte
+ * budget is exceeded.
+ *
+ * Cached scores are stored undecayed, as the engine writes them back; [get]
+ * returns them as stored for the write path, [getDecayed] for readers.
+ *
+ * All operations are synchronised; none of them suspend or touch the database.
+ */
+class DeviceStateCache(maxBytes: Long = DEFAULT_MAX_BYTES) {
+    companion object {
+        /** About 5,000 entries at a typical estimate. */
+        const val DEFAULT_MAX_BYTES = 5_000L * 256
+
+        /** Rough fixed cost of a cached entry: object headers, boxed fields, map node. */
+        private const val ENTRY_OVERHEAD_BYTES = 200
+
+        private fun estimateBytes(device: DetectedDevice): Int =
+            ENTRY_OVERHEAD_BYTES + 2 * (
+                device.macAddress.length +
+                    (device.deviceName?.length ?: 0) +
+                    (device.probedSsids?.length ?: 0) +
+                    (device.metadata?.length ?: 0)
+                )
+    }
+
+    private val entries = BoundedCache<String, DetectedDevice>(maxBytes) { _, device -> estimateBytes(device) }
+
+    val size: Int get() = synchronized(this) { entries.size }
+
+    fun get(macAddress: String): DetectedDevice? = synchronized(this) { entries[macAddress] }
+
+    /** As [get], with the threat score decayed to [now] (see [ScoreDecay]). */
+    fun getDecayed(macAddress: String, now: Long): DetectedDevice? =
+        get(macAddress)?.let { ScoreDecay.decayed(it, now) }
+
+    /** Insert or replace the cached state for a device, evicting LRU entries if needed. */
+    fun put(device: DetectedDevice) = synchronized(this) {
+        entries[device.macAddress] = device
+    }
+
+    /**
+     * As [put], but keeping the whitelist / flag of the cached entry, or of
+     * [fallback] when none is cached.  Returns the device as cached.
+     */
+    fun putKeepingUserFlags(device: DetectedDevice, fallback: DetectedDevice?): DetectedDevice =
+        synchronized(this) {
+            val current = entries[device.macAddress] ?: fallback
+            val merged = if (current == null ||
+                (current.isWhitelisted == device.isWhitelisted && current.isFlagged == device.isFlagged)
+            ) {
+                device
+            } else {
+                device.copy(isWhitelisted = current.isWhitelisted, isFlagged = current.isFlagged)
+            }
+            entries[device.macAddress] = merged
+            merged
+        }
+
+    /**
+     * Apply [transform] to the cached entry for [macAddress], if present.
+     * Used to keep user actions (whitelist / flag) in step without a reload.
+     */
+    fun update(macAddress: String, transform: (DetectedDevice) -> DetectedDevice) =
+        synchronized(this) {
+            val current = entries[macAddress] ?: return@synchronized
+            entries[macAddress] = transform(current)
+        }
+
+    fun remove(macAddress: String) = synchronized(this) {
+        entries.remove(macAddress)
+    }
+
+    /** Drop entries last seen before [cutoff], mirroring the DAO retention rule. */
+    fun removeOlderThan(cutoff: Long) = synchronized(this) {
+        entries.removeAll { _, device ->
+            device.lastSeenTimestamp < cutoff && !device.isWhitelisted && !device.isFlagged
+        }
+    }
+
+    fun clear() = synchronized(this) {
+        entries.clear()
+    }
+
+    fun stats(): CacheStats = synchronized(this) { entries.stats() }
+}
@@ -0,0 +1,154 @@
+package com.example.follower.data.repository
+
+import kotlin.math.ln
+
+/**
+ * Approximate count of distinct IDs seen in a sliding time window, in
+ * constant time and fixed memory.
+ *
+ * Time is split into [bucketMs] buckets held in a ring of [bucketCount]
+ * HyperLogLog sketches (2^[precision] one-byte registers each).  [add] updates
+ * one register of the current bucket; [estimate] merges the registers of the
+ * buckets inside the window and applies the standard HLL estimator with
+ * linear counting for small cardinalities, so a handful of devices is counted
+ * (almost always) exactly.  Standard error is about 1.04 / sqrt(2^precision),
+ * ~4.6 % at the default precision.
+ *
+ * Memory is `bucketCount * 2^precision` bytes (5 KB by default) no matter how
+ * many devices are around.  The merged estimate is cached until the next
+ * [add] or bucket rotation, so repeated reads are O(1).
+ */
+class SlidingDistinctCounter(
+    private val bucketMs: Long = DEFAULT_BUCKET_MS,
+    private val bucketCount: Int = DEFAULT_BUCKET_COUNT,
+    private val precision: Int = DEFAULT_PRECISION
+) {
+    companion object {
+        const val DEFAULT_BUCKET_MS = 30_000L
+        const val DEFAULT_BUCKET_COUNT = 10 // 5-minute window
+        const val DEFAULT_PRECISION = 9     // 512 registers per bucket
+
+        /** 64-bit FNV-1a over the UTF-16 chars, finished with the MurmurHash3 fmix64 mixer. */
+        fun hash64(id: String): Long {
+            var h = -0x340d631b7bdddcdbL // FNV offset basis
+            for (ch in id) {
+                h = h xor ch.code.toLong()
+                h *= 0x100000001b3L
+            }
+            h = h xor (h ushr 33)
+            h *= -0xae502812aa7333L
+            h = h xor (h ushr 33)
+            h *= -0x3b314601e57a13adL
+            h = h xor (h ushr 33)
+            return h
+        }
+    }
+
+    private val registerCount = 1 shl precision
+    private val registers = Array(bucketCount) { ByteArray(registerCount) }
+
+    /** Bucket epoch (time / bucketMs) currently held by each ring slot; -1 = empty. */
+    private val slotEpoch = LongArray(bucketCount) { -1L }
+
+    private val merged = ByteArray(registerCount)
+    private var cachedEstimate = 0
+    private var cachedSinceEpoch = Long.MIN_VALUE
+    private var cachedNowEpoch = Long.MIN_VALUE
+    private var dirty = true
+
+    /** Timestamp of the first [add] since construction / [clear]; -1 = never fed. */
+    @Volatile
+    private var feedingSince = -1L
+
+    /** Window covered by the full ring. */
+    val windowMs: Long get() = bucketMs * bucketCount
+
+    @Synchronized
+    fun add(id: String, timestamp: Long) {
+        if (feedingSince < 0) feedingSince = timestamp
+        val epoch = timestamp / bucketMs
+        val slot = slotFor(epoch)
+        if (slotEpoch[slot] != epoch) {
+            if (slotEpoch[slot] > epoch) return // older than anything the ring still holds
+            registers[slot].fill(0)
+            slotEpoch[slot] = epoch
+        }
+
+        val hash = hash64(id)
+        val index = (hash ushr (64 - precision)).toInt()
+        val rank = (java.lang.Long.numberOfLeadingZeros(hash shl precision) + 1)
+            .coerceAtMost(64 - precision + 1)
+        val bucket = registers[slot]
+        if (rank > bucket[index]) {
+            bucket[index] = rank.toByte()
+            dirty = true
+        }
+    }
+
+    /** Estimated distinct IDs seen in the full window ending at [now]. */
+    fun estimate(now: Long): Int = estimateSince(now - windowMs + 1, now)
+
+    /**
+     * Estimated distinct IDs seen between [since] and [now], at bucket
+     * granularity.  [since] is clamped to the oldest bucket still held;
+     * check [covers] first if an exact range matters.
+     */
+    @Synchronized
+    fun estimateSince(since: Long, now: Long): Int {
+        val nowEpoch = now / bucketMs
+        val sinceEpoch = maxOf(since / bucketMs, nowEpoch - bucketCount + 1)
+        if (!dirty && sinceEpoch == cachedSinceEpoch && nowEpoch == cachedNowEpoch) {
+            return cachedEstimate
+        }
+
+        merged.fill(0)
+        for (slot in 0 until bucketCount) {
+            val epoch = slotEpoch[slot]
+            if (epoch < sinceEpoch || epoch > nowEpoch) continue
+            val bucket = registers[slot]
+            for (i in 0 until registerCount) {
+                if (bucket[i] > merged[i]) merged[i] = bucket[i]
+            }
+        }
+
+        cachedEstimate = hllEstimate(merged)
+        cachedSinceEpoch = sinceEpoch
+        cachedNowEpoch = nowEpoch
+        dirty = false
+        return cachedEstimate
+    }
+
+    /**
+     * True if the ring still holds every bucket between [since] and [now] and
+     * has been fed for that whole range (so an empty ring after a process
+     * restart is not mistaken for "no devices").
+     */
+    fun covers(since: Long, now: Long): Boolean =
+        now - since < windowMs && feedingSince in 0..since
+
+    @Synchronized
+    fun clear() {
+        for (r in registers) r.fill(0)
+        slotEpoch.fill(-1L)
+        feedingSince = -1L
+        dirty = true
+    }
+
+    // ---- Internals ------------------------------------------------------------------
+
+    private fun slotFor(epoch: Long): Int = (epoch % bucketCount).toInt()
+
+    private fun hllEstimate(regs: ByteArray): Int {
+        val m = registerCount.toDouble()
+        var sum = 0.0
+        var zeros = 0
+        for (r in regs) {
+            sum += 1.0 / (1L shl r.toInt())
+            if (r.toInt() == 0) zeros++
+        }
+        val alpha = 0.7213 / (1.0 + 1.079 / m)
+        val raw = alpha * m * m / sum
+        val estimate = if (raw <= 2.5 * m && zeros > 0) m * ln(m / zeros) else raw
+        return (estimate + 0.5).toInt()
+    }
+}
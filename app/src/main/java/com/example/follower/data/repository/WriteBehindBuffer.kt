@@ -0,0 +1,292 @@
+package com.example.follower.data.repository
+
+import android.util.Log
+import com.example.follower.data.model.DetectedDevice
+import com.example.follower.data.model.DeviceCell
+import com.example.follower.data.model.DeviceSighting
+import com.example.follower.data.model.Encounter
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+
+/**
+ * Write-behind stage between the detection engine and Room.
+ *
+ * Device upserts, sighting inserts, encounter upserts and device cells are
+ * buffered in memory and written in a single transaction, instead of several separate
+ * commits per accepted scan result.  A flush happens when [maxPendingSightings] is
+ * reached, every [flushIntervalMs] while started, and once more on [stop].
+ *
+ * Device state is merged last-writer-wins: only the most recent
+ * [DetectedDevice] per MAC is kept.  Every buffered device is also written
+ * through to the repository's [DeviceStateCache]; at flush time the cached
+ * copy wins over the buffered one.  While started, the buffer is attached
+ * to the repository so whitelist / flag changes from the UI patch the
+ * cached and buffered copies under the buffer's lock ([applyUserEdit]),
+ * and [putDevice] carries the current whitelist / flag over whatever the
+ * caller's copy holds, so an edit made while the engine was working on an
+ * older copy is not overwritten.  The DAO also keeps stored whitelist /
+ * flag values over buffered ones for rows that already exist, so an
+ * evicted cache entry can't resurrect a stale copy.  Buffered rows
+ * stay visible through [getPendingDevice] / [getPendingSightings] until
+ * they are committed, so read-modify-write callers never observe a stale
+ * row.  Encounters are
+ * last-writer-wins per (device, start), so an open encounter growing
+ * between flushes is written once; cells likewise per (device, cell),
+ * keeping the widest first/last-seen span.
+ */
+class WriteBehindBuffer(
+    private val repository: DeviceRepository,
+    private val maxPendingSightings: Int = DEFAULT_MAX_PENDING_SIGHTINGS,
+    private val flushIntervalMs: Long = DEFAULT_FLUSH_INTERVAL_MS
+) {
+    companion object {
+        private const val TAG = "WriteBehindBuffer"
+
+        const val DEFAULT_MAX_PENDING_SIGHTINGS = 256
+        const val DEFAULT_FLUSH_INTERVAL_MS = 2_000L
+    }
+
+    private val lock = Any()
+
+    private var pendingDevices = LinkedHashMap<String, DetectedDevice>()
+    private var pendingSightings = ArrayList<DeviceSighting>()
+    private var pendingEncounters = LinkedHashMap<Pair<String, Long>, Encounter>()
+    private var pendingCells = LinkedHashMap<Pair<String, Long>, DeviceCell>()
+
+    /** Batch currently being written — still readable until the commit finishes. */
+    private var inFlightDevices: MutableMap<String, DetectedDevice> = LinkedHashMap()
+    private var inFlightSightings: List<DeviceSighting> = emptyList()
+    private var inFlightEncounters: Map<Pair<String, Long>, Encounter> = emptyMap()
+    private var inFlightCells: Map<Pair<String, Long>, DeviceCell> = emptyMap()
+
+    /** Serialises flushes so batches are committed in the order they were drained. */
+    private val flushMutex = Mutex()
+
+    private var flushJob: Job? = null
+
+    // ---- Writes ---------------------------------------------------------------------
+
+    /**
+     * Buffer a device upsert, replacing any pending state for the same MAC.
+     * Whitelist / flag are taken from the newest copy already held (cache,
+     * then buffer), as only the user changes them.  Returns the device as
+     * buffered.
+     */
+    fun putDevice(device: DetectedDevice): DetectedDevice = synchronized(lock) {
+        val mac = device.macAddress
+        val held = pendingDevices[mac] ?: inFlightDevices[mac]
+        val buffered = repository.deviceCache.putKeepingUserFlags(device, held)
+        pendingDevices[mac] = buffered
+        buffered
+    }
+
+    /** Buffer a sighting insert, flushing inline once the size limit is reached. */
+    suspend fun addSighting(sighting: DeviceSighting) {
+        val full = synchronized(lock) {
+            pendingSightings.add(sighting)
+            pendingSightings.size >= maxPendingSightings
+        }
+        if (full) flush()
+    }
+
+    /** Buffer an encounter upsert, replacing any pending state for the same encounter. */
+    fun putEncounter(encounter: Encounter) {
+        synchronized(lock) {
+            pendingEncounters[encounter.deviceMacAddress to encounter.startTimestamp] = encounter
+        }
+    }
+
+    /** Buffer a device cell, merging with any pending copy of the same cell. */
+    fun putCell(cell: DeviceCell) {
+        synchronized(lock) {
+            putCellLocked(pendingCells, cell)
+        }
+    }
+
+    private fun putCellLocked(into: MutableMap<Pair<String, Long>, DeviceCell>, cell: DeviceCell) {
+        val key = cell.deviceMacAddress to cell.cellId
+        val existing = into[key]
+        into[key] = if (existing == null) cell else existing.copy(
+            firstSeenTimestamp = minOf(existing.firstSeenTimestamp, cell.firstSeenTimestamp),
+            lastSeenTimestamp = maxOf(existing.lastSeenTimestamp, cell.lastSeenTimestamp)
+        )
+    }
+
+    /**
+     * Apply a user edit to the cached copy of a device and to any copy
+     * buffered or being written, atomically with respect to [putDevice].
+     */
+    fun applyUserEdit(macAddress: String, transform: (DetectedDevice) -> DetectedDevice) {
+        synchronized(lock) {
+            repository.deviceCache.update(macAddress, transform)
+            pendingDevices[macAddress]?.let { pendingDevices[macAddress] = transform(it) }
+            inFlightDevices[macAddress]?.let { inFlightDevices[macAddress] = transform(it) }
+        }
+    }
+
+    // ---- Reads ----------------------------------------------------------------------
+
+    /** Latest buffered (not yet committed) state for a device, if any. */
+    fun getPendingDevice(macAddress: String): DetectedDevice? = synchronized(lock) {
+        pendingDevices[macAddress] ?: inFlightDevices[macAddress]
+    }
+
+    /** Buffered (not yet committed) sightings for a device at or after [since]. */
+    fun getPendingSightings(macAddress: String, since: Long): List<DeviceSighting> =
+        synchronized(lock) {
+            val out = ArrayList<DeviceSighting>()
+            for (s in inFlightSightings) {
+                if (s.deviceMacAddress == macAddress && s.timestamp >= since) out.add(s)
+            }
+            for (s in pendingSightings) {
+                if (s.deviceMacAddress == macAddress && s.timestamp >= since) out.add(s)
+            }
+            out
+        }
+
+    /** Latest buffered (not yet committed) encounter for a device, if any. */
+    fun getPendingEncounter(macAddress: String): Encounter? = synchronized(lock) {
+        var latest: Encounter? = null
+        for (e in inFlightEncounters.values) {
+            if (e.deviceMacAddress != macAddress) continue
+            if (latest == null || e.startTimestamp >= latest.startTimestamp) latest = e
+        }
+        for (e in pendingEncounters.values) {
+            if (e.deviceMacAddress != macAddress) continue
+            if (latest == null || e.startTimestamp >= latest.startTimestamp) latest = e
+        }
+        latest
+    }
+
+    /** Buffered (not yet committed) encounters for a device still going at or after [since]. */
+    fun getPendingEncounters(macAddress: String, since: Long): List<Encounter> =
+        synchronized(lock) {
+            val merged = LinkedHashMap<Long, Encounter>()
+            for (e in inFlightEncounters.values) {
+                if (e.deviceMacAddress == macAddress && e.endTimestamp >= since) merged[e.startTimestamp] = e
+            }
+            for (e in pendingEncounters.values) {
+                if (e.deviceMacAddress == macAddress && e.endTimestamp >= since) merged[e.startTimestamp] = e
+            }
+            ArrayList(merged.values)
+        }
+
+    /** Buffered (not yet committed) cell ids for a device. */
+    fun getPendingCellIds(macAddress: String): List<Long> = synchronized(lock) {
+        val out = ArrayList<Long>()
+        for (c in inFlightCells.values) if (c.deviceMacAddress == macAddress) out.add(c.cellId)
+        for (c in pendingCells.values) if (c.deviceMacAddress == macAddress) out.add(c.cellId)
+        out
+    }
+
+    // ---- Flushing -------------------------------------------------------------------
+
+    /**
+     * Write everything buffered so far in one transaction.
+     *
+     * @return The number of rows (devices + sightings + encounters + cells) written.
+     */
+    suspend fun flush(): Int = flushMutex.withLock {
+        val devices: List<DetectedDevice>
+        val sightings: List<DeviceSighting>
+        val encounters: List<Encounter>
+        val cells: List<DeviceCell>
+        synchronized(lock) {
+            if (pendingDevices.isEmpty() && pendingSightings.isEmpty() &&
+                pendingEncounters.isEmpty() && pendingCells.isEmpty()
+            ) {
+                return@withLock 0
+            }
+            inFlightDevices = pendingDevices
+            inFlightSightings = pendingSightings
+            inFlightEncounters = pendingEncounters
+            inFlightCells = pendingCells
+            devices = pendingDevices.values.map { pending ->
+                repository.getCachedDevice(pending.macAddress) ?: pending
+            }
+            sightings = pendingSightings
+            encounters = ArrayList(pendingEncounters.values)
+            cells = ArrayList(pendingCells.values)
+            pendingDevices = LinkedHashMap()
+            pendingSightings = ArrayList()
+            pendingEncounters = LinkedHashMap()
+            pendingCells = LinkedHashMap()
+        }
+
+        try {
+            repository.writeBatch(devices, sightings, encounters, cells)
+        } catch (e: Exception) {
+            // Put the batch back in front of anything buffered meanwhile so
+            // newer device state still wins and nothing is lost.
+            synchronized(lock) {
+                val merged = LinkedHashMap(inFlightDevices)
+                merged.putAll(pendingDevices)
+                pendingDevices = merged
+                val requeued = ArrayList(inFlightSightings)
+                requeued.addAll(pendingSightings)
+                pendingSightings = requeued
+                val requeuedEncounters = LinkedHashMap(inFlightEncounters)
+                requeuedEncounters.putAll(pendingEncounters)
+                pendingEncounters = requeuedEncounters
+                val requeuedCells = LinkedHashMap(pendingCells)
+                for (c in inFlightCells.values) putCellLocked(requeuedCells, c)
+                pendingCells = requeuedCells
+            }
+            throw e
+        } finally {
+            synchronized(lock) {
+                inFlightDevices = LinkedHashMap()
+                inFlightSightings = emptyList()
+                inFlightEncounters = emptyMap()
+                inFlightCells = emptyMap()
+            }
+        }
+
+        Log.d(TAG, "Flushed ${devices.size} devices, ${sightings.size} sightings, " +
+            "${encounters.size} encounters, ${cells.size} cells")
+        devices.size + sightings.size + encounters.size + cells.size
+    }
+
+    // ---- Lifecycle ------------------------------------------------------------------
+
+    /** Start the periodic time-based flush loop in [scope]. */
+    fun start(scope: CoroutineScope) {
+        if (flushJob?.isActive == true) return
+        repository.attachWriteBuffer(this)
+        flushJob = scope.launch {
+            while (isActive) {
+                delay(flushIntervalMs)
+                try {
+                    flush()
+                } catch (e: Exception) {
+                    Log.e(TAG, "Periodic flush failed", e)
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the periodic loop and write out whatever is still buffered.
+     *
+     * The final flush runs [NonCancellable] so it survives the owning scope
+     * being cancelled right after the service stops.
+     */
+    fun stop(scope: CoroutineScope) {
+        flushJob?.cancel()
+        flushJob = null
+        repository.detachWriteBuffer(this)
+        scope.launch(NonCancellable) {
+            try {
+                flush()
+            } catch (e: Exception) {
+                Log.e(TAG, "Final flush failed", e)
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.follower.detection
+
+import android.util.Log
+import com.example.follower.data.model.DetectedDevice
+import com.example.follower.data.model.Encounter
+import com.example.follower.data.repository.DeviceRepository
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Rescores every active device at once, e.g. after a scoring setting changed.
+ * Stored scores are undecayed (see [ScoreDecay]), so this is never needed
+ * just to age them.
+ *
+ * Three phases:
+ *  1. **Load** — devices seen within the window, and either all their
+ *     encounters or all their sightings in one cursor scan, straight into
+ *     per-device [SightingWindow]s.
+ *  2. **Score** — devices are split into chunks and scored on
+ *     `Dispatchers.Default.limitedParallelism(parallelism)`; each chunk is
+ *     independent, so workers share nothing but the read-only inputs.  Each
+ *     device is scored the way the engine's rescore tick would score it:
+ *     on encounters, on [IncrementalSuspicionState] accumulators, or on the
+ *     sighting window, per [SuspicionSettings].
+ *  3. **Write** — changed scores go to [writeScores], which the engine
+ *     routes through its shard locks and write-behind buffer, so a batch
+ *     score can't be overwritten by a stale buffered row or overwrite a
+ *     newer inline one.
+ *
+ * Devices pinned by known-tracker detection ([DetectedDevice.isKnownTracker])
+ * are left alone: the match comes from advertisement payloads that are not
+ * persisted, so the history alone would under-score them.  No alerts are
+ * raised here; the inline path still alerts the next time a device is seen.
+ *
+ * Only one run is active at a time; [progress] reports it and goes back to
+ * null when it finishes.
+ */
+class BatchRescorer(
+    private val repository: DeviceRepository,
+    private val calculator: SuspicionCalculator,
+    private val settings: SuspicionSettings,
+    /** Persists changed scores (by MAC), all computed at `scoredAt`. */
+    private val writeScores: suspend (scores: Map<String, Float>, scoredAt: Long) -> Unit,
+    private val clock: Clock = Clock.SYSTEM,
+    private val parallelism: Int = Runtime.getRuntime().availableProcessors()
+) {
+    companion object {
+        private const val TAG = "BatchRescorer"
+
+        /** Chunks per worker, so a slow chunk doesn't leave cores idle at the end. */
+        private const val CHUNKS_PER_WORKER = 4
+    }
+
+    data class Progress(val scored: Int, val total: Int)
+
+    data class Stats(
+        val devices: Int,
+        /** Sightings loaded; 0 when scoring on encounters. */
+        val sightings: Int,
+        /** Encounters loaded; 0 when scoring on sightings. */
+        val encounters: Int,
+        val updated: Int,
+        val loadMs: Long,
+        val scoreMs: Long,
+        val writeMs: Long
+    ) {
+        val totalMs: Long get() = loadMs + scoreMs + writeMs
+
+        val devicesPerSecond: Float
+            get() = devices * 1000f / totalMs.coerceAtLeast(1L)
+    }
+
+    private val _progress = MutableStateFlow<Progress?>(null)
+    val progress: StateFlow<Progress?> = _progress.asStateFlow()
+
+    private val runMutex = Mutex()
+
+    @OptIn(ExperimentalCoroutinesApi::class)
+    private val dispatcher: CoroutineDispatcher = Dispatchers.Default.limitedParallelism(parallelism)
+
+    /**
+     * Rescore every device seen within the last [windowMs], scoring each on
+     * its history from the same window.  Callers should flush any
+     * write-behind buffer first so the load sees every row.
+     */
+    suspend fun rescoreAll(windowMs: Long): Stats = runMutex.withLock {
+        // Throughput is wall time, whatever clock the scores are computed on
+        val loadStart = System.nanoTime()
+        val scoredAt = clock.now()
+        val since = scoredAt - windowMs
+        // One mode for the whole run, whatever the settings do meanwhile
+        val onEncounters = settings.encounterScoringEnabled
+        val incremental = !onEncounters && settings.incrementalScoringEnabled
+        val devices = repository.getDevicesSeenSince(since)
+            .filter { !it.isKnownTracker }
+        val encounters = if (onEncounters) repository.loadEncountersSince(since) else emptyMap()
+        val windows = if (onEncounters) emptyMap() else repository.loadSightingWindows(since)
+        val scoreStart = System.nanoTime()
+
+        _progress.value = Progress(0, devices.size)
+        val scores = FloatArray(devices.size)
+        try {
+            val scored = AtomicInteger()
+            val chunkSize = maxOf(1, devices.size / (parallelism * CHUNKS_PER_WORKER))
+            coroutineScope {
+                devices.indices.chunked(chunkSize).map { chunk ->
+                    async(dispatcher) {
+                        val empty = SightingWindow(0)
+                        for (i in chunk) {
+                            val device = devices[i]
+                            val result = when {
+                                onEncounters ->
+                                    calculator.calculate(device, encounters[device.macAddress] ?: emptyList<Encounter>())
+                                incremental ->
+                                    calculator.calculate(device, accumulate(windows[device.macAddress] ?: empty))
+                                else ->
+                                    calculator.calculate(device, windows[device.macAddress] ?: empty)
+                            }
+                            scores[i] = result.undecayedScore.toFloat()
+                        }
+                        _progress.value = Progress(scored.addAndGet(chunk.size), devices.size)
+                    }
+                }.awaitAll()
+            }
+        } finally {
+            _progress.value = null
+        }
+        val writeStart = System.nanoTime()
+
+        val changed = HashMap<String, Float>()
+        devices.forEachIndexed { i, device ->
+            if (scores[i] != device.threatScore) changed[device.macAddress] = scores[i]
+        }
+        if (changed.isNotEmpty()) writeScores(changed, scoredAt)
+        val end = System.nanoTime()
+
+        val stats = Stats(
+            devices = devices.size,
+            sightings = windows.values.sumOf { it.size },
+            encounters = encounters.values.sumOf { it.size },
+            updated = changed.size,
+            loadMs = (scoreStart - loadStart) / 1_000_000,
+            scoreMs = (writeStart - scoreStart) / 1_000_000,
+            writeMs = (end - writeStart) / 1_000_000
+        )
+        Log.i(
+            TAG,
+            "Rescored ${stats.devices} devices (${stats.sightings} sightings, ${stats.encounters} encounters, " +
+                "${stats.updated} changed) in ${stats.totalMs} ms: load=${stats.loadMs} " +
+                "score=${stats.scoreMs} write=${stats.writeMs} " +
+                "(${stats.devicesPerSecond.toInt()} devices/s)"
+        )
+        stats
+    }
+
+    /** The accumulators the engine would hold for [window]'s sightings. */
+    private fun accumulate(window: SightingWindow): IncrementalSuspicionState {
+        val state = IncrementalSuspicionState.from(settings)
+        for (i in 0 until window.size) {
+            state.append(window.timestamps[i], window.latitudes[i], window.longitudes[i], window.rssi[i].toInt())
+        }
+        return state
+    }
+}
@@ -43,7 +43,10 @@ class CalibrationManager(context: Context, private val settings: SuspicionSettin
         val score: Int
     )
 
-    /** In-memory buffer for batching writes (avoids writing JSON to disk on every sample). */
+    /**
+     * In-memory buffer for batching writes (avoids writing JSON to disk on every sample).
+     * Guarded by `this`: samples arrive from every detection-engine shard concurrently.
+     */
     private val pendingBuffer = mutableListOf<FeatureVector>()
 
     /**
@@ -53,6 +56,7 @@ class CalibrationManager(context: Context, private val settings: SuspicionSettin
      * Samples are buffered in memory and flushed to disk every
      * [BATCH_FLUSH_INTERVAL] samples to reduce SharedPreferences I/O.
      */
+    @Synchronized
     fun recordSample(result: SuspicionResult, avgRssi: Float) {
         if (!settings.calibrationModeEnabled) return
 
@@ -75,6 +79,7 @@ class CalibrationManager(context: Context, private val settings: SuspicionSettin
     /**
      * Flush any pending in-memory samples to disk and optionally auto-tune.
      */
+    @Synchronized
     fun flushPendingSamples() {
         if (pendingBuffer.isEmpty()) return
 
@@ -145,8 +150,10 @@ class CalibrationManager(context: Context, private val settings: SuspicionSettin
         return 0f
     }
 
+    @Synchronized
     fun getSampleCount(): Int = loadSamples().size + pendingBuffer.size
 
+    @Synchronized
     fun clearSamples() {
         pendingBuffer.clear()
         prefs.edit().remove(KEY_SAMPLES).apply()
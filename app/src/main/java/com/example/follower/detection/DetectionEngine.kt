@@ -3,31 +3,63 @@ package com.example.follower.detection
 import android.util.Log
 import com.example.follower.data.model.*
 import com.example.follower.data.repository.DeviceRepository
-import com.example.follower.scanner.LocationTracker
+import com.example.follower.data.repository.WriteBehindBuffer
+import com.example.follower.scanner.LocationSource
+import com.example.follower.scanner.MotionStateMachine
+import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.isActive
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.io.File
 
 /**
  * Core detection engine that processes scan results and generates threat alerts.
  *
  * Improvements over the original:
  *  - **Scan throttling**: same-device results are deduplicated within a configurable window.
- *  - **Score throttling**: a device is only re-scored after a minimum interval.
+ *  - **Scheduled rescoring**: scans only mark a device dirty; a [RescoreScheduler] tick
+ *    scores a budgeted batch off the ingest path, most urgent (near a threshold, fast
+ *    moving score, weak tracker match) first, and backs noise devices off.
  *  - **BLE identity resolution**: randomised BLE MACs are mapped to stable IDs.
  *  - **Known tracker detection**: AirTags / Tiles / SmartTags are elevated immediately.
  *  - **Ambient density**: the number of unique devices recently seen is fed into the
  *    [SuspicionCalculator] so crowded environments produce lower scores.
  *  - **Movement gating**: when [SuspicionSettings.scanOnlyWhenMoving] is set, scoring
- *    and alerting are suppressed while the user is stationary.
+ *    and alerting are suppressed while the [MotionStateMachine] says the user is
+ *    stationary.
+ *  - **Incremental scoring**: per-device [IncrementalSuspicionState] accumulators are
+ *    updated on every sighting so rescoring does not reload the scoring window.
+ *  - **Encounters**: every sighting also extends the device's open [Encounter] summary,
+ *    so scoring can run on O(encounters) rows and raw sightings can be kept short.
+ *  - **Multi-day detection**: maintenance rolls sightings up into minute / hour / day
+ *    [SightingRollup]s, and a [LongHorizonScorer] pass over them catches devices that
+ *    follow across several days, long after the raw sightings are gone.
+ *  - **Write-behind persistence**: device upserts, sightings and encounters are batched
+ *    through a [WriteBehindBuffer] and committed in one transaction per flush.
+ *  - **Batch rescoring**: changing a scoring setting rescores every active device in
+ *    parallel through a [BatchRescorer] instead of waiting for each to be seen again.
+ *  - **Sharded state**: per-device state is split into [SHARD_COUNT] shards keyed by
+ *    resolved ID, each guarded by its own [Mutex], so the Bluetooth / WiFi / USB
+ *    collectors can call [processScanResult] concurrently without data races.
  */
 class DetectionEngine(
     private val repository: DeviceRepository,
-    private val locationTracker: LocationTracker,
+    private val locationSource: LocationSource,
     private val scope: CoroutineScope,
     private val settings: SuspicionSettings,
-    private val calibrationManager: CalibrationManager? = null
+    private val calibrationManager: CalibrationManager? = null,
+    private val clock: Clock = Clock.SYSTEM,
+    /** Rescoring tick period; 0 means the caller drives [runRescoreTick] itself. */
+    private val rescoreTickMs: Long = DEFAULT_RESCORE_TICK_MS,
+    /** Where the identity resolver persists its MAC mappings; null keeps them in memory only. */
+    resolverStateDir: File? = null
 ) {
     companion object {
         private const val TAG = "DetectionEngine"
@@ -36,8 +68,46 @@ class DetectionEngine(
         /** Sightings older than this are not loaded for scoring. */
         private const val SCORING_WINDOW_MS = 6 * 60 * 60 * 1000L // 6 hours
 
-        /** Minimum user displacement (metres) to consider the user "moving". */
-        private const val MOVEMENT_THRESHOLD_METERS = 50f
+        /** Max devices with live incremental-scoring accumulators (across all shards). */
+        private const val MAX_INCREMENTAL_STATES = 1_000
+
+        /** Max devices whose latest encounter is held in memory (across all shards). */
+        private const val MAX_OPEN_ENCOUNTERS = 1_000
+
+        /** Max geocells held in memory across all device cell sets (across all shards). */
+        private const val MAX_CACHED_CELLS = 16_000
+
+        /** Max devices with a scan-throttle timestamp held (across all shards). */
+        private const val MAX_THROTTLED_DEVICES = 5_000
+
+        /** Retention for devices, encounters and device cells. */
+        private const val RETENTION_MS = 7 * 24 * 60 * 60 * 1000L
+
+        /** Raw sighting retention; older history lives on in rollups. */
+        private const val SIGHTING_RETENTION_MS = 2 * 24 * 60 * 60 * 1000L
+
+        /** Raw sighting retention when scoring from encounters. */
+        private const val FORENSIC_RETENTION_MS = 24 * 60 * 60 * 1000L
+
+        /** How far behind now sightings are rolled up, so late rows still land in their minute. */
+        private const val ROLLUP_LAG_MS = 5 * 60 * 1000L
+
+        /** Default span of the long-horizon pass. */
+        const val LONG_HORIZON_DAYS = 7
+
+        /** A multi-day alert is not repeated while any alert for the device is this recent. */
+        private const val LONG_HORIZON_ALERT_COOLDOWN_MS = 24 * 60 * 60 * 1000L
+
+        /** Number of independently locked state shards. */
+        private const val SHARD_COUNT = 16
+
+        /** Larger cell sets are reloaded per sighting rather than crowd a shard's cache. */
+        private const val MAX_CACHED_CELLS_PER_DEVICE = MAX_CACHED_CELLS / SHARD_COUNT / 4
+
+        /** Quiet period after a scoring setting changes before everything is rescored. */
+        private const val RESCORE_DEBOUNCE_MS = 2_000L
+
+        const val DEFAULT_RESCORE_TICK_MS = 1_000L
     }
 
     enum class Tier { STANDARD, ENHANCED }
@@ -50,29 +120,76 @@ class DetectionEngine(
 
     var onThreatDetected: ((ThreatAlert) -> Unit)? = null
 
-    private val calculator = SuspicionCalculator(settings)
+    private val calculator = SuspicionCalculator(settings, clock)
+
+    private val longHorizonScorer = LongHorizonScorer(settings)
 
-    val identityResolver = DeviceIdentityResolver()
+    val identityResolver = DeviceIdentityResolver(clock, resolverStateDir?.let { ResolverStateStore(it, clock) })
     val knownTrackerDetector = KnownTrackerDetector()
 
-    // ---- Throttling state -----------------------------------------------------------
+    private val writeBuffer = WriteBehindBuffer(repository)
 
-    /** Last time a scan result was fully processed for a given device (resolved ID). */
-    private val lastScanProcessed = HashMap<String, Long>()
+    private val batchRescorer = BatchRescorer(repository, calculator, settings, ::writeRescoredScores, clock)
 
-    /** Last time scoring was computed for a given device (resolved ID). */
-    private val lastScoreComputed = HashMap<String, Long>()
+    /** Progress of a running [rescoreAll], or null when none is running. */
+    val rescoreProgress: StateFlow<BatchRescorer.Progress?> get() = batchRescorer.progress
 
-    // ---- Ambient density tracking ---------------------------------------------------
+    @Volatile
+    private var pendingRescore: Job? = null
 
-    /** Set of unique device IDs seen in the last 5 minutes, for density calculation. */
-    private val recentDeviceIds = LinkedHashMap<String, Long>()
+    private val rescoreScheduler = RescoreScheduler(settings)
+
+    private var rescoreTickJob: Job? = null
+
+    /** Queue depth and per-tick budget use of the rescoring scheduler. */
+    val rescoreMetrics: RescoreScheduler.Metrics get() = rescoreScheduler.metrics()
+
+    // ---- Sharded per-device state ---------------------------------------------------
+
+    /**
+     * Mutable per-device state for the devices whose resolved ID hashes to
+     * this shard.  Every field is only read or written while holding [lock].
+     */
+    private class Shard {
+        val lock = Mutex()
+
+        /**
+         * Last time a scan result was fully processed for a given device
+         * (resolved ID), least recently used evicted; an evicted device is
+         * just not throttled on its next scan.
+         */
+        val lastScanProcessed = BoundedCache<String, Long>(MAX_THROTTLED_DEVICES / SHARD_COUNT.toLong())
+
+        /** Streaming accumulators per device (resolved ID), least recently used evicted. */
+        val incrementalStates =
+            BoundedCache<String, IncrementalSuspicionState>(MAX_INCREMENTAL_STATES / SHARD_COUNT.toLong())
+
+        /** Latest encounter per device (resolved ID), least recently used evicted. */
+        val openEncounters = BoundedCache<String, Encounter>(MAX_OPEN_ENCOUNTERS / SHARD_COUNT.toLong())
+
+        /**
+         * Geocells each device (resolved ID) has been seen in, weighed by cell
+         * count; re-set after growing so the weight stays current.  Sets over
+         * [MAX_CACHED_CELLS_PER_DEVICE] are not held, so one far-travelled
+         * device cannot evict the rest of the shard.
+         */
+        val deviceCells = BoundedCache<String, HashSet<Long>>(MAX_CACHED_CELLS / SHARD_COUNT.toLong()) { _, cells ->
+            1 + cells.size
+        }
+
+        /** Reused for every batch-path score in this shard. */
+        val scoringWindow = SightingWindow()
+    }
+
+    private val shards = Array(SHARD_COUNT) { Shard() }
+
+    private fun shardFor(resolvedId: String): Shard =
+        shards[(resolvedId.hashCode() and Int.MAX_VALUE) % SHARD_COUNT]
 
     // ---- Movement tracking ----------------------------------------------------------
 
-    /** Anchor location for stationary detection. */
-    private var anchorLat: Double? = null
-    private var anchorLon: Double? = null
+    /** Location-driven motion state; other components may collect [MotionStateMachine.state]. */
+    val motionStateMachine = MotionStateMachine(locationSource)
 
     // ---- Scan Processing ------------------------------------------------------------
 
@@ -82,29 +199,38 @@ class DetectionEngine(
         // Resolve BLE MAC randomisation to a stable identity
         val resolvedId = identityResolver.resolveIdentity(result)
 
+        // Everything below only touches this device's shard
+        val shard = shardFor(resolvedId)
+        shard.lock.withLock {
+            processInShard(shard, result, resolvedId)
+        }
+    }
+
+    private suspend fun processInShard(shard: Shard, result: ScanResult, resolvedId: String) {
         // --- Scan-level throttle: skip if we processed this device too recently ---
-        val now = System.currentTimeMillis()
-        val lastProcessed = lastScanProcessed[resolvedId] ?: 0L
+        val now = clock.now()
+        val lastProcessed = shard.lastScanProcessed[resolvedId] ?: 0L
         if (now - lastProcessed < settings.scanThrottleMs) return
-        lastScanProcessed[resolvedId] = now
+        shard.lastScanProcessed[resolvedId] = now
 
-        // Track ambient density
-        recentDeviceIds[resolvedId] = now
-        pruneRecentDevices(now)
-        calculator.ambientDeviceCount = recentDeviceIds.size
+        // Track ambient density (distinct devices over the last 5 minutes, O(1))
+        val densityCounter = repository.recentDeviceCounter
+        densityCounter.add(resolvedId, now)
+        calculator.ambientDeviceCount = densityCounter.estimate(now)
 
         // --- Known tracker fast-path: elevate immediately ---
         val trackerMatch = knownTrackerDetector.detect(result)
 
         // --- Movement gating ---
-        if (settings.scanOnlyWhenMoving && !isUserMoving()) {
+        if (settings.scanOnlyWhenMoving && !motionStateMachine.isMoving) {
             // Still record the sighting (for history) but skip scoring/alerting
-            recordSightingOnly(result, resolvedId)
+            recordSightingOnly(shard, result, resolvedId)
             return
         }
 
         // --- Normal processing pipeline ---
-        var device = repository.getDevice(resolvedId)
+        var device = loadDevice(resolvedId)
+        val cellCount = recordCell(shard, resolvedId, result, isNewDevice = device == null)
 
         if (device == null) {
             device = DetectedDevice(
@@ -114,23 +240,22 @@ class DetectionEngine(
                 firstSeenTimestamp = result.timestamp,
                 lastSeenTimestamp = result.timestamp,
                 detectionCount = 1,
-                locationCount = 1,
+                locationCount = cellCount,
                 lastRssi = result.rssi,
                 probedSsids = result.probedSsids?.joinToString(",")
             )
         } else {
-            val newLocationCount = repository.getDistinctLocationCount(resolvedId)
             device = device.copy(
                 lastSeenTimestamp = result.timestamp,
                 detectionCount = device.detectionCount + 1,
-                locationCount = newLocationCount,
+                locationCount = cellCount,
                 lastRssi = result.rssi,
                 deviceName = result.deviceName ?: device.deviceName,
                 probedSsids = result.probedSsids?.joinToString(",") ?: device.probedSsids
             )
         }
 
-        repository.insertOrUpdateDevice(device)
+        device = writeBuffer.putDevice(device)
 
         val sighting = DeviceSighting(
             deviceMacAddress = resolvedId,
@@ -145,12 +270,14 @@ class DetectionEngine(
             channel = result.channel,
             frequency = result.frequency
         )
-        repository.recordSighting(sighting)
+        writeBuffer.addSighting(sighting)
+        appendToIncrementalState(shard, sighting)
+        appendToEncounter(shard, sighting)
 
         // --- Known tracker: immediate HIGH alert regardless of score ---
         if (trackerMatch != null && trackerMatch.confidence >= 0.7f) {
-            device = device.copy(threatScore = 100f)
-            repository.insertOrUpdateDevice(device)
+            device = device.copy(threatScore = 100f, isKnownTracker = true)
+            device = writeBuffer.putDevice(device)
 
             val alert = buildKnownTrackerAlert(device, trackerMatch)
             if (alert != null) {
@@ -162,25 +289,64 @@ class DetectionEngine(
             return
         }
 
-        // --- Score-level throttle: only re-score after the configured interval ---
-        val lastScored = lastScoreComputed[resolvedId] ?: 0L
-        if (now - lastScored < settings.scoreThrottleMs) return
-        lastScoreComputed[resolvedId] = now
-
-        // Load sightings within the scoring window (not the full history)
-        val recentSightings = repository.getRecentSightingsForDevice(
-            resolvedId, SCORING_WINDOW_MS
+        // --- Scoring happens on the rescore tick, in urgency order ---
+        rescoreScheduler.markDirty(
+            resolvedId, now, settings.scoreThrottleMs,
+            trackerHint = trackerMatch?.confidence ?: 0f
         )
-        val suspicion = calculator.calculate(device, recentSightings)
+    }
+
+    // ---- Scheduled Rescoring --------------------------------------------------------
+
+    /**
+     * Score up to [SuspicionSettings.rescoreBudgetPerTick] due devices, most
+     * overdue first.  Called every [rescoreTickMs] while running, or directly
+     * by simulations that drive virtual time.  Returns how many were scored.
+     */
+    suspend fun runRescoreTick(): Int {
+        val now = clock.now()
+        val due = rescoreScheduler.pollDue(now, settings.rescoreBudgetPerTick)
+        for (resolvedId in due) {
+            val shard = shardFor(resolvedId)
+            shard.lock.withLock {
+                rescoreInShard(shard, resolvedId, now)
+            }
+        }
+        return due.size
+    }
 
-        device = device.copy(threatScore = suspicion.totalScore.toFloat())
-        repository.insertOrUpdateDevice(device)
+    private suspend fun rescoreInShard(shard: Shard, resolvedId: String, now: Long) {
+        var device = loadDevice(resolvedId) ?: return
+        // A rescore queued before the device matched a known tracker must not
+        // replace the pin
+        if (device.isKnownTracker) return
+
+        val suspicion: SuspicionResult
+        val avgRssi: Float
+        if (settings.encounterScoringEnabled) {
+            val encounters = loadScoringEncounters(resolvedId)
+            suspicion = calculator.calculate(device, encounters)
+            avgRssi = Encounters.averageRssi(encounters)
+        } else if (settings.incrementalScoringEnabled) {
+            val state = incrementalStateFor(shard, resolvedId, now)
+            suspicion = calculator.calculate(device, state)
+            avgRssi = state.averageRssi
+        } else {
+            // Load sightings within the scoring window (not the full history)
+            val window = shard.scoringWindow
+            loadScoringWindow(resolvedId, window)
+            suspicion = calculator.calculate(device, window)
+            avgRssi = window.averageRssi()
+        }
+
+        // Persist the undecayed score; readers decay it (see ScoreDecay)
+        device = device.copy(threatScore = suspicion.undecayedScore.toFloat())
+        device = writeBuffer.putDevice(device)
 
         // Feed calibration manager (records only when calibration mode is on)
-        calibrationManager?.recordSample(
-            suspicion,
-            avgRssi = recentSightings.map { it.rssi }.average().toFloat()
-        )
+        calibrationManager?.recordSample(suspicion, avgRssi = avgRssi)
+
+        rescoreScheduler.onScored(resolvedId, suspicion.totalScore, now)
 
         // Alert check
         if (!device.isWhitelisted && suspicion.totalScore > settings.lowThreshold) {
@@ -196,17 +362,17 @@ class DetectionEngine(
     ) {
         val lastAlert = repository.getLatestAlertForDevice(device.macAddress)
         if (lastAlert != null) {
-            val elapsed = System.currentTimeMillis() - lastAlert.timestamp
+            val elapsed = clock.now() - lastAlert.timestamp
             if (elapsed < ALERT_COOLDOWN_MS) return
         }
 
-        val location = locationTracker.getLocation() ?: return
+        val location = locationSource.getLocation() ?: return
 
         val alert = ThreatAlert(
             deviceMacAddress = device.macAddress,
             deviceName = device.deviceName,
             deviceType = device.deviceType,
-            timestamp = System.currentTimeMillis(),
+            timestamp = clock.now(),
             threatScore = suspicion.totalScore.toFloat(),
             threatLevel = suspicion.level,
             latitude = location.first,
@@ -230,17 +396,17 @@ class DetectionEngine(
         // Respect cooldown
         val lastAlert = repository.getLatestAlertForDevice(device.macAddress)
         if (lastAlert != null) {
-            val elapsed = System.currentTimeMillis() - lastAlert.timestamp
+            val elapsed = clock.now() - lastAlert.timestamp
             if (elapsed < ALERT_COOLDOWN_MS) return null
         }
 
-        val location = locationTracker.getLocation() ?: return null
+        val location = locationSource.getLocation() ?: return null
 
         return ThreatAlert(
             deviceMacAddress = device.macAddress,
             deviceName = match.description,
             deviceType = device.deviceType,
-            timestamp = System.currentTimeMillis(),
+            timestamp = clock.now(),
             threatScore = 100f,
             threatLevel = ThreatLevel.HIGH,
             latitude = location.first,
@@ -258,8 +424,9 @@ class DetectionEngine(
      * scoring (user is stationary).  The sighting is still persisted so that
      * when the user starts moving, the full history is available.
      */
-    private suspend fun recordSightingOnly(result: ScanResult, resolvedId: String) {
-        var device = repository.getDevice(resolvedId)
+    private suspend fun recordSightingOnly(shard: Shard, result: ScanResult, resolvedId: String) {
+        var device = loadDevice(resolvedId)
+        val cellCount = recordCell(shard, resolvedId, result, isNewDevice = device == null)
         if (device == null) {
             device = DetectedDevice(
                 macAddress = resolvedId,
@@ -268,7 +435,7 @@ class DetectionEngine(
                 firstSeenTimestamp = result.timestamp,
                 lastSeenTimestamp = result.timestamp,
                 detectionCount = 1,
-                locationCount = 1,
+                locationCount = cellCount,
                 lastRssi = result.rssi,
                 probedSsids = result.probedSsids?.joinToString(",")
             )
@@ -276,10 +443,11 @@ class DetectionEngine(
             device = device.copy(
                 lastSeenTimestamp = result.timestamp,
                 detectionCount = device.detectionCount + 1,
+                locationCount = cellCount,
                 lastRssi = result.rssi
             )
         }
-        repository.insertOrUpdateDevice(device)
+        device = writeBuffer.putDevice(device)
 
         val sighting = DeviceSighting(
             deviceMacAddress = resolvedId,
@@ -294,49 +462,237 @@ class DetectionEngine(
             channel = result.channel,
             frequency = result.frequency
         )
-        repository.recordSighting(sighting)
+        writeBuffer.addSighting(sighting)
+        appendToIncrementalState(shard, sighting)
+        appendToEncounter(shard, sighting)
     }
 
     /**
-     * Determine if the user is currently moving (has moved > [MOVEMENT_THRESHOLD_METERS]
-     * from the anchor point).
+     * Fold a new sighting into the device's accumulators, if it has any.
+     * Out-of-order sightings drop the state so it is rebuilt on next score.
      */
-    private fun isUserMoving(): Boolean {
-        val loc = locationTracker.getLocation() ?: return false
+    private fun appendToIncrementalState(shard: Shard, sighting: DeviceSighting) {
+        val state = shard.incrementalStates[sighting.deviceMacAddress] ?: return
+        if (!state.append(sighting)) shard.incrementalStates.remove(sighting.deviceMacAddress)
+    }
 
-        if (anchorLat == null || anchorLon == null) {
-            anchorLat = loc.first
-            anchorLon = loc.second
-            return false
+    /**
+     * Note the geocell of [result] in the device's cell set and buffer the
+     * cell row (inserted if new, last-seen bumped otherwise).  Returns the
+     * device's distinct cell count, its location count, in O(1); the set is
+     * loaded from Room and the write buffer only when not held in the shard.
+     */
+    private suspend fun recordCell(
+        shard: Shard,
+        resolvedId: String,
+        result: ScanResult,
+        isNewDevice: Boolean
+    ): Int {
+        val cached = shard.deviceCells[resolvedId]
+        val cells = cached ?: HashSet<Long>().also { loaded ->
+            if (!isNewDevice) loaded.addAll(repository.getCellIdsForDevice(resolvedId))
+            loaded.addAll(writeBuffer.getPendingCellIds(resolvedId))
         }
+        val cellId = GeoCell.of(result.latitude, result.longitude)
+        if (cells.add(cellId) || cached == null) {
+            if (cells.size <= MAX_CACHED_CELLS_PER_DEVICE) shard.deviceCells[resolvedId] = cells
+            else shard.deviceCells.remove(resolvedId)
+        }
+        writeBuffer.putCell(DeviceCell(resolvedId, cellId, result.timestamp, result.timestamp))
+        return cells.size
+    }
 
-        val displacement = locationTracker.distanceBetween(
-            anchorLat!!, anchorLon!!,
-            loc.first, loc.second
-        )
+    /**
+     * Extend the device's latest encounter with a new sighting, or open a
+     * new one after a gap longer than the streak gap.  The latest encounter
+     * comes from the shard, then the write buffer, then Room.
+     */
+    private suspend fun appendToEncounter(shard: Shard, sighting: DeviceSighting) {
+        val id = sighting.deviceMacAddress
+        val latest = shard.openEncounters[id]
+            ?: writeBuffer.getPendingEncounter(id)
+            ?: repository.getLatestEncounter(id)
+        val streakGapMs = settings.streakGapThresholdMinutes * 60_000L
+        val encounter = if (latest != null && Encounters.continues(latest, sighting.timestamp, streakGapMs)) {
+            Encounters.extend(latest, sighting)
+        } else {
+            Encounters.open(sighting)
+        }
+        shard.openEncounters[id] = encounter
+        writeBuffer.putEncounter(encounter)
+    }
 
-        if (displacement > MOVEMENT_THRESHOLD_METERS) {
-            // User has moved — update anchor
-            anchorLat = loc.first
-            anchorLon = loc.second
-            return true
+    /**
+     * Accumulators for [resolvedId], slid to the scoring window ending at
+     * [now].  Seeded from storage the first time, or when the clustering /
+     * streak settings changed since the state was built.
+     */
+    private suspend fun incrementalStateFor(
+        shard: Shard,
+        resolvedId: String,
+        now: Long
+    ): IncrementalSuspicionState {
+        val existing = shard.incrementalStates[resolvedId]
+        val state = if (existing != null && existing.matches(settings)) {
+            existing
+        } else {
+            IncrementalSuspicionState.from(settings).also { seeded ->
+                loadScoringSightings(resolvedId)
+                    .sortedBy { it.timestamp }
+                    .forEach { seeded.append(it) }
+                shard.incrementalStates[resolvedId] = seeded
+            }
         }
+        state.expireBefore(now - SCORING_WINDOW_MS)
+        return state
+    }
+
+    /**
+     * Current device state: the repository's cache first (it also carries UI
+     * whitelist / flag changes), then state still in the write buffer if the
+     * cache entry was evicted, then Room.
+     */
+    private suspend fun loadDevice(resolvedId: String): DetectedDevice? =
+        repository.getCachedDevice(resolvedId)
+            ?: writeBuffer.getPendingDevice(resolvedId)
+            ?: repository.getStoredDevice(resolvedId)
+
+    /** Persisted sightings in the scoring window plus any still in the write buffer. */
+    private suspend fun loadScoringSightings(resolvedId: String): List<DeviceSighting> {
+        val since = clock.now() - SCORING_WINDOW_MS
+        val persisted = repository.getRecentSightingsForDevice(resolvedId, SCORING_WINDOW_MS)
+        val pending = writeBuffer.getPendingSightings(resolvedId, since)
+        return if (pending.isEmpty()) persisted else persisted + pending
+    }
 
-        return false
+    /**
+     * Encounters overlapping the scoring window, persisted merged with any
+     * newer copies still in the write buffer, oldest first.
+     */
+    private suspend fun loadScoringEncounters(resolvedId: String): List<Encounter> {
+        val since = clock.now() - SCORING_WINDOW_MS
+        val pending = writeBuffer.getPendingEncounters(resolvedId, since)
+        val persisted = repository.getEncountersSince(resolvedId, since)
+        if (pending.isEmpty()) return persisted
+        val merged = LinkedHashMap<Long, Encounter>()
+        for (e in persisted) merged[e.startTimestamp] = e
+        for (e in pending) merged[e.startTimestamp] = e
+        return merged.values.sortedBy { it.startTimestamp }
     }
 
-    private fun pruneRecentDevices(now: Long) {
-        val cutoff = now - 5 * 60 * 1000L  // 5-minute window
-        recentDeviceIds.entries.removeAll { it.value < cutoff }
+    /**
+     * Same rows as [loadScoringSightings], copied column-wise into [window]
+     * (cleared first) and left in timestamp order.
+     */
+    private suspend fun loadScoringWindow(resolvedId: String, window: SightingWindow) {
+        val since = clock.now() - SCORING_WINDOW_MS
+        window.clear()
+        repository.loadSightingWindow(resolvedId, SCORING_WINDOW_MS, window)
+        window.addAll(writeBuffer.getPendingSightings(resolvedId, since))
+        window.sortByTimestamp()
     }
 
     // ---- On-demand re-scoring (for device list views) --------------------------------
 
     suspend fun recalculateScore(device: DetectedDevice): SuspicionResult {
-        val sightings = repository.getRecentSightingsForDevice(
-            device.macAddress, SCORING_WINDOW_MS
+        val window = SightingWindow()
+        loadScoringWindow(device.macAddress, window)
+        return calculator.calculate(device, window)
+    }
+
+    // ---- Batch re-scoring --------------------------------------------------------------
+
+    /**
+     * Rescore every device seen within the scoring window and persist the
+     * results.  Buffered rows are committed first so the bulk load sees them.
+     */
+    suspend fun rescoreAll(): BatchRescorer.Stats {
+        writeBuffer.flush()
+        return batchRescorer.rescoreAll(SCORING_WINDOW_MS)
+    }
+
+    /**
+     * Apply [BatchRescorer] results the way the rescore tick does: under the
+     * device's shard lock, onto its current state, through the write buffer,
+     * then commit them in one flush.  A device heard again since the batch
+     * loaded it (so scored inline off newer sightings) or pinned as a known
+     * tracker keeps its own score.
+     */
+    private suspend fun writeRescoredScores(scores: Map<String, Float>, scoredAt: Long) {
+        for ((resolvedId, score) in scores) {
+            val shard = shardFor(resolvedId)
+            shard.lock.withLock {
+                val device = loadDevice(resolvedId)
+                if (device != null && !device.isKnownTracker && device.lastSeenTimestamp <= scoredAt) {
+                    writeBuffer.putDevice(device.copy(threatScore = score))
+                }
+            }
+        }
+        writeBuffer.flush()
+    }
+
+    /** Debounced [rescoreAll], so dragging a setting only rescores once. */
+    private fun requestRescore() {
+        pendingRescore?.cancel()
+        pendingRescore = scope.launch {
+            delay(RESCORE_DEBOUNCE_MS)
+            try {
+                rescoreAll()
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                Log.e(TAG, "Batch rescore failed", e)
+            }
+        }
+    }
+
+    // ---- Long-horizon scoring ---------------------------------------------------------
+
+    /**
+     * Score every device active within the scoring window on its rollups
+     * from the last [days] days, and alert on those whose multi-day pattern
+     * reaches the high threshold.  Returns the number of alerts raised.
+     */
+    suspend fun runLongHorizonPass(days: Int = LONG_HORIZON_DAYS): Int {
+        val now = clock.now()
+        val since = now - days * 24 * 60 * 60 * 1000L
+        var raised = 0
+        for (device in repository.getDevicesSeenSince(now - SCORING_WINDOW_MS)) {
+            if (device.isWhitelisted) continue
+            val result = longHorizonScorer.score(repository.getRollupsForDevice(device.macAddress, since))
+            if (result.score >= settings.highThreshold && raiseLongHorizonAlert(device, result)) raised++
+        }
+        return raised
+    }
+
+    private suspend fun raiseLongHorizonAlert(device: DetectedDevice, result: LongHorizonResult): Boolean {
+        val lastAlert = repository.getLatestAlertForDevice(device.macAddress)
+        if (lastAlert != null && clock.now() - lastAlert.timestamp < LONG_HORIZON_ALERT_COOLDOWN_MS) {
+            return false
+        }
+
+        val location = locationSource.getLocation() ?: return false
+
+        val alert = ThreatAlert(
+            deviceMacAddress = device.macAddress,
+            deviceName = device.deviceName,
+            deviceType = device.deviceType,
+            timestamp = clock.now(),
+            threatScore = result.score.toFloat(),
+            threatLevel = calculator.levelFromScore(result.score),
+            latitude = location.first,
+            longitude = location.second,
+            sightingCount = result.sightingCount,
+            locationCount = result.distinctLocationCount,
+            followDurationMs = result.lastTimestamp - result.firstTimestamp
         )
-        return calculator.calculate(device, sightings)
+
+        repository.createAlert(alert)
+        Log.w(TAG, "Multi-day threat: ${device.macAddress} (${device.deviceName}) " +
+            "score=${result.score} days=${result.activeDays} locations=${result.distinctLocationCount}")
+
+        onThreatDetected?.invoke(alert)
+        return true
     }
 
     // ---- Tier Management ------------------------------------------------------------
@@ -355,28 +711,92 @@ class DetectionEngine(
 
     fun start() {
         _isRunning.value = true
+        // The counter only describes time the engine was actually running
+        repository.recentDeviceCounter.clear()
+        motionStateMachine.start(scope)
+        writeBuffer.start(scope)
+        settings.onScoringSettingsChanged = { requestRescore() }
+        if (rescoreTickMs > 0) {
+            rescoreTickJob = scope.launch {
+                while (isActive) {
+                    delay(rescoreTickMs)
+                    try {
+                        runRescoreTick()
+                    } catch (e: CancellationException) {
+                        throw e
+                    } catch (e: Exception) {
+                        Log.e(TAG, "Rescore tick failed", e)
+                    }
+                }
+            }
+        }
         Log.i(TAG, "Detection engine started (${_currentTier.value})")
     }
 
     fun stop() {
         _isRunning.value = false
+        settings.onScoringSettingsChanged = null
+        pendingRescore?.cancel()
+        rescoreTickJob?.cancel()
+        rescoreTickJob = null
+        motionStateMachine.stop()
+        writeBuffer.stop(scope)
+        identityResolver.flush()
         Log.i(TAG, "Detection engine stopped")
     }
 
-    suspend fun performMaintenance() {
-        val oneWeekAgo = 7 * 24 * 60 * 60 * 1000L
+    /** Stop if running and release the resolver's state files; the engine is not restarted after this. */
+    fun close() {
+        if (_isRunning.value) stop()
+        identityResolver.close()
+    }
 
-        val deletedSightings = repository.deleteOldSightings(oneWeekAgo)
-        val deletedDevices = repository.deleteOldDevices(oneWeekAgo)
-        Log.d(TAG, "Maintenance: deleted $deletedSightings sightings, $deletedDevices devices")
+    suspend fun performMaintenance() {
+        // Commit buffered rows first so retention sees the full picture
+        writeBuffer.flush()
+
+        // Roll raw sightings up before any of them are pruned
+        repository.rollUpSightings(clock.now() - ROLLUP_LAG_MS)
+
+        // Encounters carry scoring; raw sightings are then only forensic detail
+        val sightingRetention =
+            if (settings.encounterScoringEnabled) FORENSIC_RETENTION_MS else SIGHTING_RETENTION_MS
+        val deletedSightings = repository.deleteOldSightings(sightingRetention)
+        val deletedEncounters = repository.deleteOldEncounters(RETENTION_MS)
+        val deletedRollups = repository.deleteOldRollups()
+        val deletedCells = repository.deleteOldDeviceCells(RETENTION_MS)
+        val deletedDevices = repository.deleteOldDevices(RETENTION_MS)
+        Log.d(TAG, "Maintenance: deleted $deletedSightings sightings, " +
+            "$deletedEncounters encounters, $deletedRollups rollups, $deletedCells cells, " +
+            "$deletedDevices devices")
+
+        val longHorizonAlerts = runLongHorizonPass()
+        if (longHorizonAlerts > 0) Log.i(TAG, "Long-horizon pass raised $longHorizonAlerts alerts")
 
         // Cleanup identity resolver caches
         identityResolver.cleanup()
 
-        // Prune throttle maps
-        val now = System.currentTimeMillis()
+        // Prune throttle maps and scheduler profiles, one shard at a time
+        val now = clock.now()
         val throttleCutoff = now - 60 * 60 * 1000L
-        lastScanProcessed.entries.removeAll { it.value < throttleCutoff }
-        lastScoreComputed.entries.removeAll { it.value < throttleCutoff }
+        rescoreScheduler.prune(throttleCutoff)
+        var stateStats = CacheStats.EMPTY
+        var encounterStats = CacheStats.EMPTY
+        var cellStats = CacheStats.EMPTY
+        for (shard in shards) {
+            shard.lock.withLock {
+                shard.lastScanProcessed.removeAll { _, processedAt -> processedAt < throttleCutoff }
+                shard.incrementalStates.removeAll { id, _ -> !rescoreScheduler.isTracked(id) }
+                shard.openEncounters.removeAll { _, encounter -> encounter.endTimestamp < throttleCutoff }
+                // Reloaded on next sighting, so location counts drop expired cells
+                if (deletedCells > 0) shard.deviceCells.clear()
+                stateStats += shard.incrementalStates.stats()
+                encounterStats += shard.openEncounters.stats()
+                cellStats += shard.deviceCells.stats()
+            }
+        }
+        Log.d(TAG, "Caches: devices [${repository.deviceCache.stats()}], " +
+            "resolver macs [${identityResolver.cacheStats()}], " +
+            "incremental states [$stateStats], open encounters [$encounterStats], cells [$cellStats]")
     }
 }
@@ -8,11 +8,13 @@ import android.content.SharedPreferences
  * caching.  Settings are read from disk once on construction and refreshed
  * only when a write occurs or [refreshCache] is called explicitly, avoiding
  * repeated disk I/O during scoring hot-paths.
+ *
+ * JVM tests construct it over an in-memory [SharedPreferences].
  */
-class SuspicionSettings(context: Context) {
+class SuspicionSettings(private val prefs: SharedPreferences) : SuspicionConfig {
 
-    private val prefs: SharedPreferences =
-        context.getSharedPreferences("suspicion_settings", Context.MODE_PRIVATE)
+    constructor(context: Context) :
+        this(context.getSharedPreferences("suspicion_settings", Context.MODE_PRIVATE))
 
     // ---- In-memory cache (populated on construction, updated on writes) ----
 
@@ -30,11 +32,26 @@ class SuspicionSettings(context: Context) {
     private var _themeMode: String = THEME_DARK
     private var _scanThrottleMs: Long = 0
     private var _scoreThrottleMs: Long = 0
+    private var _rescoreBudgetPerTick: Int = 0
+    private var _incrementalScoringEnabled: Boolean = true
+    private var _encounterScoringEnabled: Boolean = false
+    private var _ingestQueueCapacity: Int = 0
+    private var _ingestOverloadPolicy: String = DEFAULT_INGEST_OVERLOAD_POLICY
+    private var _scanTraceRecordingEnabled: Boolean = false
 
     init {
         refreshCache()
     }
 
+    /**
+     * Invoked after a setting that changes computed scores (clustering
+     * distance, streak gap, correlation window) is written, or on
+     * [resetToDefaults].  Thresholds only move the LOW/MEDIUM/HIGH cut-offs,
+     * not the stored score, so they don't fire it.
+     */
+    @Volatile
+    var onScoringSettingsChanged: (() -> Unit)? = null
+
     /**
      * Reload all cached values from SharedPreferences.
      */
@@ -53,36 +70,45 @@ class SuspicionSettings(context: Context) {
         _themeMode = prefs.getString(KEY_THEME_MODE, THEME_DARK) ?: THEME_DARK
         _scanThrottleMs = prefs.getLong(KEY_SCAN_THROTTLE, DEFAULT_SCAN_THROTTLE_MS)
         _scoreThrottleMs = prefs.getLong(KEY_SCORE_THROTTLE, DEFAULT_SCORE_THROTTLE_MS)
+        _rescoreBudgetPerTick = prefs.getInt(KEY_RESCORE_BUDGET, DEFAULT_RESCORE_BUDGET_PER_TICK)
+        _incrementalScoringEnabled = prefs.getBoolean(KEY_INCREMENTAL_SCORING, true)
+        _encounterScoringEnabled = prefs.getBoolean(KEY_ENCOUNTER_SCORING, false)
+        _ingestQueueCapacity = prefs.getInt(KEY_INGEST_CAPACITY, DEFAULT_INGEST_CAPACITY)
+        _ingestOverloadPolicy = prefs.getString(KEY_INGEST_POLICY, DEFAULT_INGEST_OVERLOAD_POLICY)
+            ?: DEFAULT_INGEST_OVERLOAD_POLICY
+        _scanTraceRecordingEnabled = prefs.getBoolean(KEY_SCAN_TRACE_RECORDING, false)
     }
 
     // --- Location Clustering ---
 
-    var locationClusterThresholdMeters: Float
+    override var locationClusterThresholdMeters: Float
         get() = _locationClusterThresholdMeters
         set(value) {
             _locationClusterThresholdMeters = value
             prefs.edit().putFloat(KEY_LOCATION_CLUSTER_THRESHOLD, value).apply()
+            onScoringSettingsChanged?.invoke()
         }
 
     // --- Streak Detection ---
 
-    var streakGapThresholdMinutes: Int
+    override var streakGapThresholdMinutes: Int
         get() = _streakGapThresholdMinutes
         set(value) {
             _streakGapThresholdMinutes = value
             prefs.edit().putInt(KEY_STREAK_GAP_THRESHOLD, value).apply()
+            onScoringSettingsChanged?.invoke()
         }
 
     // --- Suspicion Thresholds (0-100 scale) ---
 
-    var lowThreshold: Int
+    override var lowThreshold: Int
         get() = _lowThreshold
         set(value) {
             _lowThreshold = value
             prefs.edit().putInt(KEY_LOW_THRESHOLD, value).apply()
         }
 
-    var highThreshold: Int
+    override var highThreshold: Int
         get() = _highThreshold
         set(value) {
             _highThreshold = value
@@ -123,11 +149,12 @@ class SuspicionSettings(context: Context) {
 
     // --- Movement Correlation ---
 
-    var movementCorrelationWindowMinutes: Int
+    override var movementCorrelationWindowMinutes: Int
         get() = _movementCorrelationWindowMinutes
         set(value) {
             _movementCorrelationWindowMinutes = value
             prefs.edit().putInt(KEY_CORRELATION_WINDOW, value).apply()
+            onScoringSettingsChanged?.invoke()
         }
 
     // --- Calibration Mode ---
@@ -158,7 +185,10 @@ class SuspicionSettings(context: Context) {
             prefs.edit().putLong(KEY_SCAN_THROTTLE, value).apply()
         }
 
-    /** Minimum interval between re-scoring the same device (ms). */
+    /**
+     * Minimum interval between re-scoring the same device (ms).  Urgent
+     * devices are rescored this often; others back off (see [RescoreScheduler]).
+     */
     var scoreThrottleMs: Long
         get() = _scoreThrottleMs
         set(value) {
@@ -166,6 +196,67 @@ class SuspicionSettings(context: Context) {
             prefs.edit().putLong(KEY_SCORE_THROTTLE, value).apply()
         }
 
+    /** Most devices the rescoring tick scores at once. */
+    var rescoreBudgetPerTick: Int
+        get() = _rescoreBudgetPerTick
+        set(value) {
+            _rescoreBudgetPerTick = value
+            prefs.edit().putInt(KEY_RESCORE_BUDGET, value).apply()
+        }
+
+    // --- Scoring Mode ---
+
+    /**
+     * Score from per-device streaming accumulators instead of re-processing
+     * the full sighting window on every rescore.
+     */
+    var incrementalScoringEnabled: Boolean
+        get() = _incrementalScoringEnabled
+        set(value) {
+            _incrementalScoringEnabled = value
+            prefs.edit().putBoolean(KEY_INCREMENTAL_SCORING, value).apply()
+        }
+
+    /**
+     * Score from per-encounter summaries instead of raw sightings; takes
+     * precedence over [incrementalScoringEnabled].  Raw sightings are then
+     * only kept for a short forensic window.
+     */
+    var encounterScoringEnabled: Boolean
+        get() = _encounterScoringEnabled
+        set(value) {
+            _encounterScoringEnabled = value
+            prefs.edit().putBoolean(KEY_ENCOUNTER_SCORING, value).apply()
+        }
+
+    // --- Ingest / Load Shedding ---
+
+    /** Max scan results queued per scanner before the overload policy kicks in. */
+    var ingestQueueCapacity: Int
+        get() = _ingestQueueCapacity
+        set(value) {
+            _ingestQueueCapacity = value
+            prefs.edit().putInt(KEY_INGEST_CAPACITY, value).apply()
+        }
+
+    /** Name of a [com.example.follower.scanner.OverloadPolicy] constant. */
+    var ingestOverloadPolicy: String
+        get() = _ingestOverloadPolicy
+        set(value) {
+            _ingestOverloadPolicy = value
+            prefs.edit().putString(KEY_INGEST_POLICY, value).apply()
+        }
+
+    // --- Diagnostics ---
+
+    /** Record the raw scan / location stream to a trace file for offline replay. */
+    var scanTraceRecordingEnabled: Boolean
+        get() = _scanTraceRecordingEnabled
+        set(value) {
+            _scanTraceRecordingEnabled = value
+            prefs.edit().putBoolean(KEY_SCAN_TRACE_RECORDING, value).apply()
+        }
+
     // --- Theme ---
 
     var themeMode: String
@@ -180,6 +271,7 @@ class SuspicionSettings(context: Context) {
         prefs.edit().clear().apply()
         themeMode = currentTheme
         refreshCache()
+        onScoringSettingsChanged?.invoke()
     }
 
     companion object {
@@ -197,6 +289,12 @@ class SuspicionSettings(context: Context) {
         private const val KEY_THEME_MODE = "theme_mode"
         private const val KEY_SCAN_THROTTLE = "scan_throttle_ms"
         private const val KEY_SCORE_THROTTLE = "score_throttle_ms"
+        private const val KEY_RESCORE_BUDGET = "rescore_budget_per_tick"
+        private const val KEY_INCREMENTAL_SCORING = "incremental_scoring"
+        private const val KEY_ENCOUNTER_SCORING = "encounter_scoring"
+        private const val KEY_INGEST_CAPACITY = "ingest_queue_capacity"
+        private const val KEY_INGEST_POLICY = "ingest_overload_policy"
+        private const val KEY_SCAN_TRACE_RECORDING = "scan_trace_recording"
 
         const val THEME_DARK = "dark"
         const val THEME_LIGHT = "light"
@@ -213,5 +311,8 @@ class SuspicionSettings(context: Context) {
         const val DEFAULT_CORRELATION_WINDOW = 5
         const val DEFAULT_SCAN_THROTTLE_MS = 5_000L
         const val DEFAULT_SCORE_THROTTLE_MS = 60_000L
+        const val DEFAULT_RESCORE_BUDGET_PER_TICK = 32
+        const val DEFAULT_INGEST_CAPACITY = 512
+        const val DEFAULT_INGEST_OVERLOAD_POLICY = "PRIORITY_PRESERVE"
     }
 }
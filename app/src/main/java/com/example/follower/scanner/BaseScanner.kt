@@ -2,7 +2,7 @@ package com.example.follower.scanner
 
 import com.example.follower.data.model.ScanResult
 import kotlinx.coroutines.flow.Flow
-import kotlinx.coroutines.flow.MutableSharedFlow
+import kotlinx.coroutines.flow.flow
 
 /**
  * Base interface for all device scanners.
@@ -37,20 +37,33 @@ interface BaseScanner {
 
 /**
  * Abstract base implementation with common functionality.
+ *
+ * Results are handed to the engine through a bounded [IngestQueue]; see
+ * [OverloadPolicy] for what happens when scanners outpace the engine.
+ * [scanResults] drains the queue and is meant for a single collector.
  */
-abstract class AbstractScanner : BaseScanner {
+abstract class AbstractScanner(
+    ingestCapacity: Int = IngestQueue.DEFAULT_CAPACITY,
+    overloadPolicy: OverloadPolicy = OverloadPolicy.COALESCE_PER_MAC,
+    isPriority: (ScanResult) -> Boolean = { false }
+) : BaseScanner {
 
-    protected val _scanResults = MutableSharedFlow<ScanResult>(
-        replay = 0,
-        extraBufferCapacity = 100
-    )
+    protected val ingestQueue = IngestQueue(ingestCapacity, overloadPolicy, isPriority)
 
-    override val scanResults: Flow<ScanResult> = _scanResults
+    override val scanResults: Flow<ScanResult> = flow {
+        while (true) {
+            emit(ingestQueue.take())
+        }
+    }
 
     protected var _isScanning = false
     override val isScanning: Boolean get() = _isScanning
 
-    protected suspend fun emitResult(result: ScanResult) {
-        _scanResults.emit(result)
+    /** Dropped / coalesced counters and queue depth for this scanner. */
+    val ingestStats: IngestQueue.Stats get() = ingestQueue.stats()
+
+    /** Non-blocking: safe to call straight from radio callbacks. */
+    protected fun offerResult(result: ScanResult) {
+        ingestQueue.offer(result)
     }
 }
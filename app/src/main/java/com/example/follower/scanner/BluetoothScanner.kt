@@ -16,9 +16,6 @@ import android.os.Build
 import android.util.Log
 import com.example.follower.data.model.DeviceType
 import com.example.follower.data.model.ScanResult
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
 
 /**
  * Scanner for Bluetooth Classic and Bluetooth Low Energy devices.
@@ -26,10 +23,12 @@ import kotlinx.coroutines.launch
  */
 class BluetoothScanner(
     private val context: Context,
-    private val scope: CoroutineScope,
     private val locationProvider: () -> Pair<Double, Double>?,
-    private val locationAccuracyProvider: () -> Float
-) : AbstractScanner() {
+    private val locationAccuracyProvider: () -> Float,
+    ingestCapacity: Int = IngestQueue.DEFAULT_CAPACITY,
+    overloadPolicy: OverloadPolicy = OverloadPolicy.PRIORITY_PRESERVE,
+    isPriority: (ScanResult) -> Boolean = { false }
+) : AbstractScanner(ingestCapacity, overloadPolicy, isPriority) {
 
     companion object {
         private const val TAG = "BluetoothScanner"
@@ -191,9 +190,7 @@ class BluetoothScanner(
             bondState = device.bondState
         )
 
-        scope.launch(Dispatchers.IO) {
-            emitResult(result)
-        }
+        offerResult(result)
     }
 
     @SuppressLint("MissingPermission")
@@ -224,9 +221,7 @@ class BluetoothScanner(
             txPowerLevel = txPowerLevel
         )
 
-        scope.launch(Dispatchers.IO) {
-            emitResult(result)
-        }
+        offerResult(result)
     }
 
     /**
@@ -0,0 +1,50 @@
+package com.example.follower.scanner
+
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+
+/** One position fix. */
+data class LocationFix(
+    val latitude: Double,
+    val longitude: Double,
+    /** Accuracy radius in meters. */
+    val accuracy: Float,
+    val timestamp: Long
+)
+
+/**
+ * Where the detection engine and [MotionStateMachine] read the user's
+ * position from.  [LocationTracker] is the live fused-provider source;
+ * [ManualLocationSource] is fed by hand for trace replay, simulation and
+ * JVM tests.
+ */
+interface LocationSource {
+
+    /** Latest fix, or null before the first one. */
+    val fixes: StateFlow<LocationFix?>
+
+    /**
+     * Push a fix from outside the live provider (trace replay, simulation).
+     * Collectors of [fixes] see it exactly like a live fix.
+     */
+    fun injectLocation(latitude: Double, longitude: Double, accuracy: Float, timestamp: Long)
+
+    /** Current location as a coordinate pair, or null if not available. */
+    fun getLocation(): Pair<Double, Double>? =
+        fixes.value?.let { Pair(it.latitude, it.longitude) }
+
+    /** Current location accuracy in meters. */
+    fun getAccuracy(): Float = fixes.value?.accuracy ?: Float.MAX_VALUE
+}
+
+/** A [LocationSource] that only ever reports injected fixes. */
+class ManualLocationSource : LocationSource {
+
+    private val _fixes = MutableStateFlow<LocationFix?>(null)
+    override val fixes: StateFlow<LocationFix?> = _fixes.asStateFlow()
+
+    override fun injectLocation(latitude: Double, longitude: Double, accuracy: Float, timestamp: Long) {
+        _fixes.value = LocationFix(latitude, longitude, accuracy, timestamp)
+    }
+}
@@ -2,9 +2,9 @@ package com.example.follower.scanner
 
 import android.annotation.SuppressLint
 import android.content.Context
-import android.location.Location
 import android.os.Looper
 import android.util.Log
+import com.example.follower.detection.GeoDistance
 import com.google.android.gms.location.*
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
@@ -14,7 +14,7 @@ import kotlinx.coroutines.flow.asStateFlow
  * GPS location tracker using Google Play Services Fused Location Provider.
  * Provides current location for correlating device sightings with positions.
  */
-class LocationTracker(private val context: Context) {
+class LocationTracker(private val context: Context) : LocationSource {
 
     companion object {
         private const val TAG = "LocationTracker"
@@ -28,8 +28,8 @@ class LocationTracker(private val context: Context) {
     private val fusedLocationClient: FusedLocationProviderClient =
         LocationServices.getFusedLocationProviderClient(context)
 
-    private val _currentLocation = MutableStateFlow<Location?>(null)
-    val currentLocation: StateFlow<Location?> = _currentLocation.asStateFlow()
+    private val _fixes = MutableStateFlow<LocationFix?>(null)
+    override val fixes: StateFlow<LocationFix?> = _fixes.asStateFlow()
 
     private val _isTracking = MutableStateFlow(false)
     val isTracking: StateFlow<Boolean> = _isTracking.asStateFlow()
@@ -42,7 +42,7 @@ class LocationTracker(private val context: Context) {
     private val locationCallback = object : LocationCallback() {
         override fun onLocationResult(result: LocationResult) {
             result.lastLocation?.let { location ->
-                _currentLocation.value = location
+                _fixes.value = LocationFix(location.latitude, location.longitude, location.accuracy, location.time)
                 Log.d(TAG, "Location updated: ${location.latitude}, ${location.longitude} (accuracy: ${location.accuracy}m)")
             }
         }
@@ -52,20 +52,6 @@ class LocationTracker(private val context: Context) {
         }
     }
 
-    /**
-     * Get current location as a coordinate pair, or null if not available.
-     */
-    fun getLocation(): Pair<Double, Double>? {
-        return _currentLocation.value?.let { Pair(it.latitude, it.longitude) }
-    }
-
-    /**
-     * Get current location accuracy in meters.
-     */
-    fun getAccuracy(): Float {
-        return _currentLocation.value?.accuracy ?: Float.MAX_VALUE
-    }
-
     /**
      * Start location tracking.
      */
@@ -78,7 +64,7 @@ class LocationTracker(private val context: Context) {
         // Get last known location immediately
         fusedLocationClient.lastLocation.addOnSuccessListener { location ->
             location?.let {
-                _currentLocation.value = it
+                _fixes.value = LocationFix(it.latitude, it.longitude, it.accuracy, it.time)
                 Log.d(TAG, "Initial location: ${it.latitude}, ${it.longitude}")
             }
         }
@@ -105,17 +91,18 @@ class LocationTracker(private val context: Context) {
         _isTracking.value = false
     }
 
+    override fun injectLocation(latitude: Double, longitude: Double, accuracy: Float, timestamp: Long) {
+        _fixes.value = LocationFix(latitude, longitude, accuracy, timestamp)
+    }
+
     /**
      * Calculate distance between two points in meters.
+     * Uses the shared allocation-free kernel ([GeoDistance.meters]).
      */
     fun distanceBetween(
         lat1: Double, lon1: Double,
         lat2: Double, lon2: Double
-    ): Float {
-        val results = FloatArray(1)
-        Location.distanceBetween(lat1, lon1, lat2, lon2, results)
-        return results[0]
-    }
+    ): Float = GeoDistance.meters(lat1, lon1, lat2, lon2)
 
     /**
      * Check if two locations are within a specified radius.
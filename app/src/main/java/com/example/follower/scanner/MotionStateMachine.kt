@@ -0,0 +1,116 @@
+package com.example.follower.scanner
+
+import android.util.Log
+import com.example.follower.detection.GeoDistance
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.filterNotNull
+import kotlinx.coroutines.launch
+
+/**
+ * Whether the user is currently moving, as decided by [MotionStateMachine].
+ */
+enum class MotionState {
+    /** No usable fix yet. */
+    UNKNOWN,
+    STATIONARY,
+    MOVING
+}
+
+/**
+ * Movement / stationary state machine driven by the location stream.
+ *
+ * Subscribes once to [LocationSource.fixes] instead of being
+ * polled per scan, so the result no longer depends on scan timing.
+ * Hysteresis:
+ *  - → [MotionState.MOVING] once a fix lands more than [MOVE_THRESHOLD_METERS]
+ *    from the anchor (the anchor then moves to that fix).
+ *  - → [MotionState.STATIONARY] once no such displacement has happened for
+ *    [STATIONARY_DWELL_MS].
+ * Fixes less accurate than [MAX_ACCURACY_METERS] are ignored so GPS jitter
+ * indoors doesn't flap the state.
+ *
+ * Readers on hot paths use the volatile [isMoving]; anything that wants to
+ * react to transitions (duty-cycling, rescoring) collects [state].
+ */
+class MotionStateMachine(private val locationSource: LocationSource) {
+
+    companion object {
+        private const val TAG = "MotionStateMachine"
+
+        /** Displacement from the anchor that counts as movement. */
+        const val MOVE_THRESHOLD_METERS = 50f
+
+        /** Time without movement before the user is considered stationary. */
+        const val STATIONARY_DWELL_MS = 2 * 60 * 1000L
+
+        /** Fixes with a worse accuracy radius than this are ignored. */
+        const val MAX_ACCURACY_METERS = 100f
+    }
+
+    private val _state = MutableStateFlow(MotionState.UNKNOWN)
+    val state: StateFlow<MotionState> = _state.asStateFlow()
+
+    /** Cheap hot-path read of `state.value == MOVING`. */
+    @Volatile
+    var isMoving: Boolean = false
+        private set
+
+    private var anchorLat = 0.0
+    private var anchorLon = 0.0
+    private var hasAnchor = false
+    private var lastMovementTime = 0L
+
+    private var job: Job? = null
+
+    fun start(scope: CoroutineScope) {
+        if (job?.isActive == true) return
+        job = scope.launch {
+            locationSource.fixes
+                .filterNotNull()
+                .collect { onFix(it.latitude, it.longitude, it.accuracy, it.timestamp) }
+        }
+    }
+
+    fun stop() {
+        job?.cancel()
+        job = null
+    }
+
+    /** Feed one fix into the state machine.  Exposed for replay / simulation. */
+    @Synchronized
+    fun onFix(latitude: Double, longitude: Double, accuracy: Float, timestamp: Long) {
+        if (accuracy > MAX_ACCURACY_METERS) return
+
+        if (!hasAnchor) {
+            anchorLat = latitude
+            anchorLon = longitude
+            hasAnchor = true
+            lastMovementTime = timestamp
+            transition(MotionState.STATIONARY)
+            return
+        }
+
+        val displacement = GeoDistance.meters(anchorLat, anchorLon, latitude, longitude)
+        if (displacement > MOVE_THRESHOLD_METERS) {
+            anchorLat = latitude
+            anchorLon = longitude
+            lastMovementTime = timestamp
+            transition(MotionState.MOVING)
+        } else if (_state.value == MotionState.MOVING &&
+            timestamp - lastMovementTime >= STATIONARY_DWELL_MS
+        ) {
+            transition(MotionState.STATIONARY)
+        }
+    }
+
+    private fun transition(next: MotionState) {
+        if (_state.value == next) return
+        Log.d(TAG, "Motion: ${_state.value} → $next")
+        _state.value = next
+        isMoving = next == MotionState.MOVING
+    }
+}
@@ -11,9 +11,6 @@ import android.os.Looper
 import android.util.Log
 import com.example.follower.data.model.DeviceType
 import com.example.follower.data.model.ScanResult
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.launch
 
 /**
  * Scanner for WiFi Access Points.
@@ -21,10 +18,11 @@ import kotlinx.coroutines.launch
  */
 class WifiApScanner(
     private val context: Context,
-    private val scope: CoroutineScope,
     private val locationProvider: () -> Pair<Double, Double>?,
-    private val locationAccuracyProvider: () -> Float
-) : AbstractScanner() {
+    private val locationAccuracyProvider: () -> Float,
+    ingestCapacity: Int = IngestQueue.DEFAULT_CAPACITY,
+    overloadPolicy: OverloadPolicy = OverloadPolicy.COALESCE_PER_MAC
+) : AbstractScanner(ingestCapacity, overloadPolicy) {
 
     companion object {
         private const val TAG = "WifiApScanner"
@@ -120,9 +118,7 @@ class WifiApScanner(
                 frequency = ap.frequency
             )
 
-            scope.launch(Dispatchers.IO) {
-                emitResult(result)
-            }
+            offerResult(result)
         }
     }
 
@@ -13,9 +13,12 @@ import com.example.follower.R
 import com.example.follower.data.model.ThreatAlert
 import com.example.follower.data.model.ThreatLevel
 import com.example.follower.detection.DetectionEngine
+import com.example.follower.detection.KnownTrackerDetector
 import com.example.follower.scanner.BluetoothScanner
 import com.example.follower.scanner.LocationTracker
+import com.example.follower.scanner.OverloadPolicy
 import com.example.follower.scanner.WifiApScanner
+import com.example.follower.trace.ScanTraceRecorder
 import com.example.follower.ui.main.MainActivity
 import com.example.follower.usb.Usb80211Driver
 import com.example.follower.usb.UsbAdapterManager
@@ -23,6 +26,9 @@ import kotlinx.coroutines.*
 import kotlinx.coroutines.flow.MutableStateFlow
 import kotlinx.coroutines.flow.StateFlow
 import kotlinx.coroutines.flow.asStateFlow
+import kotlinx.coroutines.flow.filterNotNull
+import java.io.File
+import java.io.IOException
 
 /**
  * Foreground service that performs continuous scanning for tracking detection.
@@ -35,6 +41,8 @@ class ScanningService : Service() {
         private const val ALERT_NOTIFICATION_ID = 2
         private const val CHANNEL_ID_SCANNING = "scanning_channel"
         private const val CHANNEL_ID_ALERTS = "alerts_channel"
+        private const val TRACE_DIR = "traces"
+        private const val RESOLVER_DIR = "resolver"
     }
 
     inner class LocalBinder : Binder() {
@@ -54,6 +62,9 @@ class ScanningService : Service() {
 
     private var usbDriver: Usb80211Driver? = null
 
+    @Volatile
+    private var traceRecorder: ScanTraceRecorder? = null
+
     private val _isScanning = MutableStateFlow(false)
     val isScanning: StateFlow<Boolean> = _isScanning.asStateFlow()
 
@@ -86,6 +97,7 @@ class ScanningService : Service() {
         Log.d(TAG, "Service destroyed")
 
         stopScanning()
+        detectionEngine.close()
         serviceScope.cancel()
         usbAdapterManager.shutdown()
     }
@@ -163,27 +175,42 @@ class ScanningService : Service() {
         locationTracker = LocationTracker(this)
 
         // Initialize scanners
+        val settings = app.suspicionSettings
+        val overloadPolicy = OverloadPolicy.values()
+            .firstOrNull { it.name == settings.ingestOverloadPolicy }
+            ?: OverloadPolicy.PRIORITY_PRESERVE
+        val trackerSignatures = KnownTrackerDetector()
+
         bluetoothScanner = BluetoothScanner(
             context = this,
-            scope = serviceScope,
             locationProvider = { locationTracker.getLocation() },
-            locationAccuracyProvider = { locationTracker.getAccuracy() }
+            locationAccuracyProvider = { locationTracker.getAccuracy() },
+            ingestCapacity = settings.ingestQueueCapacity,
+            overloadPolicy = overloadPolicy,
+            isPriority = trackerSignatures::hasTrackerSignature
         )
 
         wifiApScanner = WifiApScanner(
             context = this,
-            scope = serviceScope,
             locationProvider = { locationTracker.getLocation() },
-            locationAccuracyProvider = { locationTracker.getAccuracy() }
+            locationAccuracyProvider = { locationTracker.getAccuracy() },
+            ingestCapacity = settings.ingestQueueCapacity,
+            // No tracker signatures in AP beacons — plain per-BSSID coalescing
+            overloadPolicy = if (overloadPolicy == OverloadPolicy.PRIORITY_PRESERVE) {
+                OverloadPolicy.COALESCE_PER_MAC
+            } else {
+                overloadPolicy
+            }
         )
 
         // Initialize detection engine
         detectionEngine = DetectionEngine(
             repository = app.repository,
-            locationTracker = locationTracker,
+            locationSource = locationTracker,
             scope = serviceScope,
             settings = app.suspicionSettings,
-            calibrationManager = app.calibrationManager
+            calibrationManager = app.calibrationManager,
+            resolverStateDir = File(filesDir, RESOLVER_DIR)
         )
 
         // Set up threat callback
@@ -204,6 +231,7 @@ class ScanningService : Service() {
         // Collect scan results
         serviceScope.launch {
             bluetoothScanner.scanResults.collect { result ->
+                recordTrace { it.recordScan(result) }
                 try {
                     detectionEngine.processScanResult(result)
                 } catch (e: Exception) {
@@ -214,6 +242,7 @@ class ScanningService : Service() {
 
         serviceScope.launch {
             wifiApScanner.scanResults.collect { result ->
+                recordTrace { it.recordScan(result) }
                 try {
                     detectionEngine.processScanResult(result)
                 } catch (e: Exception) {
@@ -222,6 +251,13 @@ class ScanningService : Service() {
             }
         }
 
+        // Feed location fixes to the trace recorder (no-op unless recording)
+        serviceScope.launch {
+            locationTracker.fixes.filterNotNull().collect { fix ->
+                recordTrace { it.recordLocation(fix.latitude, fix.longitude, fix.accuracy, fix.timestamp) }
+            }
+        }
+
         // Update tier state
         serviceScope.launch {
             detectionEngine.currentTier.collect { tier ->
@@ -234,6 +270,10 @@ class ScanningService : Service() {
     private fun startScanning() {
         Log.i(TAG, "Starting scanning")
 
+        if ((application as FollowerApplication).suspicionSettings.scanTraceRecordingEnabled) {
+            startTraceRecording()
+        }
+
         locationTracker.startTracking()
         bluetoothScanner.startScanning()
         wifiApScanner.startScanning()
@@ -246,6 +286,8 @@ class ScanningService : Service() {
             while (isActive) {
                 delay(60 * 60 * 1000L) // Every hour
                 detectionEngine.performMaintenance()
+                Log.d(TAG, "Ingest BT: ${bluetoothScanner.ingestStats}")
+                Log.d(TAG, "Ingest WiFi: ${wifiApScanner.ingestStats}")
                 // Flush any pending calibration samples to disk
                 (application as FollowerApplication).calibrationManager.flushPendingSamples()
             }
@@ -259,6 +301,7 @@ class ScanningService : Service() {
         wifiApScanner.stopScanning()
         locationTracker.stopTracking()
         detectionEngine.stop()
+        stopTraceRecording()
 
         usbDriver?.close()
         usbDriver = null
@@ -269,6 +312,51 @@ class ScanningService : Service() {
         _isScanning.value = false
     }
 
+    @Synchronized
+    private fun startTraceRecording() {
+        if (traceRecorder != null) return
+        val file = File(File(filesDir, TRACE_DIR), "scan-${System.currentTimeMillis()}.trace")
+        traceRecorder = try {
+            ScanTraceRecorder.open(file)
+        } catch (e: Exception) {
+            Log.e(TAG, "Could not open scan trace ${file.path}", e)
+            return
+        }
+        Log.i(TAG, "Recording scan trace to ${file.path}")
+    }
+
+    @Synchronized
+    private fun stopTraceRecording() {
+        val recorder = traceRecorder ?: return
+        traceRecorder = null
+        try {
+            Log.i(TAG, "Scan trace closed after ${recorder.recordCount} records")
+            recorder.close()
+        } catch (e: Exception) {
+            Log.e(TAG, "Error closing scan trace", e)
+        }
+    }
+
+    /**
+     * Hand the active trace recorder, if any, to [record].  Collectors run
+     * on [serviceScope], which has no exception handler, so a write failure
+     * (disk full, file removed) is caught here: the first one is logged and
+     * stops recording, and scanning carries on without the trace.
+     */
+    private inline fun recordTrace(record: (ScanTraceRecorder) -> Unit) {
+        val recorder = traceRecorder ?: return
+        try {
+            record(recorder)
+        } catch (e: IOException) {
+            synchronized(this) {
+                // Another collector may have hit the same failure first
+                if (traceRecorder !== recorder) return
+                Log.e(TAG, "Scan trace write failed; recording stopped", e)
+                stopTraceRecording()
+            }
+        }
+    }
+
     private fun enableTier2(device: android.hardware.usb.UsbDevice) {
         Log.i(TAG, "Enabling Tier 2 with USB adapter")
 
@@ -289,7 +377,10 @@ class ScanningService : Service() {
                     val result = usbDriver?.probeToScanResult(
                         probe, location.first, location.second, accuracy
                     )
-                    result?.let { detectionEngine.processScanResult(it) }
+                    result?.let {
+                        recordTrace { recorder -> recorder.recordScan(it) }
+                        detectionEngine.processScanResult(it)
+                    }
                 }
             }
 
@@ -0,0 +1,141 @@
+package com.example.follower.trace
+
+import com.example.follower.data.database.DeviceDao
+import com.example.follower.data.repository.DeviceRepository
+import com.example.follower.detection.DetectionEngine
+import com.example.follower.detection.ManualClock
+import com.example.follower.detection.SuspicionSettings
+import com.example.follower.scanner.LocationSource
+import com.example.follower.scanner.ManualLocationSource
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.delay
+
+/**
+ * Feeds a recorded trace through a [DetectionEngine] whose clock is the
+ * given [ManualClock], so every timestamp the engine sees comes from the
+ * trace rather than the wall clock.
+ *
+ * Location fixes go to [locationSource] (which alerts and sightings read
+ * from) and straight into the engine's motion state machine, so movement
+ * gating flips exactly where it did during recording instead of whenever
+ * the source's collector happens to run.
+ *
+ * A rescoring tick runs after every scan, on trace time, so scores and
+ * alerts don't depend on how fast the replay goes.  Build the engine with
+ * `rescoreTickMs = 0` to leave the tick to the replayer alone, or use
+ * [create], which also runs on a plain JVM given any [DeviceDao].
+ */
+class ScanTraceReplayer(
+    val engine: DetectionEngine,
+    private val clock: ManualClock,
+    private val locationSource: LocationSource? = null
+) {
+    companion object {
+        /** Gaps longer than this are not slept through at [Speed.WallClock] / [Speed.Accelerated]. */
+        private const val MAX_SLEEP_MS = 60_000L
+
+        /**
+         * Wire a fresh engine to [deviceDao], all on one [ManualClock]
+         * starting at [startTime], with a [ManualLocationSource] fed from
+         * the trace.
+         */
+        fun create(
+            deviceDao: DeviceDao,
+            settings: SuspicionSettings,
+            scope: CoroutineScope,
+            startTime: Long = 0L
+        ): ScanTraceReplayer {
+            val clock = ManualClock(startTime)
+            val locationSource = ManualLocationSource()
+            val engine = DetectionEngine(
+                repository = DeviceRepository(deviceDao, clock),
+                locationSource = locationSource,
+                scope = scope,
+                settings = settings,
+                clock = clock,
+                // The replayer ticks rescoring after every scan, on trace time
+                rescoreTickMs = 0L
+            )
+            return ScanTraceReplayer(engine, clock, locationSource)
+        }
+    }
+
+    sealed class Speed {
+        /** Sleep between events as long as they were apart when recorded. */
+        object WallClock : Speed()
+
+        /** Sleep `gap / factor` between events. */
+        data class Accelerated(val factor: Double) : Speed()
+
+        /** No sleeping; throughput is bounded by the engine alone. */
+        object Max : Speed()
+    }
+
+    data class Stats(
+        val scans: Long,
+        val locations: Long,
+        /** Span of trace time replayed. */
+        val traceSpanMs: Long,
+        /** Wall time the replay took. */
+        val elapsedMs: Long
+    ) {
+        val scansPerSecond: Double
+            get() = if (elapsedMs > 0) scans * 1000.0 / elapsedMs else 0.0
+
+        val speedup: Double
+            get() = if (elapsedMs > 0) traceSpanMs.toDouble() / elapsedMs else 0.0
+
+        override fun toString(): String =
+            "$scans scans / $locations fixes in ${elapsedMs}ms " +
+                "(${"%.0f".format(scansPerSecond)} scans/s, ${"%.0f".format(speedup)}x)"
+    }
+
+    suspend fun replay(reader: ScanTraceReader, speed: Speed = Speed.Max): Stats {
+        var scans = 0L
+        var locations = 0L
+        var firstTimestamp = -1L
+        var previousTimestamp = -1L
+        val startNanos = System.nanoTime()
+
+        for (event in reader.events()) {
+            if (firstTimestamp < 0) firstTimestamp = event.timestamp
+            if (previousTimestamp >= 0) pace(event.timestamp - previousTimestamp, speed)
+            previousTimestamp = event.timestamp
+            clock.advanceTo(event.timestamp)
+
+            when (event) {
+                is TraceEvent.Scan -> {
+                    engine.processScanResult(event.result)
+                    engine.runRescoreTick()
+                    scans++
+                }
+                is TraceEvent.LocationFix -> {
+                    locationSource?.injectLocation(
+                        event.latitude, event.longitude, event.accuracy, event.timestamp
+                    )
+                    engine.motionStateMachine.onFix(
+                        event.latitude, event.longitude, event.accuracy, event.timestamp
+                    )
+                    locations++
+                }
+            }
+        }
+
+        return Stats(
+            scans = scans,
+            locations = locations,
+            traceSpanMs = if (firstTimestamp < 0) 0 else previousTimestamp - firstTimestamp,
+            elapsedMs = (System.nanoTime() - startNanos) / 1_000_000
+        )
+    }
+
+    private suspend fun pace(gapMs: Long, speed: Speed) {
+        if (gapMs <= 0) return
+        val sleepMs = when (speed) {
+            Speed.WallClock -> gapMs
+            is Speed.Accelerated -> (gapMs / speed.factor).toLong()
+            Speed.Max -> 0L
+        }
+        if (sleepMs > 0) delay(sleepMs.coerceAtMost(MAX_SLEEP_MS))
+    }
+}
@@ -11,6 +11,7 @@ import androidx.recyclerview.widget.RecyclerView
 import com.example.follower.R
 import com.example.follower.data.model.DetectedDevice
 import com.example.follower.databinding.ItemDeviceBinding
+import com.example.follower.detection.ScoreDecay
 
 class DeviceAdapter(
     private val showThreatInfo: Boolean = false,
@@ -44,7 +45,9 @@ class DeviceAdapter(
             }
 
             if (showThreatInfo) {
-                val score = device.threatScore.toInt()
+                val score = ScoreDecay.decayedScore(
+                    device.threatScore, device.lastSeenTimestamp, System.currentTimeMillis()
+                ).toInt()
                 val ctx = binding.root.context
 
                 // Badge dot color
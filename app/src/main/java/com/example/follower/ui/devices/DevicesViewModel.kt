@@ -47,7 +47,8 @@ class DevicesViewModel(application: Application) : AndroidViewModel(application)
         .flatMapLatest { now ->
             repository.getSuspiciousDevicesDetailed(
                 settings.lowThreshold.toFloat() + 1f,
-                now - SUSPICIOUS_WINDOW_MS
+                now - SUSPICIOUS_WINDOW_MS,
+                now
             )
         }
         .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), emptyList())
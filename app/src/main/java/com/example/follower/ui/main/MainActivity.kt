@@ -19,6 +19,7 @@ import androidx.lifecycle.lifecycleScope
 import com.example.follower.R
 import com.example.follower.databinding.ActivityMainBinding
 import com.example.follower.detection.DetectionEngine
+import com.example.follower.detection.ScoreDecay
 import com.example.follower.service.ScanningService
 import com.example.follower.ui.alerts.AlertsActivity
 import com.example.follower.ui.devices.DevicesActivity
@@ -198,7 +199,10 @@ class MainActivity : AppCompatActivity() {
     }
 
     private fun updateThreatDisplay(devices: List<com.example.follower.data.model.DetectedDevice>) {
-        val maxScore = devices.maxOfOrNull { it.threatScore.toInt() } ?: 0
+        val now = System.currentTimeMillis()
+        val maxScore = devices.maxOfOrNull {
+            ScoreDecay.decayedScore(it.threatScore, it.lastSeenTimestamp, now).toInt()
+        } ?: 0
 
         val (text, color) = when {
             maxScore >= 61 -> getString(R.string.threat_high) to R.color.threat_high
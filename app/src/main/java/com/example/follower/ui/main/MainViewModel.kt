@@ -10,6 +10,7 @@ import com.example.follower.data.model.DetectedDevice
 import com.example.follower.data.model.ThreatAlert
 import com.example.follower.data.repository.DeviceRepository
 import com.example.follower.detection.DetectionEngine
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.flow.*
 import kotlinx.coroutines.launch
 
@@ -18,6 +19,10 @@ class MainViewModel(application: Application) : AndroidViewModel(application) {
     private val repository: DeviceRepository =
         (application as FollowerApplication).repository
 
+    companion object {
+        private const val DECAY_REFRESH_INTERVAL_MS = 60_000L
+    }
+
     private val _isScanning = MutableStateFlow(false)
     val isScanning: StateFlow<Boolean> = _isScanning.asStateFlow()
 
@@ -34,9 +39,15 @@ class MainViewModel(application: Application) : AndroidViewModel(application) {
         .map { it.size }
         .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), 0)
 
-    // Suspicious devices (threat score > low threshold on 0-100 scale)
-    val suspiciousDevices: StateFlow<List<DetectedDevice>> = repository
-        .getSuspiciousDevices(31f)
+    // Suspicious devices (decayed threat score > low threshold on 0-100 scale),
+    // re-queried on a slow tick so devices age out as their scores decay
+    val suspiciousDevices: StateFlow<List<DetectedDevice>> = flow {
+        while (true) {
+            emit(System.currentTimeMillis())
+            delay(DECAY_REFRESH_INTERVAL_MS)
+        }
+    }
+        .flatMapLatest { now -> repository.getSuspiciousDevices(31f, now) }
         .stateIn(viewModelScope, SharingStarted.WhileSubscribed(5000), emptyList())
 
     // All alerts
@@ -31,16 +31,6 @@ class Usb80211Driver(
         // RTL8187 USB endpoints (typical values, may vary)
         private const val BULK_IN_ENDPOINT = 0x81
         private const val BULK_OUT_ENDPOINT = 0x02
-
-        // 802.11 Frame Types
-        private const val FRAME_TYPE_MANAGEMENT = 0x00
-        private const val FRAME_TYPE_CONTROL = 0x01
-        private const val FRAME_TYPE_DATA = 0x02
-
-        // Management Frame Subtypes
-        private const val SUBTYPE_PROBE_REQUEST = 0x04
-        private const val SUBTYPE_PROBE_RESPONSE = 0x05
-        private const val SUBTYPE_BEACON = 0x08
     }
 
     private val _probeRequests = MutableSharedFlow<ProbeRequestFrame>(
@@ -56,29 +46,6 @@ class Usb80211Driver(
     private var bulkInEndpoint: UsbEndpoint? = null
     private var bulkOutEndpoint: UsbEndpoint? = null
 
-    data class ProbeRequestFrame(
-        val sourceMac: String,
-        val destinationMac: String,
-        val ssid: String?,
-        val rssi: Int,
-        val channel: Int,
-        val timestamp: Long = System.currentTimeMillis(),
-        val rawFrame: ByteArray? = null
-    ) {
-        override fun equals(other: Any?): Boolean {
-            if (this === other) return true
-            if (javaClass != other?.javaClass) return false
-            other as ProbeRequestFrame
-            return sourceMac == other.sourceMac && timestamp == other.timestamp
-        }
-
-        override fun hashCode(): Int {
-            var result = sourceMac.hashCode()
-            result = 31 * result + timestamp.hashCode()
-            return result
-        }
-    }
-
     /**
      * Initialize the driver and claim the USB interface.
      */
@@ -219,90 +186,24 @@ class Usb80211Driver(
     }
 
     /**
-     * Process a received 802.11 frame.
+     * Process a received 802.11 frame.  Parsing lives in [Ieee80211Parser].
      */
     private suspend fun processFrame(data: ByteArray) {
-        if (data.size < 24) return // Minimum 802.11 header size
-
         try {
-            // Parse 802.11 MAC header
-            val frameControl = ((data[1].toInt() and 0xFF) shl 8) or (data[0].toInt() and 0xFF)
-            val frameType = (frameControl shr 2) and 0x03
-            val frameSubtype = (frameControl shr 4) and 0x0F
-
-            // We're interested in probe requests
-            if (frameType == FRAME_TYPE_MANAGEMENT && frameSubtype == SUBTYPE_PROBE_REQUEST) {
-                parseProbeRequest(data)
-            }
-
-        } catch (e: Exception) {
-            Log.e(TAG, "Error processing frame", e)
-        }
-    }
-
-    /**
-     * Parse a probe request frame.
-     */
-    private suspend fun parseProbeRequest(data: ByteArray) {
-        try {
-            // Extract addresses from 802.11 header
-            // Address 1 (bytes 4-9): Destination (usually broadcast)
-            // Address 2 (bytes 10-15): Source MAC
-            // Address 3 (bytes 16-21): BSSID
-
-            val sourceMac = extractMacAddress(data, 10)
-            val destMac = extractMacAddress(data, 4)
-
-            // Parse information elements to get SSID
-            var ssid: String? = null
-            var offset = 24 // Start of IEs after MAC header
-
-            while (offset + 2 < data.size) {
-                val elementId = data[offset].toInt() and 0xFF
-                val elementLen = data[offset + 1].toInt() and 0xFF
-
-                if (offset + 2 + elementLen > data.size) break
-
-                if (elementId == 0 && elementLen > 0) {
-                    // SSID element
-                    ssid = String(data, offset + 2, elementLen, Charsets.UTF_8)
-                }
-
-                offset += 2 + elementLen
-            }
-
-            val frame = ProbeRequestFrame(
-                sourceMac = sourceMac,
-                destinationMac = destMac,
-                ssid = ssid,
+            val frame = Ieee80211Parser.parseProbeRequest(
+                data,
                 rssi = -50, // Would need to extract from radiotap header
-                channel = 0, // Would need to track current channel
-                rawFrame = data
-            )
+                channel = 0 // Would need to track current channel
+            ) ?: return
 
             _probeRequests.emit(frame)
-            Log.v(TAG, "Probe request from $sourceMac for SSID: ${ssid ?: "(broadcast)"}")
+            Log.v(TAG, "Probe request from ${frame.sourceMac} for SSID: ${frame.ssid ?: "(broadcast)"}")
 
         } catch (e: Exception) {
-            Log.e(TAG, "Error parsing probe request", e)
+            Log.e(TAG, "Error processing frame", e)
         }
     }
 
-    /**
-     * Extract MAC address from frame data.
-     */
-    private fun extractMacAddress(data: ByteArray, offset: Int): String {
-        return String.format(
-            "%02X:%02X:%02X:%02X:%02X:%02X",
-            data[offset].toInt() and 0xFF,
-            data[offset + 1].toInt() and 0xFF,
-            data[offset + 2].toInt() and 0xFF,
-            data[offset + 3].toInt() and 0xFF,
-            data[offset + 4].toInt() and 0xFF,
-            data[offset + 5].toInt() and 0xFF
-        )
-    }
-
     /**
      * Convert a probe request to a ScanResult for the detection engine.
      */
@@ -0,0 +1,75 @@
+package com.example.follower.data.repository
+
+import com.example.follower.data.model.DetectedDevice
+import com.example.follower.data.model.DeviceCell
+import com.example.follower.data.model.DeviceType
+import com.example.follower.detection.ManualClock
+import com.example.follower.detection.ScoreDecay
+import com.example.follower.testing.InMemoryDeviceDao
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+/**
+ * Device reads decay the stored score from the last sighting to the read
+ * time, whether served from the cache or from Room, while the engine's
+ * stored-state reads keep it undecayed.  Batched cell writes merge with
+ * the stored rows.
+ */
+class DeviceRepositoryTest {
+
+    private companion object {
+        const val LAST_SEEN = 1_700_000_000_000L
+        const val MAC = "02:00:00:00:00:01"
+    }
+
+    private val device = DetectedDevice(
+        macAddress = MAC,
+        deviceType = DeviceType.WIFI_ACCESS_POINT,
+        firstSeenTimestamp = LAST_SEEN,
+        lastSeenTimestamp = LAST_SEEN,
+        threatScore = 80f
+    )
+
+    @Test
+    fun getDeviceDecaysFromLastSeen() = runBlocking {
+        val dao = InMemoryDeviceDao()
+        dao.upsertDevices(listOf(device))
+        val clock = ManualClock(LAST_SEEN + ScoreDecay.WINDOW_MS / 4)
+        val repository = DeviceRepository(dao, clock)
+
+        // Room on the first read, the cache on the second
+        assertEquals(60f, repository.getDevice(MAC)!!.threatScore, 1e-3f)
+        assertEquals(60f, repository.getDevice(MAC)!!.threatScore, 1e-3f)
+        assertEquals(60f, repository.deviceCache.getDecayed(MAC, clock.now())!!.threatScore, 1e-3f)
+
+        clock.advanceTo(LAST_SEEN + ScoreDecay.WINDOW_MS)
+        assertEquals(0f, repository.getDevice(MAC)!!.threatScore, 0f)
+
+        assertEquals(80f, repository.getStoredDevice(MAC)!!.threatScore, 0f)
+        assertEquals(80f, repository.getCachedDevice(MAC)!!.threatScore, 0f)
+    }
+
+    @Test
+    fun writeBatchMergesCellsWithStoredRows() = runBlocking {
+        val dao = InMemoryDeviceDao()
+        val repository = DeviceRepository(dao, ManualClock(LAST_SEEN))
+        val first = (0L until 600L).map { DeviceCell(MAC, it, LAST_SEEN, LAST_SEEN + it) }
+        repository.writeBatch(listOf(device), emptyList(), emptyList(), first)
+
+        // Every stored cell seen again, earlier and later, plus new ones
+        val second = (0L until 1_200L).map { DeviceCell(MAC, it, LAST_SEEN + 1, LAST_SEEN + 300) }
+        repository.writeBatch(emptyList(), emptyList(), emptyList(), second)
+
+        val cells = dao.allCells().associateBy { it.cellId }
+        assertEquals(1_200, cells.size)
+        for (id in 0L until 600L) {
+            assertEquals(LAST_SEEN, cells.getValue(id).firstSeenTimestamp)
+            assertEquals(LAST_SEEN + maxOf(id, 300L), cells.getValue(id).lastSeenTimestamp)
+        }
+        for (id in 600L until 1_200L) {
+            assertEquals(LAST_SEEN + 1, cells.getValue(id).firstSeenTimestamp)
+            assertEquals(LAST_SEEN + 300, cells.getValue(id).lastSeenTimestamp)
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.follower.data.repository
+
+import com.example.follower.data.model.DetectedDevice
+import com.example.follower.data.model.DeviceType
+import com.example.follower.detection.ManualClock
+import com.example.follower.testing.InMemoryDeviceDao
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * A whitelist / flag edit made while the engine holds an older copy of the
+ * device survives the engine buffering that copy: in what [putDevice]
+ * returns, in the cache and in Room, whether or not the device has been
+ * committed yet.
+ */
+class WriteBehindBufferTest {
+
+    private companion object {
+        const val NOW = 1_700_000_000_000L
+        const val MAC = "02:00:00:00:00:01"
+    }
+
+    private lateinit var dao: InMemoryDeviceDao
+    private lateinit var repository: DeviceRepository
+    private lateinit var buffer: WriteBehindBuffer
+
+    private val device = DetectedDevice(
+        macAddress = MAC,
+        deviceType = DeviceType.WIFI_ACCESS_POINT,
+        firstSeenTimestamp = NOW,
+        lastSeenTimestamp = NOW
+    )
+
+    @Before
+    fun setUp() {
+        dao = InMemoryDeviceDao()
+        repository = DeviceRepository(dao, ManualClock(NOW))
+        buffer = WriteBehindBuffer(repository)
+        repository.attachWriteBuffer(buffer)
+    }
+
+    private fun assertKept(buffered: DetectedDevice) {
+        assertTrue(buffered.isWhitelisted && buffered.isFlagged)
+        val cached = repository.getCachedDevice(MAC)!!
+        assertTrue(cached.isWhitelisted && cached.isFlagged)
+    }
+
+    @Test
+    fun editDuringUncommittedUpdateSurvives() = runBlocking {
+        buffer.putDevice(device)
+
+        // The engine reads the device, the user acts, the engine writes back
+        val stale = repository.getStoredDevice(MAC)!!
+        repository.whitelistDevice(MAC)
+        repository.flagDevice(MAC)
+        assertKept(buffer.putDevice(stale.copy(detectionCount = 2)))
+
+        buffer.flush()
+        val stored = dao.allDevices().single()
+        assertTrue(stored.isWhitelisted && stored.isFlagged)
+    }
+
+    @Test
+    fun editDuringCommittedUpdateSurvivesEviction() = runBlocking {
+        buffer.putDevice(device)
+        buffer.flush()
+
+        val stale = repository.getStoredDevice(MAC)!!
+        repository.whitelistDevice(MAC)
+        repository.flagDevice(MAC)
+        assertKept(buffer.putDevice(stale.copy(detectionCount = 2)))
+
+        // With the cache gone, the next read comes from Room
+        buffer.flush()
+        repository.deviceCache.clear()
+        val reloaded = repository.getStoredDevice(MAC)!!
+        assertTrue(reloaded.isWhitelisted && reloaded.isFlagged)
+    }
+}
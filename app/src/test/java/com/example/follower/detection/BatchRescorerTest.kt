@@ -0,0 +1,135 @@
+package com.example.follower.detection
+
+import com.example.follower.data.model.DeviceType
+import com.example.follower.data.model.ScanResult
+import com.example.follower.data.repository.DeviceRepository
+import com.example.follower.scanner.ManualLocationSource
+import com.example.follower.testing.InMemoryDeviceDao
+import com.example.follower.testing.InMemorySharedPreferences
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Batch rescoring through the engine on encounter scoring: it scores a
+ * device exactly as the rescore tick does, even when the stored score is
+ * 100, writes through the engine so Room and the device cache agree, and
+ * leaves known-tracker pins alone — as does a tick rescore queued before
+ * the device matched.
+ */
+class BatchRescorerTest {
+
+    private companion object {
+        const val BASE_TIME = 1_700_000_000_000L
+        const val MINUTES = 60
+        const val AP_MAC = "02:00:00:00:00:01"
+
+        /** Apple Find My offline-finding payload, as the known-tracker detector expects. */
+        val FIND_MY = byteArrayOf(0x4C, 0x00, 0x12, 0x19, 0x10, 0x00)
+    }
+
+    private lateinit var scope: CoroutineScope
+    private lateinit var dao: InMemoryDeviceDao
+    private lateinit var repository: DeviceRepository
+    private lateinit var clock: ManualClock
+    private lateinit var engine: DetectionEngine
+
+    @Before
+    fun setUp() {
+        scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+        dao = InMemoryDeviceDao()
+        clock = ManualClock(BASE_TIME)
+        repository = DeviceRepository(dao, clock)
+        val settings = SuspicionSettings(InMemorySharedPreferences()).apply {
+            encounterScoringEnabled = true
+            scanThrottleMs = 0L
+            scoreThrottleMs = 0L
+        }
+        val locations = ManualLocationSource().apply {
+            injectLocation(51.5, -0.12, 10f, BASE_TIME)
+        }
+        engine = DetectionEngine(
+            repository = repository,
+            locationSource = locations,
+            scope = scope,
+            settings = settings,
+            clock = clock,
+            rescoreTickMs = 0L
+        )
+        engine.start()
+    }
+
+    @After
+    fun tearDown() {
+        engine.stop()
+        scope.cancel()
+    }
+
+    /** Walks 100 m east per minute alongside the user. */
+    private fun scan(minute: Int, mac: String, type: DeviceType, manufacturerData: ByteArray? = null) = ScanResult(
+        macAddress = mac,
+        deviceType = type,
+        rssi = -60,
+        timestamp = BASE_TIME + minute * 60_000L,
+        latitude = 51.5,
+        longitude = -0.12 + minute * 0.0015,
+        locationAccuracy = 10f,
+        ssid = if (type == DeviceType.WIFI_ACCESS_POINT) "hotspot" else null,
+        manufacturerData = manufacturerData
+    )
+
+    @Test
+    fun rescoresStoredHundredButNotKnownTrackers() = runBlocking {
+        for (minute in 0 until MINUTES) {
+            clock.advanceTo(BASE_TIME + minute * 60_000L)
+            engine.processScanResult(scan(minute, AP_MAC, DeviceType.WIFI_ACCESS_POINT))
+            engine.processScanResult(scan(minute, "5A:00:00:00:00:02", DeviceType.BLUETOOTH_LE, FIND_MY))
+        }
+        engine.runRescoreTick()
+        engine.performMaintenance()
+
+        val tickScore = dao.allDevices().single { it.macAddress == AP_MAC }.threatScore
+        assertTrue("tick score $tickScore", tickScore > 0f && tickScore < 100f)
+        val tracker = dao.allDevices().single { it.isKnownTracker }
+        assertEquals(100f, tracker.threatScore, 0f)
+
+        // A computed 100 from earlier settings is not a pin
+        val stored = dao.allDevices().single { it.macAddress == AP_MAC }
+        dao.upsertDevices(listOf(stored.copy(threatScore = 100f)))
+
+        val stats = engine.rescoreAll()
+        assertEquals(1, stats.devices)
+        assertEquals(1, stats.updated)
+        assertTrue(stats.encounters > 0)
+
+        val rescored = dao.allDevices().single { it.macAddress == AP_MAC }
+        assertEquals(tickScore, rescored.threatScore, 0f)
+        assertEquals(rescored, repository.getCachedDevice(AP_MAC))
+
+        val pinned = dao.allDevices().single { it.macAddress == tracker.macAddress }
+        assertEquals(100f, pinned.threatScore, 0f)
+        assertTrue(pinned.isKnownTracker)
+    }
+
+    @Test
+    fun queuedRescoreKeepsKnownTrackerPin() = runBlocking {
+        val mac = "5A:00:00:00:00:03"
+        engine.processScanResult(scan(0, mac, DeviceType.BLUETOOTH_LE))
+        clock.advanceTo(BASE_TIME + 60_000L)
+        engine.processScanResult(scan(1, mac, DeviceType.BLUETOOTH_LE, FIND_MY))
+
+        engine.runRescoreTick()
+        engine.performMaintenance()
+
+        val pinned = dao.allDevices().single()
+        assertTrue(pinned.isKnownTracker)
+        assertEquals(100f, pinned.threatScore, 0f)
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.follower.detection
+
+import com.example.follower.data.model.DeviceType
+import com.example.follower.data.model.ScanResult
+import com.example.follower.data.repository.DeviceRepository
+import com.example.follower.scanner.ManualLocationSource
+import com.example.follower.testing.InMemoryDeviceDao
+import com.example.follower.testing.InMemorySharedPreferences
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.joinAll
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.yield
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.util.Random
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Stress test of the engine's shard locks: several collectors feed the same
+ * devices concurrently, interleaved with rescore ticks, size- and
+ * time-triggered write-buffer flushes and maintenance passes.  Every
+ * accepted result must end up as exactly one sighting, one device update
+ * and one encounter contribution.  A device seen in more cells than the
+ * shard will cache still gets an exact location count.
+ */
+class DetectionEngineConcurrencyTest {
+
+    private companion object {
+        const val BASE_TIME = 1_700_000_000_000L
+        const val COLLECTORS = 8
+        const val RESULTS_PER_COLLECTOR = 2_500
+        const val DEVICES = 300
+
+        /** Results span less than the streak gap, so each device has one encounter. */
+        const val SPAN_MS = 5 * 60_000L
+    }
+
+    private lateinit var scope: CoroutineScope
+    private lateinit var dao: InMemoryDeviceDao
+    private lateinit var engine: DetectionEngine
+
+    @Before
+    fun setUp() {
+        scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+        dao = InMemoryDeviceDao()
+        val clock = ManualClock(BASE_TIME + SPAN_MS)
+        val settings = SuspicionSettings(InMemorySharedPreferences()).apply {
+            // Accept every result, and make every device due on every tick
+            scanThrottleMs = 0L
+            scoreThrottleMs = 0L
+        }
+        val locations = ManualLocationSource().apply {
+            injectLocation(51.5, -0.12, 10f, BASE_TIME)
+        }
+        engine = DetectionEngine(
+            repository = DeviceRepository(dao, clock),
+            locationSource = locations,
+            scope = scope,
+            settings = settings,
+            clock = clock,
+            rescoreTickMs = 0L
+        )
+        engine.start()
+    }
+
+    @After
+    fun tearDown() {
+        engine.stop()
+        scope.cancel()
+    }
+
+    @Test
+    fun concurrentCollectorsLoseNothing() = runBlocking {
+        val collecting = AtomicBoolean(true)
+        val collectors = (0 until COLLECTORS).map { c ->
+            scope.launch {
+                val random = Random(c.toLong())
+                repeat(RESULTS_PER_COLLECTOR) { i ->
+                    engine.processScanResult(result(random, c, i))
+                    if (i % 64 == 0) yield()
+                }
+            }
+        }
+        val background = listOf(
+            scope.launch {
+                while (collecting.get()) {
+                    engine.runRescoreTick()
+                    yield()
+                }
+            },
+            scope.launch {
+                while (collecting.get()) {
+                    engine.performMaintenance()
+                    yield()
+                }
+            }
+        )
+        collectors.joinAll()
+        collecting.set(false)
+        background.joinAll()
+
+        // Commit whatever is still buffered
+        engine.performMaintenance()
+
+        val sightings = dao.allSightings()
+        assertEquals("sightings", COLLECTORS * RESULTS_PER_COLLECTOR, sightings.size)
+
+        val sightingsPerDevice = sightings.groupingBy { it.deviceMacAddress }.eachCount()
+        val devices = dao.allDevices().associateBy { it.macAddress }
+        assertEquals("devices", sightingsPerDevice.keys, devices.keys)
+        for ((mac, count) in sightingsPerDevice) {
+            assertEquals("detectionCount of $mac", count, devices.getValue(mac).detectionCount)
+        }
+
+        val encountersPerDevice = dao.allEncounters().groupBy { it.deviceMacAddress }
+        assertEquals("devices with encounters", sightingsPerDevice.keys, encountersPerDevice.keys)
+        for ((mac, encounters) in encountersPerDevice) {
+            assertEquals("encounters of $mac", 1, encounters.size)
+            assertEquals("encounter sightings of $mac", sightingsPerDevice[mac], encounters[0].sightingCount)
+        }
+
+        val cellsPerDevice = dao.allCells().groupingBy { it.deviceMacAddress }.eachCount()
+        for ((mac, device) in devices) {
+            assertEquals("locationCount of $mac", cellsPerDevice[mac], device.locationCount)
+        }
+    }
+
+    @Test
+    fun farTravelledDeviceKeepsExactLocationCount() = runBlocking {
+        val mac = "02:00:00:00:FF:FF"
+        val cells = 600
+        for (i in 0 until cells) {
+            engine.processScanResult(
+                ScanResult(
+                    macAddress = mac,
+                    deviceType = DeviceType.WIFI_ACCESS_POINT,
+                    rssi = -60,
+                    timestamp = BASE_TIME + i * (SPAN_MS / cells),
+                    // About 1 km apart, one geocell each
+                    latitude = 51.5 + i * 0.01,
+                    longitude = -0.12,
+                    locationAccuracy = 10f,
+                    ssid = "hotspot"
+                )
+            )
+            // Part of the set comes back from Room, part from the write buffer
+            if (i % 100 == 99) engine.performMaintenance()
+        }
+        engine.performMaintenance()
+
+        assertEquals(cells, dao.allCells().count { it.deviceMacAddress == mac })
+        assertEquals(cells, dao.allDevices().single { it.macAddress == mac }.locationCount)
+    }
+
+    /** A WiFi AP result (stable MAC) for one of [DEVICES] devices, walking across a few cells. */
+    private fun result(random: Random, collector: Int, index: Int): ScanResult {
+        val device = random.nextInt(DEVICES)
+        val t = BASE_TIME + (index.toLong() * SPAN_MS / RESULTS_PER_COLLECTOR) + collector
+        return ScanResult(
+            macAddress = "02:00:00:00:%02X:%02X".format(device / 256, device % 256),
+            deviceType = DeviceType.WIFI_ACCESS_POINT,
+            rssi = -40 - random.nextInt(50),
+            timestamp = t,
+            latitude = 51.5 + random.nextInt(4) * 0.01,
+            longitude = -0.12,
+            locationAccuracy = 10f,
+            ssid = "net-$device"
+        )
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.follower.scanner
+
+import com.example.follower.data.model.DeviceType
+import com.example.follower.data.model.ScanResult
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * A burst of distinct MACs far larger than the queue, under each
+ * [OverloadPolicy]: depth never exceeds capacity and every result that
+ * did not make it is counted as dropped or coalesced.
+ */
+class IngestQueueTest {
+
+    private companion object {
+        const val BASE_TIME = 1_700_000_000_000L
+        const val CAPACITY = 512
+        const val BURST = 5_000
+
+        /** Every tenth MAC is a known tracker under PRIORITY_PRESERVE. */
+        const val PRIORITY_EVERY = 10
+    }
+
+    private fun mac(i: Int) =
+        "02:00:%02X:%02X:%02X:%02X".format((i shr 24) and 0xFF, (i shr 16) and 0xFF, (i shr 8) and 0xFF, i and 0xFF)
+
+    private fun result(i: Int, rssi: Int = -70) = ScanResult(
+        macAddress = mac(i),
+        deviceType = DeviceType.BLUETOOTH_LE,
+        rssi = rssi,
+        timestamp = BASE_TIME + i,
+        latitude = 51.5,
+        longitude = -0.12,
+        locationAccuracy = 10f
+    )
+
+    private fun isPriority(result: ScanResult): Boolean =
+        result.macAddress.substring(3).replace(":", "").toLong(16) % PRIORITY_EVERY == 0L
+
+    private fun offerBurst(queue: IngestQueue) {
+        repeat(BURST) { i ->
+            queue.offer(result(i))
+            assertTrue(queue.stats().depth <= CAPACITY)
+        }
+    }
+
+    private fun drain(queue: IngestQueue): List<ScanResult> =
+        generateSequence { queue.poll() }.toList()
+
+    @Test
+    fun dropOldestKeepsNewestAndCountsDrops() {
+        val queue = IngestQueue(CAPACITY, OverloadPolicy.DROP_OLDEST)
+        offerBurst(queue)
+
+        val stats = queue.stats()
+        assertEquals(BURST.toLong(), stats.offered)
+        assertEquals((BURST - CAPACITY).toLong(), stats.dropped)
+        assertEquals(0L, stats.coalesced)
+        assertEquals(CAPACITY, stats.depth)
+        assertEquals(CAPACITY, stats.peakDepth)
+
+        // No coalescing: re-offering a queued MAC still pushes one out.
+        queue.offer(result(BURST - 1))
+        assertEquals((BURST - CAPACITY + 1).toLong(), queue.stats().dropped)
+        assertEquals(0L, queue.stats().coalesced)
+
+        val drained = drain(queue)
+        assertEquals(CAPACITY, drained.size)
+        assertEquals(mac(BURST - CAPACITY + 1), drained.first().macAddress)
+    }
+
+    @Test
+    fun coalescePerMacReplacesQueuedResultsInPlace() {
+        val queue = IngestQueue(CAPACITY, OverloadPolicy.COALESCE_PER_MAC)
+        offerBurst(queue)
+
+        var stats = queue.stats()
+        assertEquals((BURST - CAPACITY).toLong(), stats.dropped)
+        assertEquals(0L, stats.coalesced)
+        assertEquals(CAPACITY, stats.depth)
+
+        // A second round from the devices still queued only refreshes them.
+        for (i in BURST - CAPACITY until BURST) queue.offer(result(i, rssi = -40))
+        stats = queue.stats()
+        assertEquals((BURST + CAPACITY).toLong(), stats.offered)
+        assertEquals((BURST - CAPACITY).toLong(), stats.dropped)
+        assertEquals(CAPACITY.toLong(), stats.coalesced)
+        assertEquals(CAPACITY, stats.depth)
+
+        val drained = drain(queue)
+        assertEquals((BURST - CAPACITY until BURST).map(::mac), drained.map { it.macAddress })
+        assertTrue(drained.all { it.rssi == -40 })
+    }
+
+    @Test
+    fun priorityPreserveShedsOrdinaryResultsFirst() {
+        val queue = IngestQueue(CAPACITY, OverloadPolicy.PRIORITY_PRESERVE, ::isPriority)
+        offerBurst(queue)
+
+        val priorityCount = BURST / PRIORITY_EVERY
+        val stats = queue.stats()
+        assertEquals((BURST - CAPACITY).toLong(), stats.dropped)
+        assertEquals(0L, stats.coalesced)
+        assertEquals(CAPACITY, stats.depth)
+
+        val drained = drain(queue)
+        assertEquals(priorityCount, drained.count(::isPriority))
+        assertTrue(drained.take(priorityCount).all(::isPriority))
+        assertTrue(drained.drop(priorityCount).none(::isPriority))
+    }
+
+    @Test
+    fun priorityPreserveFullOfPriorityShedsIncomingOrdinary() {
+        val queue = IngestQueue(CAPACITY, OverloadPolicy.PRIORITY_PRESERVE) { it.rssi > -50 }
+        repeat(CAPACITY) { queue.offer(result(it, rssi = -40)) }
+
+        assertFalse(queue.offer(result(CAPACITY, rssi = -90)))
+        assertTrue(queue.offer(result(CAPACITY + 1, rssi = -40)))
+        val stats = queue.stats()
+        assertEquals(2L, stats.dropped)
+        assertEquals(CAPACITY, stats.depth)
+        assertEquals(mac(1), queue.poll()?.macAddress)
+    }
+
+    @Test
+    fun priorityPreserveMovesMacUpToPriorityLaneOnce() {
+        var trackers = emptySet<String>()
+        val queue = IngestQueue(CAPACITY, OverloadPolicy.PRIORITY_PRESERVE) { it.macAddress in trackers }
+
+        queue.offer(result(1, rssi = -80))
+        queue.offer(result(2))
+        trackers = setOf(mac(1))
+        queue.offer(result(1, rssi = -60))
+
+        var stats = queue.stats()
+        assertEquals(2, stats.depth)
+        assertEquals(1L, stats.coalesced)
+
+        // Once in the priority lane it stays there even if no longer flagged.
+        trackers = emptySet()
+        queue.offer(result(1, rssi = -50))
+        stats = queue.stats()
+        assertEquals(2, stats.depth)
+        assertEquals(2L, stats.coalesced)
+
+        assertEquals(-50, queue.poll()?.rssi)
+        assertEquals(mac(2), queue.poll()?.macAddress)
+        assertNull(queue.poll())
+    }
+}
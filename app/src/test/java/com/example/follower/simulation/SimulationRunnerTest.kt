@@ -0,0 +1,87 @@
+package com.example.follower.simulation
+
+import com.example.follower.data.model.DeviceType
+import com.example.follower.detection.SuspicionSettings
+import com.example.follower.testing.InMemoryDeviceDao
+import com.example.follower.testing.InMemorySharedPreferences
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.runBlocking
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * A simulated weekday over an in-memory DAO: the runner steps virtual time
+ * as configured, both followers (one rotating its MAC) resolve to one
+ * identity each, are heard on every step and alert, and none of the fixed
+ * WiFi access points along the routine does.
+ */
+class SimulationRunnerTest {
+
+    private companion object {
+        const val DAY_MS = 24 * 60 * 60 * 1000L
+
+        /** Midnight starting a Tuesday. */
+        const val START = 1_699_920_000_000L
+        const val SCAN_INTERVAL_MS = 30_000L
+        const val FIX_INTERVAL_MS = 60_000L
+        const val MAINTENANCE_INTERVAL_MS = 60 * 60 * 1000L
+        const val FOLLOWERS = 2
+    }
+
+    private lateinit var scope: CoroutineScope
+    private lateinit var dao: InMemoryDeviceDao
+    private lateinit var runner: SimulationRunner
+
+    @Before
+    fun setUp() {
+        scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+        dao = InMemoryDeviceDao()
+        val world = SyntheticWorld(
+            SyntheticWorld.Config(ambientDevicesPerPlace = 10, ambientDevicesPerSegment = 3, followers = FOLLOWERS)
+        )
+        runner = SimulationRunner.create(
+            deviceDao = dao,
+            settings = SuspicionSettings(InMemorySharedPreferences()),
+            scope = scope,
+            world = world,
+            startTime = START
+        )
+    }
+
+    @After
+    fun tearDown() {
+        runner.engine.stop()
+        scope.cancel()
+    }
+
+    @Test
+    fun weekdayFlagsFollowersButNotAccessPoints() = runBlocking {
+        val result = runner.run(DAY_MS)
+
+        val steps = (DAY_MS / SCAN_INTERVAL_MS).toInt()
+        assertEquals(DAY_MS, result.virtualSpanMs)
+        assertEquals((DAY_MS / FIX_INTERVAL_MS), result.fixes)
+        assertEquals((DAY_MS / MAINTENANCE_INTERVAL_MS - 1).toInt(), result.maintenanceRuns)
+
+        val devices = dao.allDevices()
+        val followers = devices.filter { it.detectionCount == steps }
+        assertEquals(FOLLOWERS, followers.size)
+        assertEquals(steps.toLong() * FOLLOWERS, followers.sumOf { it.detectionCount.toLong() })
+
+        val alerted = result.alerts.map { it.deviceMacAddress }.toSet()
+        for (follower in followers) {
+            assertTrue("${follower.macAddress} not alerted", follower.macAddress in alerted)
+        }
+
+        val accessPoints = devices.filter { it.deviceType == DeviceType.WIFI_ACCESS_POINT }
+        assertTrue(accessPoints.isNotEmpty())
+        assertTrue(accessPoints.none { it.macAddress in alerted })
+        assertEquals(result.alerts.size, dao.allAlerts().size)
+    }
+}
@@ -0,0 +1,384 @@
+package com.example.follower.testing
+
+import android.database.Cursor
+import com.example.follower.data.database.DeviceDao
+import com.example.follower.data.database.DeviceUserFlags
+import com.example.follower.data.model.*
+import com.example.follower.detection.GeoCell
+import com.example.follower.detection.ScoreDecay
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.map
+
+/**
+ * [DeviceDao] over plain collections, for JVM tests that drive the
+ * repository, write buffer and engine without Room.
+ *
+ * Every statement runs under one lock, as Room serialises writes; the
+ * `@Transaction` defaults ([writeBatch], [rollUpSightings]) are inherited
+ * and run their statements one by one.
+ * The cursor queries are not supported — tests keep the engine on the
+ * incremental or encounter scoring paths.
+ */
+class InMemoryDeviceDao : DeviceDao {
+
+    private val lock = Any()
+
+    private val devices = LinkedHashMap<String, DetectedDevice>()
+    private val sightings = ArrayList<DeviceSighting>()
+    private val encounters = LinkedHashMap<Pair<String, Long>, Encounter>()
+    private val cells = LinkedHashMap<Pair<String, Long>, DeviceCell>()
+    private val rollups = LinkedHashMap<List<Any>, SightingRollup>()
+    private val clusters = LinkedHashMap<Long, LocationCluster>()
+    private val alerts = LinkedHashMap<Long, ThreatAlert>()
+
+    private var nextSightingId = 1L
+    private var nextClusterId = 1L
+    private var nextAlertId = 1L
+
+    /** Bumped on every write so the Flow queries re-emit. */
+    private val version = MutableStateFlow(0L)
+
+    /** Number of [writeBatch] calls, for tests that count flushes. */
+    @Volatile
+    var batchWrites = 0
+        private set
+
+    private inline fun <T> read(block: () -> T): T = synchronized(lock) { block() }
+
+    private inline fun <T> write(block: () -> T): T = synchronized(lock) {
+        block().also { version.value++ }
+    }
+
+    // ---- Test inspection ------------------------------------------------------------
+
+    fun allDevices(): List<DetectedDevice> = read { devices.values.toList() }
+    fun allSightings(): List<DeviceSighting> = read { sightings.toList() }
+    fun allEncounters(): List<Encounter> = read { encounters.values.toList() }
+    fun allCells(): List<DeviceCell> = read { cells.values.toList() }
+    fun allAlerts(): List<ThreatAlert> = read { alerts.values.toList() }
+
+    // ---- DetectedDevice -------------------------------------------------------------
+
+    override suspend fun insertDevice(device: DetectedDevice) = write {
+        // REPLACE deletes the old row, cascading to its sightings
+        if (devices.remove(device.macAddress) != null) {
+            sightings.removeAll { it.deviceMacAddress == device.macAddress }
+        }
+        devices[device.macAddress] = device
+    }
+
+    override suspend fun updateDevice(device: DetectedDevice) = write {
+        if (device.macAddress in devices) devices[device.macAddress] = device
+    }
+
+    override suspend fun deleteDevice(device: DetectedDevice) = write {
+        devices.remove(device.macAddress)
+        sightings.removeAll { it.deviceMacAddress == device.macAddress }
+        Unit
+    }
+
+    override suspend fun getDeviceByMac(macAddress: String): DetectedDevice? = read { devices[macAddress] }
+
+    override fun getAllDevicesFlow(): Flow<List<DetectedDevice>> =
+        version.map { read { devices.values.sortedByDescending { it.lastSeenTimestamp } } }
+
+    override suspend fun getRecentDevices(limit: Int): List<DetectedDevice> =
+        read { devices.values.sortedByDescending { it.lastSeenTimestamp }.take(limit) }
+
+    private fun decayed(d: DetectedDevice, now: Long): Float =
+        ScoreDecay.decayedScore(d.threatScore, d.lastSeenTimestamp, now)
+
+    override fun getSuspiciousDevicesFlow(minScore: Float, now: Long): Flow<List<DetectedDevice>> =
+        version.map {
+            read {
+                devices.values.filter { decayed(it, now) >= minScore }
+                    .sortedByDescending { decayed(it, now) }
+            }
+        }
+
+    override suspend fun getThreateningDevices(threshold: Float, now: Long): List<DetectedDevice> = read {
+        devices.values.filter { !it.isWhitelisted && decayed(it, now) >= threshold }
+            .sortedByDescending { decayed(it, now) }
+    }
+
+    override suspend fun getDevicesSeenSince(since: Long): List<DetectedDevice> =
+        read { devices.values.filter { it.lastSeenTimestamp >= since } }
+
+    override fun getNearbyDevicesFlow(since: Long): Flow<List<DetectedDevice>> =
+        version.map {
+            read { devices.values.filter { it.lastSeenTimestamp >= since }.sortedByDescending { it.lastSeenTimestamp } }
+        }
+
+    override fun getSuspiciousDevicesDetailedFlow(minScore: Float, since: Long, now: Long): Flow<List<DetectedDevice>> =
+        version.map {
+            read {
+                devices.values.filter { decayed(it, now) >= minScore && it.lastSeenTimestamp >= since }
+                    .sortedByDescending { decayed(it, now) }
+            }
+        }
+
+    override suspend fun setWhitelisted(macAddress: String, whitelisted: Boolean) = write {
+        devices[macAddress]?.let { devices[macAddress] = it.copy(isWhitelisted = whitelisted) }
+        Unit
+    }
+
+    override suspend fun setFlagged(macAddress: String, flagged: Boolean) = write {
+        devices[macAddress]?.let { devices[macAddress] = it.copy(isFlagged = flagged) }
+        Unit
+    }
+
+    override suspend fun getUserFlags(macAddresses: List<String>): List<DeviceUserFlags> = read {
+        macAddresses.mapNotNull { mac -> devices[mac]?.let { DeviceUserFlags(mac, it.isWhitelisted, it.isFlagged) } }
+    }
+
+    override suspend fun deleteOldDevices(before: Long): Int = write {
+        val doomed = devices.values.filter {
+            it.lastSeenTimestamp < before && !it.isWhitelisted && !it.isFlagged
+        }.map { it.macAddress }.toSet()
+        doomed.forEach { devices.remove(it) }
+        sightings.removeAll { it.deviceMacAddress in doomed }
+        doomed.size
+    }
+
+    override suspend fun upsertDevices(devices: List<DetectedDevice>) = write {
+        for (d in devices) this.devices[d.macAddress] = d
+    }
+
+    // ---- DeviceSighting -------------------------------------------------------------
+
+    override suspend fun insertSighting(sighting: DeviceSighting): Long = write {
+        check(sighting.deviceMacAddress in devices) { "FOREIGN KEY constraint failed: ${sighting.deviceMacAddress}" }
+        val id = nextSightingId++
+        sightings.add(sighting.copy(id = id))
+        id
+    }
+
+    override suspend fun insertSightings(sightings: List<DeviceSighting>) = write {
+        for (s in sightings) {
+            check(s.deviceMacAddress in devices) { "FOREIGN KEY constraint failed: ${s.deviceMacAddress}" }
+            this.sightings.add(s.copy(id = nextSightingId++))
+        }
+    }
+
+    override suspend fun getSightingsForDevice(macAddress: String): List<DeviceSighting> =
+        read { sightings.filter { it.deviceMacAddress == macAddress }.sortedByDescending { it.timestamp } }
+
+    override suspend fun getRecentSightingsForDevice(macAddress: String, since: Long): List<DeviceSighting> = read {
+        sightings.filter { it.deviceMacAddress == macAddress && it.timestamp >= since }
+            .sortedByDescending { it.timestamp }
+    }
+
+    override suspend fun getAllSightingsSince(since: Long): List<DeviceSighting> =
+        read { sightings.filter { it.timestamp >= since }.sortedByDescending { it.timestamp } }
+
+    override fun getScoringColumnsForDevice(macAddress: String, since: Long): Cursor =
+        throw UnsupportedOperationException("cursor queries need Room")
+
+    override fun getScoringColumnsSince(since: Long): Cursor =
+        throw UnsupportedOperationException("cursor queries need Room")
+
+    override suspend fun getDistinctLocationCountForDevice(macAddress: String): Int =
+        read { cells.keys.count { it.first == macAddress } }
+
+    override suspend fun getUniqueDeviceCountSince(since: Long): Int =
+        read { sightings.filter { it.timestamp >= since }.map { it.deviceMacAddress }.toSet().size }
+
+    override suspend fun deleteOldSightings(before: Long): Int = write {
+        val n = sightings.size
+        sightings.removeAll { it.timestamp < before }
+        n - sightings.size
+    }
+
+    // ---- Encounter ------------------------------------------------------------------
+
+    override suspend fun upsertEncounters(encounters: List<Encounter>) = write {
+        for (e in encounters) this.encounters[e.deviceMacAddress to e.startTimestamp] = e
+    }
+
+    override suspend fun getLatestEncounter(macAddress: String): Encounter? =
+        read { encounters.values.filter { it.deviceMacAddress == macAddress }.maxByOrNull { it.startTimestamp } }
+
+    override suspend fun getEncountersSince(macAddress: String, since: Long): List<Encounter> = read {
+        encounters.values.filter { it.deviceMacAddress == macAddress && it.endTimestamp >= since }
+            .sortedBy { it.startTimestamp }
+    }
+
+    override suspend fun getAllEncountersSince(since: Long): List<Encounter> = read {
+        encounters.values.filter { it.endTimestamp >= since }
+            .sortedWith(compareBy({ it.deviceMacAddress }, { it.startTimestamp }))
+    }
+
+    override suspend fun deleteOldEncounters(before: Long): Int = write {
+        val doomed = encounters.filterValues { it.endTimestamp < before }.keys
+        doomed.forEach { encounters.remove(it) }
+        doomed.size
+    }
+
+    // ---- DeviceCell -----------------------------------------------------------------
+
+    override suspend fun upsertDeviceCells(cells: List<DeviceCell>) = write {
+        for (c in cells) this.cells[c.deviceMacAddress to c.cellId] = c
+    }
+
+    override suspend fun getDeviceCells(macAddresses: List<String>, cellIds: List<Long>): List<DeviceCell> = read {
+        cells.values.filter { it.deviceMacAddress in macAddresses && it.cellId in cellIds }
+    }
+
+    override suspend fun getCellIdsForDevice(macAddress: String): List<Long> =
+        read { cells.keys.filter { it.first == macAddress }.map { it.second } }
+
+    override suspend fun deleteOldDeviceCells(before: Long): Int = write {
+        val doomed = cells.filterValues { it.lastSeenTimestamp < before }.keys
+        doomed.forEach { cells.remove(it) }
+        doomed.size
+    }
+
+    // ---- Rollups --------------------------------------------------------------------
+
+    override suspend fun getLatestRollupBucket(resolution: RollupResolution): Long? =
+        read { rollups.values.filter { it.resolution == resolution }.maxOfOrNull { it.bucketStart } }
+
+    override suspend fun insertSightingRollups(resolution: RollupResolution, bucketMs: Long, from: Long, to: Long) = write {
+        sightings.filter { it.timestamp in from until to }
+            .groupBy { Triple(it.deviceMacAddress, it.timestamp / bucketMs, it.geocell) }
+            .forEach { (key, group) ->
+                val rollup = SightingRollup(
+                    deviceMacAddress = key.first,
+                    resolution = resolution,
+                    bucketStart = key.second * bucketMs,
+                    geocell = key.third,
+                    sightingCount = group.size,
+                    rssiSum = group.sumOf { it.rssi.toLong() },
+                    rssiSumSquares = group.sumOf { it.rssi.toLong() * it.rssi },
+                    rssiMin = group.minOf { it.rssi },
+                    rssiMax = group.maxOf { it.rssi },
+                    latitudeSum = group.sumOf { it.latitude },
+                    longitudeSum = group.sumOf { it.longitude },
+                    firstTimestamp = group.minOf { it.timestamp },
+                    lastTimestamp = group.maxOf { it.timestamp }
+                )
+                rollups.putIfAbsent(rollupKey(rollup), rollup)
+            }
+    }
+
+    override suspend fun insertRollupRollups(
+        source: RollupResolution,
+        target: RollupResolution,
+        bucketMs: Long,
+        from: Long,
+        to: Long
+    ) = write {
+        rollups.values.filter { it.resolution == source && it.bucketStart in from until to }
+            .groupBy { Triple(it.deviceMacAddress, it.bucketStart / bucketMs, it.geocell) }
+            .forEach { (key, group) ->
+                val rollup = SightingRollup(
+                    deviceMacAddress = key.first,
+                    resolution = target,
+                    bucketStart = key.second * bucketMs,
+                    geocell = key.third,
+                    sightingCount = group.sumOf { it.sightingCount },
+                    rssiSum = group.sumOf { it.rssiSum },
+                    rssiSumSquares = group.sumOf { it.rssiSumSquares },
+                    rssiMin = group.minOf { it.rssiMin },
+                    rssiMax = group.maxOf { it.rssiMax },
+                    latitudeSum = group.sumOf { it.latitudeSum },
+                    longitudeSum = group.sumOf { it.longitudeSum },
+                    firstTimestamp = group.minOf { it.firstTimestamp },
+                    lastTimestamp = group.maxOf { it.lastTimestamp }
+                )
+                rollups.putIfAbsent(rollupKey(rollup), rollup)
+            }
+    }
+
+    private fun rollupKey(r: SightingRollup): List<Any> =
+        listOf(r.deviceMacAddress, r.resolution, r.bucketStart, r.geocell)
+
+    override suspend fun getRollupsForDevice(
+        macAddress: String,
+        resolution: RollupResolution,
+        since: Long
+    ): List<SightingRollup> = read {
+        rollups.values.filter {
+            it.deviceMacAddress == macAddress && it.resolution == resolution && it.bucketStart >= since
+        }
+    }
+
+    override suspend fun deleteOldRollups(resolution: RollupResolution, before: Long): Int = write {
+        val doomed = rollups.filterValues { it.resolution == resolution && it.bucketStart < before }.keys
+        doomed.forEach { rollups.remove(it) }
+        doomed.size
+    }
+
+    // ---- Batched writes -------------------------------------------------------------
+
+    override suspend fun writeBatch(
+        devices: List<DetectedDevice>,
+        sightings: List<DeviceSighting>,
+        encounters: List<Encounter>,
+        cells: List<DeviceCell>
+    ) {
+        batchWrites++
+        super.writeBatch(devices, sightings, encounters, cells)
+    }
+
+    // ---- LocationCluster ------------------------------------------------------------
+
+    override suspend fun insertCluster(cluster: LocationCluster): Long = write {
+        val id = if (cluster.id == 0L) nextClusterId++ else cluster.id
+        clusters[id] = cluster.copy(id = id)
+        id
+    }
+
+    override suspend fun getAllClusters(): List<LocationCluster> =
+        read { clusters.values.sortedByDescending { it.lastVisitTimestamp } }
+
+    override suspend fun findNearbyCluster(lat: Double, lon: Double): LocationCluster? = read {
+        clusters.values.firstOrNull {
+            Math.abs(it.centerLatitude - lat) < 0.001 && Math.abs(it.centerLongitude - lon) < 0.001
+        }
+    }
+
+    // ---- ThreatAlert ----------------------------------------------------------------
+
+    override suspend fun insertAlert(alert: ThreatAlert): Long = write {
+        val id = nextAlertId++
+        alerts[id] = alert.copy(id = id)
+        id
+    }
+
+    override suspend fun updateAlert(alert: ThreatAlert) = write {
+        if (alert.id in alerts) alerts[alert.id] = alert
+    }
+
+    override fun getAllAlertsFlow(): Flow<List<ThreatAlert>> =
+        version.map { read { alerts.values.sortedByDescending { it.timestamp } } }
+
+    override fun getUnacknowledgedAlertsFlow(): Flow<List<ThreatAlert>> =
+        version.map { read { alerts.values.filter { !it.isAcknowledged }.sortedByDescending { it.timestamp } } }
+
+    override suspend fun getLatestAlertForDevice(macAddress: String): ThreatAlert? =
+        read { alerts.values.filter { it.deviceMacAddress == macAddress }.maxByOrNull { it.timestamp } }
+
+    override suspend fun acknowledgeAlert(alertId: Long) = write {
+        alerts[alertId]?.let { alerts[alertId] = it.copy(isAcknowledged = true) }
+        Unit
+    }
+
+    override suspend fun setAlertAction(alertId: Long, action: AlertAction) = write {
+        alerts[alertId]?.let { alerts[alertId] = it.copy(userAction = action) }
+        Unit
+    }
+
+    // ---- Statistics -----------------------------------------------------------------
+
+    override suspend fun getTotalDeviceCount(): Int = read { devices.size }
+
+    override suspend fun getSuspiciousDeviceCount(now: Long): Int =
+        read { devices.values.count { decayed(it, now) >= 31f } }
+
+    override suspend fun getSightingCountSince(since: Long): Int =
+        read { sightings.count { it.timestamp >= since } }
+
+    override suspend fun getUnacknowledgedAlertCount(): Int = read { alerts.values.count { !it.isAcknowledged } }
+}
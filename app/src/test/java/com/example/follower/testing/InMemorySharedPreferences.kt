@@ -0,0 +1,64 @@
+package com.example.follower.testing
+
+import android.content.SharedPreferences
+
+/** Map-backed [SharedPreferences]; edits apply on [SharedPreferences.Editor.apply] / commit. */
+class InMemorySharedPreferences : SharedPreferences {
+
+    private val values = HashMap<String, Any?>()
+    private val listeners = LinkedHashSet<SharedPreferences.OnSharedPreferenceChangeListener>()
+
+    @Suppress("UNCHECKED_CAST")
+    private fun <T> get(key: String?, default: T): T =
+        synchronized(values) { if (values.containsKey(key)) values[key] as T else default }
+
+    override fun getAll(): MutableMap<String, *> = synchronized(values) { HashMap(values) }
+    override fun getString(key: String?, defValue: String?): String? = get(key, defValue)
+    override fun getStringSet(key: String?, defValues: MutableSet<String>?): MutableSet<String>? = get(key, defValues)
+    override fun getInt(key: String?, defValue: Int): Int = get(key, defValue)
+    override fun getLong(key: String?, defValue: Long): Long = get(key, defValue)
+    override fun getFloat(key: String?, defValue: Float): Float = get(key, defValue)
+    override fun getBoolean(key: String?, defValue: Boolean): Boolean = get(key, defValue)
+    override fun contains(key: String?): Boolean = synchronized(values) { values.containsKey(key) }
+
+    override fun registerOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener) {
+        listeners.add(listener)
+    }
+
+    override fun unregisterOnSharedPreferenceChangeListener(listener: SharedPreferences.OnSharedPreferenceChangeListener) {
+        listeners.remove(listener)
+    }
+
+    override fun edit(): SharedPreferences.Editor = Editor()
+
+    private inner class Editor : SharedPreferences.Editor {
+        private val changes = HashMap<String, Any?>()
+        private var clear = false
+
+        override fun putString(key: String, value: String?) = apply { changes[key] = value }
+        override fun putStringSet(key: String, values: MutableSet<String>?) = apply { changes[key] = values }
+        override fun putInt(key: String, value: Int) = apply { changes[key] = value }
+        override fun putLong(key: String, value: Long) = apply { changes[key] = value }
+        override fun putFloat(key: String, value: Float) = apply { changes[key] = value }
+        override fun putBoolean(key: String, value: Boolean) = apply { changes[key] = value }
+        override fun remove(key: String) = apply { changes[key] = REMOVED }
+        override fun clear() = apply { clear = true }
+
+        override fun commit(): Boolean {
+            synchronized(values) {
+                if (clear) values.clear()
+                for ((k, v) in changes) if (v === REMOVED) values.remove(k) else values[k] = v
+            }
+            for (k in changes.keys) listeners.forEach { it.onSharedPreferenceChanged(this@InMemorySharedPreferences, k) }
+            return true
+        }
+
+        override fun apply() {
+            commit()
+        }
+    }
+
+    private companion object {
+        val REMOVED = Any()
+    }
+}
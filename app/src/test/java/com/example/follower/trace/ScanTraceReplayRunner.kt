@@ -0,0 +1,31 @@
+package com.example.follower.trace
+
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+import java.io.File
+import java.io.FileInputStream
+
+/**
+ * JVM entry point for replaying a trace pulled off a device (the service
+ * records to `files/traces/` when trace recording is enabled):
+ *
+ *     adb exec-out run-as com.example.follower cat files/traces/scan-….trace > scan.trace
+ *     ./gradlew :app:testDebugUnitTest --tests '*ScanTraceReplayRunner' -PscanTrace=scan.trace
+ *
+ * Skipped when no `scanTrace` is given, so it never runs in the normal suite.
+ */
+class ScanTraceReplayRunner {
+
+    @Test
+    fun replay() {
+        val path = System.getProperty("scanTrace")
+        assumeTrue("no -PscanTrace given", !path.isNullOrEmpty())
+
+        val replay = FileInputStream(File(path)).use { replayTrace(it) }
+        println("Replayed ${replay.stats}")
+        println("${replay.devices.size} devices, ${replay.alerts.size} alerts")
+        for (alert in replay.alerts) {
+            println("  ${alert.timestamp} ${alert.deviceMacAddress} ${alert.threatLevel} ${alert.threatScore}")
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.follower.trace
+
+import com.example.follower.data.model.DetectedDevice
+import com.example.follower.data.model.ThreatAlert
+import com.example.follower.data.model.ThreatLevel
+import com.example.follower.detection.SuspicionSettings
+import com.example.follower.testing.InMemoryDeviceDao
+import com.example.follower.testing.InMemorySharedPreferences
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.InputStream
+
+/** Outcome of replaying one trace through a fresh engine over an [InMemoryDeviceDao]. */
+internal class Replay(
+    val stats: ScanTraceReplayer.Stats,
+    val alerts: List<ThreatAlert>,
+    val devices: List<DetectedDevice>
+)
+
+internal fun replayTrace(input: InputStream, settings: SuspicionSettings = SuspicionSettings(InMemorySharedPreferences())): Replay =
+    runBlocking {
+        val scope = CoroutineScope(SupervisorJob() + Dispatchers.Default)
+        val dao = InMemoryDeviceDao()
+        val replayer = ScanTraceReplayer.create(dao, settings, scope)
+        val alerts = ArrayList<ThreatAlert>()
+        replayer.engine.onThreatDetected = { alert -> synchronized(alerts) { alerts += alert } }
+        replayer.engine.start()
+        try {
+            val stats = ScanTraceReader(input).use { replayer.replay(it) }
+            // Commit whatever is still buffered
+            replayer.engine.performMaintenance()
+            Replay(stats, synchronized(alerts) { alerts.toList() }, dao.allDevices())
+        } finally {
+            replayer.engine.stop()
+            scope.cancel()
+        }
+    }
+
+/**
+ * Golden trace: `traces/commute.trace` is two hours of [SyntheticWorld][com.example.follower.simulation.SyntheticWorld]
+ * (seed 1; 6 ambient devices per place, 3 per route segment, 2 followers)
+ * from 07:30 on a weekday, one scan and one fix a minute, recorded with
+ * [ScanTraceRecorder].  Replaying it must reproduce the same detections:
+ * both followers (one rotating its MAC) resolve to one identity each and
+ * alert on every cooldown, and nothing ambient comes close to an alert.
+ */
+class ScanTraceReplayerTest {
+
+    private companion object {
+        const val GOLDEN_TRACE = "/traces/commute.trace"
+        const val TRACE_START = 1_699_947_000_000L
+        const val TRACE_SPAN_MS = 119 * 60_000L
+        const val SCANS = 674L
+        const val FIXES = 120L
+        const val DEVICES = 73
+        const val FOLLOWERS = 2
+        const val ALERT_COOLDOWN_MS = 15 * 60_000L
+
+        /** Highest score any ambient device reaches in the golden trace. */
+        const val MAX_AMBIENT_SCORE = 11f
+    }
+
+    private fun replayGolden(): Replay =
+        replayTrace(requireNotNull(javaClass.getResourceAsStream(GOLDEN_TRACE)) { "missing $GOLDEN_TRACE" })
+
+    @Test
+    fun goldenTraceReproducesDetections() {
+        val replay = replayGolden()
+
+        assertEquals(SCANS, replay.stats.scans)
+        assertEquals(FIXES, replay.stats.locations)
+        assertEquals(TRACE_SPAN_MS, replay.stats.traceSpanMs)
+        assertEquals(DEVICES, replay.devices.size)
+
+        val alerted = replay.alerts.map { it.deviceMacAddress }.toSet()
+        assertEquals(FOLLOWERS, alerted.size)
+        for (id in alerted) {
+            val times = replay.alerts.filter { it.deviceMacAddress == id }.map { it.timestamp }
+            val expected = (0 until 8).map { TRACE_START + it * ALERT_COOLDOWN_MS }
+            assertEquals("alerts of $id", expected, times)
+        }
+        assertTrue(replay.alerts.all { it.threatLevel == ThreatLevel.HIGH })
+
+        val (followers, ambient) = replay.devices.partition { it.macAddress in alerted }
+        for (follower in followers) {
+            assertEquals("detections of ${follower.macAddress}", FIXES.toInt(), follower.detectionCount)
+        }
+        assertEquals(MAX_AMBIENT_SCORE, ambient.maxOf { it.threatScore }, 0f)
+    }
+
+    @Test
+    fun replayIsDeterministic() {
+        val first = replayGolden()
+        val second = replayGolden()
+
+        assertEquals(first.alerts.map { it.deviceMacAddress to it.timestamp }, second.alerts.map { it.deviceMacAddress to it.timestamp })
+        assertEquals(
+            first.devices.associate { it.macAddress to it.threatScore },
+            second.devices.associate { it.macAddress to it.threatScore }
+        )
+    }
+}
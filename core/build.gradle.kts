@@ -0,0 +1,34 @@
+plugins {
+    id("org.jetbrains.kotlin.jvm")
+    id("me.champeau.jmh")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+tasks.withType<org.jetbrains.kotlin.gradle.tasks.KotlinCompile>().configureEach {
+    kotlinOptions {
+        jvmTarget = "17"
+    }
+}
+
+dependencies {
+    // Entity annotations only; the Room runtime and compiler stay in :app
+    api("androidx.room:room-common:2.6.1")
+
+    testImplementation("junit:junit:4.13.2")
+}
+
+// ./gradlew :core:jmh — results land in build/reports/jmh/results.json.
+// The gc profiler adds gc.alloc.rate.norm (bytes allocated per op) to every result.
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("reports/jmh/results.json"))
+}
@@ -0,0 +1,133 @@
+package com.example.follower.benchmark
+
+import com.example.follower.data.model.DetectedDevice
+import com.example.follower.data.model.DeviceSighting
+import com.example.follower.data.model.DeviceType
+import com.example.follower.data.model.ScanResult
+import com.example.follower.detection.SuspicionConfig
+import java.util.Random
+
+/** The shipped SuspicionSettings defaults, fixed for reproducible runs. */
+object DefaultSuspicionConfig : SuspicionConfig {
+    override val locationClusterThresholdMeters = 500f
+    override val streakGapThresholdMinutes = 10
+    override val lowThreshold = 30
+    override val highThreshold = 61
+    override val movementCorrelationWindowMinutes = 5
+}
+
+/**
+ * Seeded synthetic inputs shared by the benchmarks.
+ */
+object BenchmarkData {
+
+    const val BASE_TIME = 1_700_000_000_000L
+    private const val HOME_LAT = 51.5
+    private const val HOME_LON = -0.12
+
+    fun device(mac: String, lastSeen: Long) = DetectedDevice(
+        macAddress = mac,
+        deviceType = DeviceType.BLUETOOTH_LE,
+        firstSeenTimestamp = BASE_TIME,
+        lastSeenTimestamp = lastSeen
+    )
+
+    /**
+     * [count] sightings of one device one minute apart, wandering along a
+     * route so several location clusters form.
+     */
+    fun sightings(mac: String, count: Int, seed: Long = 42L): List<DeviceSighting> {
+        val random = Random(seed)
+        var lat = HOME_LAT
+        var lon = HOME_LON
+        return List(count) { i ->
+            lat += (random.nextDouble() - 0.3) * 0.002
+            lon += (random.nextDouble() - 0.3) * 0.002
+            DeviceSighting(
+                id = i.toLong() + 1,
+                deviceMacAddress = mac,
+                timestamp = BASE_TIME + i * 60_000L,
+                latitude = lat,
+                longitude = lon,
+                locationAccuracy = 10f,
+                rssi = -60 - random.nextInt(25),
+                deviceType = DeviceType.BLUETOOTH_LE
+            )
+        }
+    }
+
+    /**
+     * [count] sightings one minute apart jittering within ~30 m of one spot —
+     * a single cluster that keeps growing, the worst case for re-averaging.
+     */
+    fun stationarySightings(mac: String, count: Int, seed: Long = 43L): List<DeviceSighting> {
+        val random = Random(seed)
+        return List(count) { i ->
+            DeviceSighting(
+                id = i.toLong() + 1,
+                deviceMacAddress = mac,
+                timestamp = BASE_TIME + i * 60_000L,
+                latitude = HOME_LAT + (random.nextDouble() - 0.5) * 0.0005,
+                longitude = HOME_LON + (random.nextDouble() - 0.5) * 0.0005,
+                locationAccuracy = 10f,
+                rssi = -60 - random.nextInt(25),
+                deviceType = DeviceType.BLUETOOTH_LE
+            )
+        }
+    }
+
+    /**
+     * BLE advertisements: a mix of fingerprintable devices rotating their
+     * MAC, known-tracker payloads, and anonymous devices with no payload,
+     * arriving at [perSecond].
+     */
+    fun advertisements(count: Int, seed: Long = 7L, perSecond: Int = 10): Array<ScanResult> {
+        val random = Random(seed)
+        return Array(count) { i ->
+            val kind = i % 4
+            val manufacturerData = when (kind) {
+                0 -> byteArrayOf(0x4C, 0x00, 0x12, 0x19, (i % 50).toByte(), 0x00) // AirTag-like
+                1 -> byteArrayOf(0x75, 0x00, 0x01, (i % 200).toByte(), 0x10, 0x20) // Samsung
+                2 -> byteArrayOf(0x06, 0x00, 0x01, 0x09, 0x20, (i % 300).toByte()) // Microsoft
+                else -> null
+            }
+            ScanResult(
+                macAddress = randomMac(random),
+                deviceType = DeviceType.BLUETOOTH_LE,
+                rssi = -40 - random.nextInt(55),
+                timestamp = BASE_TIME + i * 1000L / perSecond,
+                latitude = HOME_LAT,
+                longitude = HOME_LON,
+                locationAccuracy = 10f,
+                manufacturerData = manufacturerData,
+                serviceUuids = if (kind == 3 && i % 8 == 3) listOf("0000feed-0000-1000-8000-00805f9b34fb") else null,
+                txPowerLevel = if (kind == 0) null else -12
+            )
+        }
+    }
+
+    /** Probe request frames with SSID elements of varying length. */
+    fun probeFrames(count: Int, seed: Long = 11L): Array<ByteArray> {
+        val random = Random(seed)
+        return Array(count) { i ->
+            val ssid = if (i % 5 == 0) ByteArray(0) else "network-${random.nextInt(10_000)}".toByteArray()
+            val supportedRates = byteArrayOf(0x01, 0x08, 0x82.toByte(), 0x84.toByte(), 0x8B.toByte(),
+                0x96.toByte(), 0x0C, 0x12, 0x18, 0x24)
+            val frame = ByteArray(24 + 2 + ssid.size + supportedRates.size)
+            frame[0] = 0x40 // management / probe request
+            for (b in 4 until 10) frame[b] = 0xFF.toByte()
+            for (b in 10 until 22) frame[b] = random.nextInt(256).toByte()
+            frame[24] = 0x00
+            frame[25] = ssid.size.toByte()
+            ssid.copyInto(frame, 26)
+            supportedRates.copyInto(frame, 26 + ssid.size)
+            frame
+        }
+    }
+
+    private fun randomMac(random: Random): String {
+        val bytes = IntArray(6) { random.nextInt(256) }
+        bytes[0] = (bytes[0] or 0x02) and 0xFE
+        return bytes.joinToString(":") { "%02X".format(it) }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.follower.benchmark
+
+import com.example.follower.data.model.DeviceSighting
+import com.example.follower.detection.CentroidGrid
+import com.example.follower.detection.distanceMeters
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Nearest-centroid clustering: the original linear scan with full centroid
+ * re-averaging versus the [CentroidGrid] pass.  Compare the 1k and 10k rows
+ * for each to see the growth rate, not just the constant factor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class ClusteringBenchmark {
+
+    @Param("1000", "10000")
+    @JvmField
+    var historySize: Int = 0
+
+    /** `stationary`: one ever-growing cluster.  `route`: many clusters along a path. */
+    @Param("stationary", "route")
+    @JvmField
+    var shape: String = ""
+
+    private lateinit var sightings: List<DeviceSighting>
+
+    @Setup
+    fun setup() {
+        sightings = if (shape == "stationary") {
+            BenchmarkData.stationarySightings("AA:BB:CC:DD:EE:FF", historySize)
+        } else {
+            BenchmarkData.sightings("AA:BB:CC:DD:EE:FF", historySize)
+        }
+    }
+
+    @Benchmark
+    fun gridIndexed(): Int {
+        val grid = CentroidGrid(THRESHOLD_METERS)
+        for (s in sightings) {
+            val nearest = grid.nearestWithin(s.latitude, s.longitude)
+            if (nearest >= 0) grid.addTo(nearest, s.latitude, s.longitude)
+            else grid.add(s.latitude, s.longitude)
+        }
+        return grid.size
+    }
+
+    @Benchmark
+    fun linearScan(): Int {
+        class Cluster(var lat: Double, var lon: Double, val members: MutableList<DeviceSighting>)
+
+        val clusters = mutableListOf<Cluster>()
+        for (s in sightings) {
+            val nearest = clusters.minByOrNull { c ->
+                distanceMeters(s.latitude, s.longitude, c.lat, c.lon)
+            }
+            if (nearest != null &&
+                distanceMeters(s.latitude, s.longitude, nearest.lat, nearest.lon) <= THRESHOLD_METERS
+            ) {
+                nearest.members.add(s)
+                nearest.lat = nearest.members.map { it.latitude }.average()
+                nearest.lon = nearest.members.map { it.longitude }.average()
+            } else {
+                clusters.add(Cluster(s.latitude, s.longitude, mutableListOf(s)))
+            }
+        }
+        return clusters.size
+    }
+
+    private companion object {
+        const val THRESHOLD_METERS = 500f
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.follower.benchmark
+
+import com.example.follower.detection.ContinuityIndex
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+/**
+ * RSSI-continuity lookups against a crowd of [DISAPPEARED] recently
+ * disappeared MACs, through [ContinuityIndex] and through the linear
+ * filter-then-min scan it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class ContinuityIndexBenchmark {
+
+    private class Disappeared(val rssi: Int, val lastTimestamp: Long, val stableId: String)
+
+    private val index = ContinuityIndex(WINDOW_MS, THRESHOLD_DBM)
+    private val linear = LinkedHashMap<String, Disappeared>()
+    private lateinit var queries: IntArray
+    private var next = 0
+
+    private val now = BenchmarkData.BASE_TIME + WINDOW_MS
+
+    @Setup
+    fun setup() {
+        val random = Random(42L)
+        for (i in 0 until DISAPPEARED) {
+            val mac = "%02X:%02X:00:00:00:01".format(i ushr 8, i and 0xFF)
+            val rssi = -100 + random.nextInt(60)
+            // Spread over twice the window so half are already stale
+            val last = now - random.nextInt((2 * WINDOW_MS).toInt())
+            index.add(mac, rssi, last, "ble_$i")
+            linear[mac] = Disappeared(rssi, last, "ble_$i")
+        }
+        queries = IntArray(1_024) { -100 + random.nextInt(60) }
+    }
+
+    @Benchmark
+    fun indexed(): String? {
+        val rssi = queries[next]
+        next = (next + 1) and (queries.size - 1)
+        return index.nearest(rssi, now)?.stableId
+    }
+
+    @Benchmark
+    fun linearScan(): String? {
+        val rssi = queries[next]
+        next = (next + 1) and (queries.size - 1)
+        return linear.entries
+            .filter { (_, d) ->
+                now - d.lastTimestamp in 0..WINDOW_MS && kotlin.math.abs(rssi - d.rssi) <= THRESHOLD_DBM
+            }
+            .minByOrNull { kotlin.math.abs(rssi - it.value.rssi) }
+            ?.value?.stableId
+    }
+
+    private companion object {
+        const val DISAPPEARED = 2_000
+        const val WINDOW_MS = 30_000L
+        const val THRESHOLD_DBM = 8
+    }
+}
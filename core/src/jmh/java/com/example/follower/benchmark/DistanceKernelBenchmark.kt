@@ -0,0 +1,70 @@
+package com.example.follower.benchmark
+
+import com.example.follower.detection.GeoDistance
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.infra.Blackhole
+import java.util.Random
+import java.util.concurrent.TimeUnit
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * Vincenty reference versus the fast kernel over sub-kilometre pairs.
+ * Accuracy against Vincenty is covered by `GeoDistanceTest`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class DistanceKernelBenchmark {
+
+    private val lat1 = DoubleArray(PAIRS)
+    private val lon1 = DoubleArray(PAIRS)
+    private val lat2 = DoubleArray(PAIRS)
+    private val lon2 = DoubleArray(PAIRS)
+    private val scaleLat = DoubleArray(PAIRS)
+    private val scaleLon = DoubleArray(PAIRS)
+
+    @Setup
+    fun setup() {
+        val random = Random(3L)
+        for (i in 0 until PAIRS) {
+            val lat = random.nextDouble() * 160.0 - 80.0
+            val lon = random.nextDouble() * 340.0 - 170.0
+            val meters = 1.0 + random.nextDouble() * 999.0
+            val bearing = random.nextDouble() * 2 * Math.PI
+            lat1[i] = lat
+            lon1[i] = lon
+            lat2[i] = lat + meters * cos(bearing) / 111_000.0
+            lon2[i] = lon + meters * sin(bearing) / (111_000.0 * cos(Math.toRadians(lat)))
+            scaleLat[i] = GeoDistance.metersPerDegLat(lat)
+            scaleLon[i] = GeoDistance.metersPerDegLon(lat)
+        }
+    }
+
+    @Benchmark
+    fun vincenty(bh: Blackhole) {
+        for (i in 0 until PAIRS) bh.consume(GeoDistance.vincentyMeters(lat1[i], lon1[i], lat2[i], lon2[i]))
+    }
+
+    @Benchmark
+    fun fast(bh: Blackhole) {
+        for (i in 0 until PAIRS) bh.consume(GeoDistance.meters(lat1[i], lon1[i], lat2[i], lon2[i]))
+    }
+
+    @Benchmark
+    fun precomputedScale(bh: Blackhole) {
+        for (i in 0 until PAIRS) {
+            bh.consume(GeoDistance.metersScaled(lat2[i], lon2[i], lat1[i], lon1[i], scaleLat[i], scaleLon[i]))
+        }
+    }
+
+    private companion object {
+        const val PAIRS = 1_000
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.follower.benchmark
+
+import com.example.follower.data.model.ScanResult
+import com.example.follower.detection.AdvertisingFingerprint
+import com.example.follower.detection.Clock
+import com.example.follower.detection.DeviceIdentityResolver
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Fingerprint resolution throughput over one second of rotating-MAC
+ * advertisements at 50k/s.  Both scores need to stay well above 50,000
+ * ops/s for the resolver to keep up with a crowded scan; run with
+ * `-prof gc` to confirm [fingerprint] allocates nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class IdentityResolverBenchmark {
+
+    private lateinit var resolver: DeviceIdentityResolver
+    private lateinit var advertisements: Array<ScanResult>
+    private val fingerprint = AdvertisingFingerprint()
+    private var next = 0
+
+    @Setup
+    fun setup() {
+        advertisements = BenchmarkData.advertisements(ADVERTISEMENTS_PER_SECOND, perSecond = ADVERTISEMENTS_PER_SECOND)
+        resolver = DeviceIdentityResolver(Clock { BenchmarkData.BASE_TIME })
+    }
+
+    @Benchmark
+    fun resolveIdentity(): String {
+        val result = advertisements[next]
+        next = (next + 1) % advertisements.size
+        return resolver.resolveIdentity(result)
+    }
+
+    @Benchmark
+    fun fingerprint(): Long {
+        val result = advertisements[next]
+        next = (next + 1) % advertisements.size
+        return if (fingerprint.compute(result)) fingerprint.hi xor fingerprint.lo else 0L
+    }
+
+    private companion object {
+        const val ADVERTISEMENTS_PER_SECOND = 50_000
+    }
+}
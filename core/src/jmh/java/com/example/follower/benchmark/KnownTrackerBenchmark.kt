@@ -0,0 +1,38 @@
+package com.example.follower.benchmark
+
+import com.example.follower.data.model.ScanResult
+import com.example.follower.detection.KnownTrackerDetector
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/** Tracker signature matching over a mix of tracker and non-tracker advertisements. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class KnownTrackerBenchmark {
+
+    private val detector = KnownTrackerDetector()
+    private lateinit var advertisements: Array<ScanResult>
+
+    @Setup
+    fun setup() {
+        advertisements = BenchmarkData.advertisements(1_000)
+    }
+
+    @Benchmark
+    fun hasTrackerSignature(bh: Blackhole) {
+        for (result in advertisements) bh.consume(detector.hasTrackerSignature(result))
+    }
+
+    @Benchmark
+    fun detect(bh: Blackhole) {
+        for (result in advertisements) bh.consume(detector.detect(result))
+    }
+}
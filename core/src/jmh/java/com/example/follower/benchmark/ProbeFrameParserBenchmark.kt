@@ -0,0 +1,33 @@
+package com.example.follower.benchmark
+
+import com.example.follower.usb.Ieee80211Parser
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.infra.Blackhole
+import java.util.concurrent.TimeUnit
+
+/** 802.11 probe-request parsing throughput. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class ProbeFrameParserBenchmark {
+
+    private lateinit var frames: Array<ByteArray>
+
+    @Setup
+    fun setup() {
+        frames = BenchmarkData.probeFrames(1_000)
+    }
+
+    @Benchmark
+    fun parseProbeRequests(bh: Blackhole) {
+        for (frame in frames) {
+            bh.consume(Ieee80211Parser.parseProbeRequest(frame, rssi = -50, channel = 6, timestamp = 0L))
+        }
+    }
+}
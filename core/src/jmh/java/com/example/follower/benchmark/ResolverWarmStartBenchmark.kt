@@ -0,0 +1,70 @@
+package com.example.follower.benchmark
+
+import com.example.follower.detection.Clock
+import com.example.follower.detection.DeviceIdentityResolver
+import com.example.follower.detection.ResolverStateStore
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+
+/**
+ * Resolver warm start: restoring [MAPPINGS] MAC mappings, most from the
+ * snapshot and the rest replayed from the delta log.  Should stay in the
+ * low milliseconds so engine construction does not stall service start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+open class ResolverWarmStartBenchmark {
+
+    private val clock = Clock { BenchmarkData.BASE_TIME }
+    private lateinit var dir: File
+
+    @Setup
+    fun setup() {
+        dir = Files.createTempDirectory("resolver-bench").toFile()
+        val store = ResolverStateStore(dir, clock)
+        store.load { _, _ -> }
+        val mappings = LinkedHashMap<String, String>()
+        for (i in 0 until MAPPINGS) {
+            val mac = "%02X:%02X:%02X:%02X:%02X:%02X".format(
+                0xC0 or (i ushr 24 and 0x3F), i ushr 16 and 0xFF, i ushr 8 and 0xFF, i and 0xFF, 0x10, 0x20
+            )
+            mappings[mac] = if (i % 2 == 0) {
+                ResolverStateStore.fingerprintId(i * -0x61c8864680b583ebL, i * 0x5851F42D4C957F2DL)
+            } else {
+                ResolverStateStore.counterId(i.toLong())
+            }
+        }
+        val entries = mappings.entries.toList()
+        store.compact(MAPPINGS.toLong(), mappings.size) { emit -> for ((mac, id) in mappings) emit(mac, id) }
+        for (e in entries.subList(entries.size - LOGGED, entries.size)) store.appendMapping(e.key, e.value)
+        store.close()
+    }
+
+    @TearDown
+    fun tearDown() {
+        dir.deleteRecursively()
+    }
+
+    @Benchmark
+    fun warmStart(): String? {
+        val store = ResolverStateStore(dir, clock)
+        val resolver = DeviceIdentityResolver(clock, store, macCacheBytes = 4L shl 20)
+        store.close()
+        return resolver.getStableId("C0:00:00:00:10:20")
+    }
+
+    private companion object {
+        const val MAPPINGS = 10_000
+        const val LOGGED = 1_000
+    }
+}
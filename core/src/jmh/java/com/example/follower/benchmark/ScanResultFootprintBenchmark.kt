@@ -0,0 +1,66 @@
+package com.example.follower.benchmark
+
+import com.example.follower.data.model.DeviceType
+import com.example.follower.data.model.ScanResult
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.State
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+/**
+ * Footprint of one queued BLE [ScanResult], for the ingest queue's memory
+ * bound.  Each op builds a result the way the BLE scanner does — a fresh
+ * MAC string, device name, manufacturer data copied out of the scan
+ * record, service UUIDs stringified into a new list — and nothing else, so
+ * the gc profiler's `gc.alloc.rate.norm` is the bytes one queued result
+ * retains (the queue's map entry comes on top).
+ *
+ *     ./gradlew :core:jmh -Pjmh.includes=ScanResultFootprintBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class ScanResultFootprintBenchmark {
+
+    private val macChars = "5A:11:22:33:44:00".toCharArray()
+    private val nameChars = "Tag 1234".toCharArray()
+
+    /** Apple Find My payload: the longest manufacturer data commonly seen. */
+    private val payload = ByteArray(27) { it.toByte() }
+
+    private val uuids = listOf(
+        UUID.fromString("0000fd44-0000-1000-8000-00805f9b34fb"),
+        UUID.fromString("0000feaa-0000-1000-8000-00805f9b34fb")
+    )
+
+    private var sequence = 0
+
+    @Benchmark
+    fun bleResult(): ScanResult {
+        sequence++
+        macChars[16] = HEX[sequence and 0xF]
+        return ScanResult(
+            macAddress = String(macChars),
+            deviceType = DeviceType.BLUETOOTH_LE,
+            deviceName = String(nameChars),
+            rssi = -70,
+            timestamp = BenchmarkData.BASE_TIME + sequence,
+            latitude = 51.5,
+            longitude = -0.12,
+            locationAccuracy = 10f,
+            bluetoothClass = 0x1F00,
+            bondState = 10,
+            manufacturerData = payload.copyOf(),
+            serviceUuids = uuids.map { it.toString() },
+            txPowerLevel = -12
+        )
+    }
+
+    private companion object {
+        val HEX = "0123456789ABCDEF".toCharArray()
+    }
+}
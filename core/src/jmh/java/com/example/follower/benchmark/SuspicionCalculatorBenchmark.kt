@@ -0,0 +1,77 @@
+package com.example.follower.benchmark
+
+import com.example.follower.data.model.DetectedDevice
+import com.example.follower.data.model.DeviceSighting
+import com.example.follower.data.model.Encounter
+import com.example.follower.detection.Clock
+import com.example.follower.detection.Encounters
+import com.example.follower.detection.SightingWindow
+import com.example.follower.detection.SuspicionCalculator
+import com.example.follower.detection.SuspicionResult
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Full batch scoring of one device across history sizes.
+ *
+ * [calculate] is the entity-list path; [calculateWindow] is the engine's
+ * path, refilling a reused [SightingWindow] (as the cursor loader does) and
+ * scoring off its columns.  Compare `gc.alloc.rate.norm` between the two
+ * for per-call heap churn.  [calculateEncounters] scores the same history
+ * from its encounter summaries, built once in setup as ingest would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class SuspicionCalculatorBenchmark {
+
+    @Param("50", "500", "5000")
+    @JvmField
+    var historySize: Int = 0
+
+    private lateinit var calculator: SuspicionCalculator
+    private lateinit var device: DetectedDevice
+    private lateinit var sightings: List<DeviceSighting>
+    private lateinit var encounters: List<Encounter>
+    private val window = SightingWindow()
+
+    @Setup
+    fun setup() {
+        sightings = BenchmarkData.sightings("AA:BB:CC:DD:EE:FF", historySize)
+        val lastSeen = sightings.last().timestamp
+        device = BenchmarkData.device("AA:BB:CC:DD:EE:FF", lastSeen)
+        calculator = SuspicionCalculator(DefaultSuspicionConfig, Clock { lastSeen })
+
+        val streakGapMs = DefaultSuspicionConfig.streakGapThresholdMinutes * 60_000L
+        val built = ArrayList<Encounter>()
+        for (s in sightings) {
+            val open = built.lastOrNull()
+            if (open != null && Encounters.continues(open, s.timestamp, streakGapMs)) {
+                built[built.size - 1] = Encounters.extend(open, s)
+            } else {
+                built.add(Encounters.open(s))
+            }
+        }
+        encounters = built
+    }
+
+    @Benchmark
+    fun calculate(): SuspicionResult = calculator.calculate(device, sightings)
+
+    @Benchmark
+    fun calculateWindow(): SuspicionResult {
+        window.clear()
+        window.addAll(sightings)
+        return calculator.calculate(device, window)
+    }
+
+    @Benchmark
+    fun calculateEncounters(): SuspicionResult = calculator.calculate(device, encounters)
+}
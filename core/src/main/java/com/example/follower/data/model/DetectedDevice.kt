@@ -34,7 +34,8 @@ data class DetectedDevice(
     // Number of distinct locations where device was seen
     val locationCount: Int = 1,
 
-    // Current threat score (0.0 - 1.0)
+    // Threat score (0-100) before time decay, which runs from lastSeenTimestamp;
+    // read it through ScoreDecay, or the DAO queries that apply it
     val threatScore: Float = 0f,
 
     // Signal strength at last detection (dBm)
@@ -52,6 +53,10 @@ data class DetectedDevice(
     // Whether user has marked this as suspicious
     val isFlagged: Boolean = false,
 
+    // Whether threatScore is pinned at 100 by a known-tracker advertisement
+    // match rather than computed from sightings
+    val isKnownTracker: Boolean = false,
+
     // Additional metadata (JSON)
     val metadata: String? = null
 )
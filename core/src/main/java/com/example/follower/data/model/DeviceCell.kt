@@ -0,0 +1,32 @@
+package com.example.follower.data.model
+
+import androidx.room.Entity
+import androidx.room.ForeignKey
+
+/**
+ * One [com.example.follower.detection.GeoCell] a device has been seen in.
+ *
+ * Maintained at ingest by the batched writes, so a device's distinct
+ * location count is the size of its cell set instead of a COUNT(DISTINCT)
+ * over its whole sighting history.
+ */
+@Entity(
+    tableName = "device_cells",
+    primaryKeys = ["deviceMacAddress", "cellId"],
+    foreignKeys = [
+        ForeignKey(
+            entity = DetectedDevice::class,
+            parentColumns = ["macAddress"],
+            childColumns = ["deviceMacAddress"],
+            onDelete = ForeignKey.CASCADE
+        )
+    ]
+)
+data class DeviceCell(
+    val deviceMacAddress: String,
+
+    val cellId: Long,
+
+    val firstSeenTimestamp: Long,
+    val lastSeenTimestamp: Long
+)
@@ -4,6 +4,7 @@ import androidx.room.Entity
 import androidx.room.ForeignKey
 import androidx.room.Index
 import androidx.room.PrimaryKey
+import com.example.follower.detection.GeoCell
 
 /**
  * Represents a single sighting/detection of a device at a specific time and location.
@@ -52,5 +53,8 @@ data class DeviceSighting(
 
     // Channel/frequency info
     val channel: Int? = null,
-    val frequency: Int? = null
+    val frequency: Int? = null,
+
+    // ~500m grid cell of the location, precomputed for location counting and rollups
+    val geocell: Long = GeoCell.of(latitude, longitude)
 )
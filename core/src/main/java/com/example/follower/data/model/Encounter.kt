@@ -0,0 +1,59 @@
+package com.example.follower.data.model
+
+import androidx.room.Entity
+import androidx.room.ForeignKey
+import androidx.room.Index
+
+/**
+ * Summary of one continuous encounter with a device: a run of sightings
+ * with no gap longer than the streak gap threshold.
+ *
+ * Maintained incrementally at ingest (see
+ * [com.example.follower.detection.Encounters]) and keyed by device and
+ * start time, so the open encounter is rewritten in place as it grows.
+ * Scoring from encounters is O(encounters) instead of O(sightings), which
+ * lets the raw sightings be kept only for a short forensic window.
+ */
+@Entity(
+    tableName = "encounters",
+    primaryKeys = ["deviceMacAddress", "startTimestamp"],
+    foreignKeys = [
+        ForeignKey(
+            entity = DetectedDevice::class,
+            parentColumns = ["macAddress"],
+            childColumns = ["deviceMacAddress"],
+            onDelete = ForeignKey.CASCADE
+        )
+    ],
+    indices = [
+        Index(value = ["endTimestamp"])
+    ]
+)
+data class Encounter(
+    val deviceMacAddress: String,
+
+    val startTimestamp: Long,
+    val endTimestamp: Long,
+
+    val sightingCount: Int,
+
+    // Signal strength; variance is the population variance, so encounters can be pooled
+    val rssiMin: Int,
+    val rssiMax: Int,
+    val rssiMean: Double,
+    val rssiVariance: Double,
+
+    // Location of the first and last sighting
+    val entryLatitude: Double,
+    val entryLongitude: Double,
+    val exitLatitude: Double,
+    val exitLongitude: Double,
+
+    // Mean location of all sightings
+    val centroidLatitude: Double,
+    val centroidLongitude: Double,
+
+    // User path covered during the encounter, and furthest point from entry
+    val pathLengthMeters: Float,
+    val maxDisplacementMeters: Float
+)
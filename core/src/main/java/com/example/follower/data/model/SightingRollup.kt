@@ -0,0 +1,60 @@
+package com.example.follower.data.model
+
+import androidx.room.Entity
+import androidx.room.Index
+
+/**
+ * Aggregate of one device's sightings within one time bucket and one
+ * [com.example.follower.detection.GeoCell].
+ *
+ * Maintenance rolls raw sightings up into [RollupResolution.MINUTE] rows,
+ * complete minutes into hours and complete hours into days, so a multi-day
+ * analysis reads a few rows per device per day instead of every sighting.
+ * Each level is pruned on its own retention.
+ *
+ * Deliberately no foreign key to [DetectedDevice]: a device row expires a
+ * week after it was last seen, and the long-horizon pass must still see
+ * the rollups of a device that comes back after that.
+ */
+@Entity(
+    tableName = "sighting_rollups",
+    primaryKeys = ["deviceMacAddress", "resolution", "bucketStart", "geocell"],
+    indices = [
+        Index(value = ["resolution", "bucketStart"])
+    ]
+)
+data class SightingRollup(
+    val deviceMacAddress: String,
+
+    val resolution: RollupResolution,
+
+    // Start of the time bucket, a multiple of resolution.bucketMs
+    val bucketStart: Long,
+
+    val geocell: Long,
+
+    val sightingCount: Int,
+
+    // Signal strength sums, so buckets merge exactly
+    val rssiSum: Long,
+    val rssiSumSquares: Long,
+    val rssiMin: Int,
+    val rssiMax: Int,
+
+    // Position sums; divide by sightingCount for the centroid
+    val latitudeSum: Double,
+    val longitudeSum: Double,
+
+    val firstTimestamp: Long,
+    val lastTimestamp: Long
+) {
+    val centroidLatitude: Double get() = latitudeSum / sightingCount
+    val centroidLongitude: Double get() = longitudeSum / sightingCount
+}
+
+/** Rollup levels, finest first; each is built from the one before it. */
+enum class RollupResolution(val bucketMs: Long, val retentionMs: Long) {
+    MINUTE(60_000L, 2 * 24 * 60 * 60 * 1000L),
+    HOUR(60 * 60 * 1000L, 8 * 24 * 60 * 60 * 1000L),
+    DAY(24 * 60 * 60 * 1000L, 35 * 24 * 60 * 60 * 1000L)
+}
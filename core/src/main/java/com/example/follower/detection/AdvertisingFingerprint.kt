@@ -0,0 +1,111 @@
+package com.example.follower.detection
+
+import com.example.follower.data.model.ScanResult
+
+/**
+ * 128-bit fingerprint of the advertising data that does NOT change when a
+ * BLE MAC rotates: device type, manufacturer company ID and payload
+ * prefix, the set of service UUIDs, and TX power.  Two observations with
+ * the same fingerprint are assumed to be the same physical device.
+ *
+ * The hash is non-cryptographic and computed straight from the scan
+ * result's fields into a reusable holder: no key string, no digest, no
+ * sorted UUID copy.  UUIDs are hashed one by one and combined order-
+ * independently, which gives the same answer sorting them would.
+ * Not thread-safe; each resolver owns one instance.
+ */
+class AdvertisingFingerprint {
+
+    companion object {
+        /** Manufacturer payload bytes after the company ID that take part in the hash. */
+        const val PAYLOAD_PREFIX_BYTES = 6
+
+        private const val SEED_HI = 0x243F6A8885A308D3L
+        private const val SEED_LO = 0x13198A2E03707344L
+        private const val C1 = -0x61c8864680b583ebL // 0x9E3779B97F4A7C15
+        private const val C2 = -0x3d4d51c2d82b14b1L // 0xC2B2AE3D27D4EB4F
+
+        private const val TAG_MANUFACTURER = 1L
+        private const val TAG_SERVICES = 2L
+        private const val TAG_TX_POWER = 3L
+
+        /** MurmurHash3 64-bit finaliser. */
+        private fun fmix(value: Long): Long {
+            var k = value
+            k = k xor (k ushr 33)
+            k *= -0xae502812aa7333L // 0xFF51AFD7ED558CCD
+            k = k xor (k ushr 33)
+            k *= -0x3b314601e57a13adL // 0xC4CEB9FE1A85EC53
+            return k xor (k ushr 33)
+        }
+
+        private fun hashString(s: String): Long {
+            var h = SEED_LO xor s.length.toLong()
+            for (i in s.indices) h = (h xor s[i].code.toLong()) * C1
+            return fmix(h)
+        }
+    }
+
+    /** High 64 bits of the last computed fingerprint. */
+    var hi = 0L
+        private set
+
+    /** Low 64 bits of the last computed fingerprint. */
+    var lo = 0L
+        private set
+
+    /**
+     * Fingerprint [result] into [hi] / [lo].  Returns false, leaving them
+     * undefined, when there is neither manufacturer data nor a service UUID
+     * to fingerprint on.
+     */
+    fun compute(result: ScanResult): Boolean {
+        val data = result.manufacturerData?.takeIf { it.size >= 2 }
+        val uuids = result.serviceUuids
+        if (data == null && uuids.isNullOrEmpty()) return false
+
+        hi = SEED_HI
+        lo = SEED_LO
+        mix(result.deviceType.ordinal.toLong())
+
+        if (data != null) {
+            mix(TAG_MANUFACTURER)
+            // Company ID (little-endian) and up to PAYLOAD_PREFIX_BYTES of payload, packed
+            val end = minOf(data.size, 2 + PAYLOAD_PREFIX_BYTES)
+            var packed = 0L
+            for (i in 0 until end) packed = packed or ((data[i].toLong() and 0xFF) shl (8 * i))
+            mix(packed)
+            mix(end.toLong())
+        }
+
+        if (!uuids.isNullOrEmpty()) {
+            mix(TAG_SERVICES)
+            var sum = 0L
+            var xor = 0L
+            for (i in uuids.indices) {
+                val h = hashString(uuids[i])
+                sum += h
+                xor = xor xor fmix(h)
+            }
+            mix(sum)
+            mix(xor)
+            mix(uuids.size.toLong())
+        }
+
+        result.txPowerLevel?.let {
+            mix(TAG_TX_POWER)
+            mix(it.toLong())
+        }
+
+        hi = fmix(hi)
+        lo = fmix(lo xor hi)
+        return true
+    }
+
+    private fun mix(value: Long) {
+        hi = java.lang.Long.rotateLeft(hi xor fmix(value * C1), 27) * 5 + 0x52DCE729
+        lo = java.lang.Long.rotateLeft(lo xor fmix(value * C2), 31) * 5 + 0x38495AB5
+    }
+
+    override fun toString(): String = "%016x%016x".format(hi, lo)
+}
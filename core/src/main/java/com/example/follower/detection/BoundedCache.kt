@@ -0,0 +1,115 @@
+package com.example.follower.detection
+
+/** Counters of a [BoundedCache]; summable across shards. */
+data class CacheStats(
+    val hits: Long,
+    val misses: Long,
+    val evictions: Long,
+    val size: Int,
+    val weight: Long
+) {
+    val hitRate: Float
+        get() = if (hits + misses == 0L) 0f else hits.toFloat() / (hits + misses)
+
+    operator fun plus(other: CacheStats) = CacheStats(
+        hits = hits + other.hits,
+        misses = misses + other.misses,
+        evictions = evictions + other.evictions,
+        size = size + other.size,
+        weight = weight + other.weight
+    )
+
+    override fun toString(): String =
+        "size=$size weight=$weight hits=$hits misses=$misses evictions=$evictions " +
+            "hitRate=${"%.2f".format(hitRate)}"
+
+    companion object {
+        val EMPTY = CacheStats(0, 0, 0, 0, 0)
+    }
+}
+
+/**
+ * Access-order LRU map bounded by total weight rather than entry count.
+ *
+ * [weigher] gives each entry's cost in whatever unit [maxWeight] is in:
+ * 1 per entry for a plain count, estimated bytes for a memory budget.  A
+ * value's weight is taken when it is [set]; a value mutated in place is
+ * re-weighed by setting it again.  After every [set] the least recently
+ * used entries are evicted until the total fits, except the entry just set.
+ *
+ * [get] counts hits and misses for [stats]; [forEach] and [removeAll]
+ * neither count nor change the access order.  Not thread-safe;
+ * owners guard it with their own lock.
+ */
+class BoundedCache<K : Any, V : Any>(
+    private val maxWeight: Long,
+    private val weigher: (K, V) -> Int = { _, _ -> 1 }
+) {
+
+    private class Slot<V>(val value: V, val weight: Int)
+
+    private val map = LinkedHashMap<K, Slot<V>>(16, 0.75f, true)
+
+    private var hits = 0L
+    private var misses = 0L
+    private var evictions = 0L
+
+    /** Total weight of the cached entries. */
+    var weight = 0L
+        private set
+
+    val size: Int get() = map.size
+
+    operator fun get(key: K): V? {
+        val slot = map[key]
+        if (slot == null) misses++ else hits++
+        return slot?.value
+    }
+
+    operator fun set(key: K, value: V) {
+        val w = weigher(key, value)
+        map.put(key, Slot(value, w))?.let { weight -= it.weight }
+        weight += w
+        if (weight > maxWeight) evict()
+    }
+
+    fun remove(key: K): V? {
+        val slot = map.remove(key) ?: return null
+        weight -= slot.weight
+        return slot.value
+    }
+
+    /** Drop every entry matching [predicate]. */
+    fun removeAll(predicate: (K, V) -> Boolean) {
+        val it = map.entries.iterator()
+        while (it.hasNext()) {
+            val e = it.next()
+            if (predicate(e.key, e.value.value)) {
+                it.remove()
+                weight -= e.value.weight
+            }
+        }
+    }
+
+    /** Visit every entry, least recently used first. */
+    fun forEach(action: (K, V) -> Unit) {
+        for ((k, slot) in map) action(k, slot.value)
+    }
+
+    fun clear() {
+        map.clear()
+        weight = 0L
+    }
+
+    fun stats() = CacheStats(hits, misses, evictions, map.size, weight)
+
+    private fun evict() {
+        val it = map.entries.iterator()
+        while (weight > maxWeight && map.size > 1 && it.hasNext()) {
+            val e = it.next()
+            it.remove()
+            weight -= e.value.weight
+            evictions++
+        }
+    }
+}
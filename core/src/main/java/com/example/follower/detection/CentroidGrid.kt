@@ -0,0 +1,234 @@
+package com.example.follower.detection
+
+import kotlin.math.abs
+import kotlin.math.ceil
+import kotlin.math.cos
+import kotlin.math.floor
+
+/**
+ * Uniform lat/lon grid over cluster centroids, for nearest-centroid lookups
+ * that only probe the cells around a point instead of every cluster.
+ *
+ * Cells are [thresholdMeters] tall and roughly as wide (longitude is scaled
+ * by cos of the first latitude seen), so any centroid within the threshold
+ * of a point lies in the point's row ±1 and a small column neighbourhood
+ * whose width is recomputed from the query latitude.  Lookups therefore give
+ * exactly the same answer as a linear scan whenever the answer is within the
+ * threshold — which is the only case callers act on.  Near the poles or the
+ * antimeridian, where the cell geometry degenerates, lookups fall back to a
+ * linear scan.
+ *
+ * Each cluster keeps the local metres-per-degree scale of its seed point,
+ * so centroid distances go through [GeoDistance.metersScaled] without trig.
+ *
+ * Centroids are kept as running sums, so [addTo] and [removeFrom] are O(1)
+ * (plus a re-bucket when the centroid crosses a cell boundary).  Cluster ids are dense,
+ * assigned in creation order, and ties resolve to the lowest id, matching
+ * `minByOrNull` / `indexOfFirst` over a creation-ordered list.
+ */
+class CentroidGrid(private val thresholdMeters: Float) {
+
+    companion object {
+        /** Shortest length of a degree of latitude on WGS84 (at the equator), rounded down. */
+        private const val MIN_METERS_PER_DEG_LAT = 110_500.0
+
+        /** Length of a degree of longitude at the equator, rounded down. */
+        private const val MIN_METERS_PER_DEG_LON_EQUATOR = 111_000.0
+
+        /** Beyond this latitude cells degenerate; use a linear scan. */
+        private const val MAX_GRID_LATITUDE = 80.0
+
+        /** Probing more columns than this either side is no better than a scan. */
+        private const val MAX_COLUMN_RADIUS = 8
+
+        /** Cell key of an emptied cluster; no real point packs to it. */
+        private const val EMPTY_CELL = Long.MIN_VALUE
+    }
+
+    private val cellLat = thresholdMeters / MIN_METERS_PER_DEG_LAT
+    private var cellLon = 0.0
+
+    private var sumLat = DoubleArray(16)
+    private var sumLon = DoubleArray(16)
+    private var counts = IntArray(16)
+    private var cellKeys = LongArray(16)
+    private var scaleLat = DoubleArray(16)
+    private var scaleLon = DoubleArray(16)
+
+    /** Number of clusters. */
+    var size = 0
+        private set
+
+    private val cells = HashMap<Long, IntBucket>()
+
+    fun centerLat(id: Int): Double = sumLat[id] / counts[id]
+    fun centerLon(id: Int): Double = sumLon[id] / counts[id]
+    fun count(id: Int): Int = counts[id]
+
+    /** Create a cluster seeded with one point; returns its id. */
+    fun add(lat: Double, lon: Double): Int {
+        if (size == 0) {
+            val cosLat = cos(Math.toRadians(lat.coerceIn(-MAX_GRID_LATITUDE, MAX_GRID_LATITUDE)))
+            cellLon = cellLat / cosLat
+        }
+        ensureCapacity(size + 1)
+        val id = size++
+        sumLat[id] = lat
+        sumLon[id] = lon
+        counts[id] = 1
+        scaleLat[id] = GeoDistance.metersPerDegLat(lat)
+        scaleLon[id] = GeoDistance.metersPerDegLon(lat)
+        cellKeys[id] = cellKey(lat, lon)
+        cells.getOrPut(cellKeys[id]) { IntBucket() }.add(id)
+        return id
+    }
+
+    /** Add a point to cluster [id], moving its running-sum centroid. */
+    fun addTo(id: Int, lat: Double, lon: Double) {
+        sumLat[id] += lat
+        sumLon[id] += lon
+        counts[id]++
+        rebucket(id)
+    }
+
+    /**
+     * Take a point back out of cluster [id].  A cluster left empty drops out
+     * of every lookup but keeps its id, so ids stay dense; callers that need
+     * it gone rebuild the grid.
+     */
+    fun removeFrom(id: Int, lat: Double, lon: Double) {
+        sumLat[id] -= lat
+        sumLon[id] -= lon
+        if (--counts[id] == 0) {
+            unbucket(id)
+            cellKeys[id] = EMPTY_CELL
+        } else {
+            rebucket(id)
+        }
+    }
+
+    /** Id of the nearest centroid within the threshold of the point, or -1. */
+    fun nearestWithin(lat: Double, lon: Double): Int {
+        var best = -1
+        var bestDistance = Float.MAX_VALUE
+        forEachCandidate(lat, lon) { id ->
+            val d = distanceTo(id, lat, lon)
+            if (d < bestDistance || (d == bestDistance && id < best)) {
+                bestDistance = d
+                best = id
+            }
+        }
+        return if (best >= 0 && bestDistance <= thresholdMeters) best else -1
+    }
+
+    /** Lowest id whose centroid is within the threshold of the point, or -1. */
+    fun firstWithin(lat: Double, lon: Double): Int {
+        var first = -1
+        forEachCandidate(lat, lon) { id ->
+            if ((first < 0 || id < first) &&
+                distanceTo(id, lat, lon) <= thresholdMeters
+            ) {
+                first = id
+            }
+        }
+        return first
+    }
+
+    /** Distance from the centroid of cluster [id] to the point. */
+    fun distanceTo(id: Int, lat: Double, lon: Double): Float =
+        GeoDistance.metersScaled(lat, lon, centerLat(id), centerLon(id), scaleLat[id], scaleLon[id])
+
+    // ---- Internals ------------------------------------------------------------------
+
+    private inline fun forEachCandidate(lat: Double, lon: Double, action: (Int) -> Unit) {
+        if (size == 0) return
+
+        val colRadius = columnRadius(lat, lon)
+        if (colRadius < 0) {
+            for (id in 0 until size) if (counts[id] > 0) action(id)
+            return
+        }
+
+        val row = floor(lat / cellLat).toInt()
+        val col = floor(lon / cellLon).toInt()
+        for (r in row - 1..row + 1) {
+            for (c in col - colRadius..col + colRadius) {
+                val bucket = cells[packKey(r, c)] ?: continue
+                for (i in 0 until bucket.size) action(bucket[i])
+            }
+        }
+    }
+
+    /**
+     * Columns to probe either side so that every point within the threshold
+     * is covered, or -1 if the grid can't answer and a scan is needed.
+     */
+    private fun columnRadius(lat: Double, lon: Double): Int {
+        // Widest longitude span the threshold can cover is at the most poleward row probed
+        val maxAbsLat = abs(lat) + 2 * cellLat
+        if (maxAbsLat > MAX_GRID_LATITUDE) return -1
+        val spanLon = thresholdMeters /
+            (MIN_METERS_PER_DEG_LON_EQUATOR * cos(Math.toRadians(maxAbsLat)))
+        if (abs(lon) + spanLon + cellLon >= 180.0) return -1
+        val radius = ceil(spanLon / cellLon).toInt()
+        return if (radius > MAX_COLUMN_RADIUS) -1 else radius
+    }
+
+    private fun rebucket(id: Int) {
+        val key = cellKey(centerLat(id), centerLon(id))
+        if (key != cellKeys[id]) {
+            unbucket(id)
+            cellKeys[id] = key
+            cells.getOrPut(key) { IntBucket() }.add(id)
+        }
+    }
+
+    private fun unbucket(id: Int) {
+        cells[cellKeys[id]]?.let { bucket ->
+            bucket.remove(id)
+            if (bucket.isEmpty()) cells.remove(cellKeys[id])
+        }
+    }
+
+    private fun cellKey(lat: Double, lon: Double): Long =
+        packKey(floor(lat / cellLat).toInt(), floor(lon / cellLon).toInt())
+
+    private fun packKey(row: Int, col: Int): Long =
+        (row.toLong() shl 32) or (col.toLong() and 0xFFFF_FFFFL)
+
+    private fun ensureCapacity(n: Int) {
+        if (n <= counts.size) return
+        val cap = maxOf(n, counts.size * 2)
+        sumLat = sumLat.copyOf(cap)
+        sumLon = sumLon.copyOf(cap)
+        counts = counts.copyOf(cap)
+        cellKeys = cellKeys.copyOf(cap)
+        scaleLat = scaleLat.copyOf(cap)
+        scaleLon = scaleLon.copyOf(cap)
+    }
+
+    /** Tiny unboxed int list for cell membership. */
+    private class IntBucket {
+        private var items = IntArray(4)
+        var size = 0
+            private set
+
+        operator fun get(i: Int): Int = items[i]
+
+        fun add(id: Int) {
+            if (size == items.size) items = items.copyOf(size * 2)
+            items[size++] = id
+        }
+
+        fun remove(id: Int) {
+            for (i in 0 until size) {
+                if (items[i] == id) {
+                    items[i] = items[--size]
+                    return
+                }
+            }
+        }
+
+        fun isEmpty(): Boolean = size == 0
+    }
+}
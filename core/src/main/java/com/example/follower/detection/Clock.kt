@@ -0,0 +1,36 @@
+package com.example.follower.detection
+
+/**
+ * Source of "now" for the detection pipeline.
+ *
+ * Production code uses [SYSTEM]; trace replay and simulation use a
+ * [ManualClock] so throttles, windows and cooldowns follow recorded or
+ * virtual time instead of the wall clock.
+ */
+fun interface Clock {
+    fun now(): Long
+
+    companion object {
+        val SYSTEM: Clock = Clock { System.currentTimeMillis() }
+    }
+}
+
+/**
+ * A [Clock] that only moves when told to.
+ */
+class ManualClock(start: Long = 0L) : Clock {
+
+    @Volatile
+    private var time = start
+
+    override fun now(): Long = time
+
+    /** Move to [timestamp]; time never goes backwards. */
+    fun advanceTo(timestamp: Long) {
+        if (timestamp > time) time = timestamp
+    }
+
+    fun advanceBy(deltaMs: Long) {
+        advanceTo(time + deltaMs)
+    }
+}
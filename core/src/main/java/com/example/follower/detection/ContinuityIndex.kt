@@ -0,0 +1,95 @@
+package com.example.follower.detection
+
+/**
+ * Recently disappeared BLE MACs, indexed for RSSI-continuity lookups.
+ *
+ * Entries are binned by last RSSI in 1 dBm buckets; each bucket is a ring
+ * in disappearance order, so the oldest entries sit at its head.
+ * [nearest] visits only the `2 * thresholdDbm + 1` buckets within range,
+ * nearest RSSI first, and reclaims entries older than [windowMs] from each
+ * head as it goes.  [remove] only marks an entry dead; dead entries are
+ * reclaimed the same way.  Not thread-safe.
+ */
+class ContinuityIndex(private val windowMs: Long, private val thresholdDbm: Int) {
+
+    companion object {
+        private const val MIN_RSSI = -128
+        private const val MAX_RSSI = 127
+    }
+
+    class Entry(
+        val macAddress: String,
+        val rssi: Int,
+        val lastTimestamp: Long,
+        val stableId: String
+    ) {
+        internal var live = true
+    }
+
+    private val buckets = arrayOfNulls<ArrayDeque<Entry>>(MAX_RSSI - MIN_RSSI + 1)
+    private val byMac = HashMap<String, Entry>()
+
+    /** Live entries, including any not yet reclaimed past the window. */
+    val size: Int get() = byMac.size
+
+    fun add(macAddress: String, rssi: Int, lastTimestamp: Long, stableId: String) {
+        val entry = Entry(macAddress, rssi.coerceIn(MIN_RSSI, MAX_RSSI), lastTimestamp, stableId)
+        byMac.put(macAddress, entry)?.live = false
+        val index = entry.rssi - MIN_RSSI
+        (buckets[index] ?: ArrayDeque<Entry>().also { buckets[index] = it }).addLast(entry)
+    }
+
+    fun remove(macAddress: String) {
+        byMac.remove(macAddress)?.live = false
+    }
+
+    /**
+     * The live entry last seen within [windowMs] before [now] whose RSSI is
+     * closest to [rssi] and within the threshold; among equals, the one that
+     * disappeared first, whichever side of [rssi] it is on.
+     */
+    fun nearest(rssi: Int, now: Long): Entry? {
+        val cutoff = now - windowMs
+        bestIn(rssi, now, cutoff)?.let { return it }
+        for (d in 1..thresholdDbm) {
+            val below = bestIn(rssi - d, now, cutoff)
+            val above = bestIn(rssi + d, now, cutoff)
+            if (below != null && (above == null || below.lastTimestamp <= above.lastTimestamp)) return below
+            if (above != null) return above
+        }
+        return null
+    }
+
+    /** Reclaim every entry older than the window. */
+    fun prune(now: Long) {
+        val cutoff = now - windowMs
+        for (bucket in buckets) if (bucket != null) reclaim(bucket, cutoff)
+    }
+
+    fun clear() {
+        buckets.fill(null)
+        byMac.clear()
+    }
+
+    // ---- Internals ------------------------------------------------------------------
+
+    private fun bestIn(rssi: Int, now: Long, cutoff: Long): Entry? {
+        if (rssi < MIN_RSSI || rssi > MAX_RSSI) return null
+        val bucket = buckets[rssi - MIN_RSSI] ?: return null
+        reclaim(bucket, cutoff)
+        for (i in bucket.indices) {
+            val e = bucket[i]
+            if (e.live && e.lastTimestamp in cutoff..now) return e
+        }
+        return null
+    }
+
+    private fun reclaim(bucket: ArrayDeque<Entry>, cutoff: Long) {
+        while (bucket.isNotEmpty()) {
+            val head = bucket.first()
+            if (head.live && head.lastTimestamp >= cutoff) break
+            bucket.removeFirst()
+            if (head.live && byMac[head.macAddress] === head) byMac.remove(head.macAddress)
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.follower.detection
+
+/**
+ * Logging shim for the Android-free core.
+ *
+ * Messages are dropped until a [sink] is installed; the app routes them to
+ * `android.util.Log`.  Priorities use the `android.util.Log` values so the
+ * sink can pass them straight through.
+ */
+object DetectionLog {
+
+    const val DEBUG = 3
+    const val INFO = 4
+
+    fun interface Sink {
+        fun log(priority: Int, tag: String, message: String)
+    }
+
+    @Volatile
+    var sink: Sink? = null
+
+    /** Whether messages go anywhere; guard messages that are costly to build. */
+    val isEnabled: Boolean get() = sink != null
+
+    fun d(tag: String, message: String) {
+        sink?.log(DEBUG, tag, message)
+    }
+
+    fun i(tag: String, message: String) {
+        sink?.log(INFO, tag, message)
+    }
+}
@@ -0,0 +1,250 @@
+package com.example.follower.detection
+
+import com.example.follower.data.model.DeviceType
+import com.example.follower.data.model.ScanResult
+
+/**
+ * Correlates BLE devices across MAC address randomization by building
+ * stable fingerprints from advertising data that persists across rotations.
+ *
+ * Modern BLE devices (Android 8+, iOS 14+, tracking devices) rotate their
+ * MAC address every ~15 minutes.  Without this resolver, each rotated
+ * address is treated as a brand-new device and never accumulates enough
+ * history to trigger an alert.
+ *
+ * Fingerprint signals (in priority order):
+ *  1. Manufacturer-specific data (company ID + payload prefix)
+ *  2. Advertised service UUIDs
+ *  3. TX power level
+ *  4. RSSI continuity (a new MAC appearing at the same signal strength
+ *     immediately after an old MAC disappears)
+ *
+ * Public methods are synchronised: the resolver runs before the detection
+ * engine knows which state shard a result belongs to, so it is shared by
+ * all concurrent scanner collectors.
+ *
+ * Stable IDs are unique across restarts: fingerprinted devices get an ID
+ * derived from the fingerprint hash, so the same device maps to the same ID
+ * whenever it is seen; the rest are numbered from a counter whose blocks
+ * are reserved in [store] before use.  With a [store], MAC mappings
+ * survive process death and are restored at construction.
+ *
+ * A BLE MAC that has not been seen for [idleMs] is moved to the
+ * recently-disappeared pool by an [IdleTimerWheel] that advances with scan
+ * timestamps, so RSSI continuity needs no periodic sweep.  A new MAC is
+ * only linked once its predecessor has gone idle, so [idleMs] should stay
+ * well below the continuity window.
+ *
+ * MAC mappings live in a [BoundedCache] of [macCacheBytes]; the devices
+ * seen most recently stay mapped however long ago they were first seen.
+ */
+class DeviceIdentityResolver(
+    private val clock: Clock = Clock.SYSTEM,
+    private val store: ResolverStateStore? = null,
+    private val idleMs: Long = DEFAULT_IDLE_MS,
+    macCacheBytes: Long = DEFAULT_MAC_CACHE_BYTES
+) {
+
+    companion object {
+        private const val TAG = "DeviceIdentityResolver"
+
+        /** Window within which a disappearing MAC can be linked to a new one via RSSI. */
+        private const val RSSI_CONTINUITY_WINDOW_MS = 30_000L
+
+        /** Maximum RSSI difference to consider two observations "continuous". */
+        private const val RSSI_CONTINUITY_THRESHOLD_DBM = 8
+
+        /** A BLE MAC unseen for this long counts as disappeared. */
+        const val DEFAULT_IDLE_MS = 10_000L
+
+        /** Memory budget for MAC mappings, about 5,000 entries. */
+        const val DEFAULT_MAC_CACHE_BYTES = 1L shl 20
+
+        /** Estimated map node, cache slot and two string headers per mapping. */
+        private const val MAC_ENTRY_OVERHEAD_BYTES = 120
+
+        /** Counter IDs reserved in the store per durable write. */
+        private const val ID_BLOCK = 1024L
+
+        /** Compact the store once its log holds this many records. */
+        private const val COMPACT_AFTER_RECORDS = 2000
+    }
+
+    /** Scratch fingerprint, reused for every advertisement (calls are synchronised). */
+    private val fingerprint = AdvertisingFingerprint()
+
+    /** Maps an observed MAC → stable device ID (for quick lookups). */
+    private val macToStableId = BoundedCache<String, String>(macCacheBytes) { mac, stableId ->
+        MAC_ENTRY_OVERHEAD_BYTES + 2 * (mac.length + stableId.length)
+    }
+
+    /** Tracks the last observation per MAC for RSSI-continuity matching. */
+    private data class LastObservation(
+        val rssi: Int,
+        val timestamp: Long,
+        val stableId: String
+    )
+    private val lastObservations = LinkedHashMap<String, LastObservation>()
+
+    /** Recently disappeared MACs, indexed by last RSSI for continuity matching. */
+    private val recentlyDisappeared =
+        ContinuityIndex(RSSI_CONTINUITY_WINDOW_MS, RSSI_CONTINUITY_THRESHOLD_DBM)
+
+    /** Idle deadline per MAC in [lastObservations]. */
+    private val idleWheel = IdleTimerWheel<String>()
+    private val onIdle: (String) -> Unit = { mac -> disappear(mac) }
+
+    private var nextSyntheticId = 1L
+
+    /** Counter IDs below this are reserved in [store] and safe to hand out. */
+    private var reservedIdBound = 1L
+
+    init {
+        if (store != null) {
+            val started = System.nanoTime()
+            val loaded = store.load { mac, stableId -> macToStableId[mac] = stableId }
+            nextSyntheticId = loaded.idBound
+            reservedIdBound = loaded.idBound
+            DetectionLog.i(
+                TAG,
+                "Restored ${macToStableId.size} MAC mappings (${loaded.logRecords} from log) in " +
+                    "${(System.nanoTime() - started) / 1_000_000} ms"
+            )
+        }
+    }
+
+    /**
+     * Resolve a scan result to a stable device identity.
+     *
+     * @return The stable device ID to use as the primary key instead of
+     *         the raw MAC address.  Returns the original MAC for non-BLE
+     *         devices or when no fingerprint is available.
+     */
+    @Synchronized
+    fun resolveIdentity(result: ScanResult): String {
+        // Only apply to BLE devices — Classic BT and WiFi MACs are stable
+        if (result.deviceType != DeviceType.BLUETOOTH_LE) {
+            return result.macAddress
+        }
+
+        idleWheel.advance(result.timestamp, onIdle)
+
+        // 1. Check if we already mapped this MAC
+        macToStableId[result.macAddress]?.let { stableId ->
+            updateObservation(result.macAddress, result.rssi, result.timestamp, stableId)
+            return stableId
+        }
+
+        // 2. Try fingerprint-based matching
+        if (fingerprint.compute(result)) {
+            val stableId = ResolverStateStore.fingerprintId(fingerprint.hi, fingerprint.lo)
+            assign(result.macAddress, stableId)
+            updateObservation(result.macAddress, result.rssi, result.timestamp, stableId)
+            if (DetectionLog.isEnabled) {
+                DetectionLog.d(TAG, "Fingerprint match: ${result.macAddress} → $stableId (key=$fingerprint)")
+            }
+            return stableId
+        }
+
+        // 3. Try RSSI-continuity matching (new MAC appears with similar RSSI
+        //    shortly after an old MAC disappears)
+        val rssiMatch = findRssiContinuityMatch(result)
+        if (rssiMatch != null) {
+            assign(result.macAddress, rssiMatch)
+            updateObservation(result.macAddress, result.rssi, result.timestamp, rssiMatch)
+            DetectionLog.d(TAG, "RSSI-continuity match: ${result.macAddress} → $rssiMatch")
+            return rssiMatch
+        }
+
+        // 4. No match — create a new stable ID for this MAC
+        val newId = generateStableId()
+        assign(result.macAddress, newId)
+        updateObservation(result.macAddress, result.rssi, result.timestamp, newId)
+        return newId
+    }
+
+    /**
+     * Notify the resolver that a MAC has not been seen for a while,
+     * so it can be moved to the "recently disappeared" pool for
+     * RSSI-continuity matching.
+     */
+    @Synchronized
+    fun markDisappeared(macAddress: String) {
+        idleWheel.cancel(macAddress)
+        disappear(macAddress)
+    }
+
+    private fun disappear(macAddress: String) {
+        val obs = lastObservations.remove(macAddress) ?: return
+        recentlyDisappeared.add(macAddress, obs.rssi, obs.timestamp, obs.stableId)
+    }
+
+    /**
+     * Get the stable ID previously assigned to a MAC, if any.
+     */
+    @Synchronized
+    fun getStableId(macAddress: String): String? = macToStableId[macAddress]
+
+    /** Hit / miss / eviction counters of the MAC mapping cache. */
+    @Synchronized
+    fun cacheStats(): CacheStats = macToStableId.stats()
+
+    /**
+     * Periodic cleanup of stale entries.
+     */
+    @Synchronized
+    fun cleanup() {
+        val now = clock.now()
+
+        // Catch up idle expiry when no BLE results have arrived to drive it
+        idleWheel.advance(now, onIdle)
+        // Disappeared MACs older than the continuity window can never match again
+        recentlyDisappeared.prune(now)
+
+        if (store != null && store.logRecords >= COMPACT_AFTER_RECORDS) {
+            store.compact(reservedIdBound, macToStableId.size) { emit -> macToStableId.forEach(emit) }
+        }
+    }
+
+    /** Write buffered mappings to the store, e.g. before the engine stops. */
+    @Synchronized
+    fun flush() {
+        store?.flush()
+    }
+
+    /** Flush and close the store; the resolver carries on in memory only. */
+    @Synchronized
+    fun close() {
+        store?.flush()
+        store?.close()
+    }
+
+    // ---- Internals ------------------------------------------------------------------
+
+    private fun findRssiContinuityMatch(result: ScanResult): String? {
+        // Closest RSSI match; it is claimed, so no other new MAC links to it
+        val match = recentlyDisappeared.nearest(result.rssi, result.timestamp) ?: return null
+        recentlyDisappeared.remove(match.macAddress)
+        return match.stableId
+    }
+
+    private fun updateObservation(mac: String, rssi: Int, timestamp: Long, stableId: String) {
+        lastObservations[mac] = LastObservation(rssi, timestamp, stableId)
+        // A MAC seen again has not disappeared after all
+        recentlyDisappeared.remove(mac)
+        idleWheel.schedule(mac, timestamp + idleMs)
+    }
+
+    private fun assign(mac: String, stableId: String) {
+        macToStableId[mac] = stableId
+        store?.appendMapping(mac, stableId)
+    }
+
+    private fun generateStableId(): String {
+        if (nextSyntheticId >= reservedIdBound) {
+            reservedIdBound = nextSyntheticId + ID_BLOCK
+            store?.reserve(reservedIdBound)
+        }
+        return ResolverStateStore.counterId(nextSyntheticId++)
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.follower.detection
+
+import com.example.follower.data.model.DeviceSighting
+import com.example.follower.data.model.Encounter
+
+/**
+ * Incremental maintenance of [Encounter] summaries.
+ *
+ * An encounter is the same thing the batch scorer calls a streak: a run of
+ * sightings with no gap longer than the streak gap threshold.  Each new
+ * sighting either [extend]s the device's latest encounter or [open]s a new
+ * one; every field is a running aggregate (Welford mean / variance for
+ * RSSI, running centroid), so nothing older than the encounter row itself
+ * is needed.
+ *
+ * A late sighting that falls inside or before the latest encounter is
+ * folded into its aggregates but never moves its start (the row key) or
+ * its exit.
+ */
+object Encounters {
+
+    fun open(sighting: DeviceSighting): Encounter = Encounter(
+        deviceMacAddress = sighting.deviceMacAddress,
+        startTimestamp = sighting.timestamp,
+        endTimestamp = sighting.timestamp,
+        sightingCount = 1,
+        rssiMin = sighting.rssi,
+        rssiMax = sighting.rssi,
+        rssiMean = sighting.rssi.toDouble(),
+        rssiVariance = 0.0,
+        entryLatitude = sighting.latitude,
+        entryLongitude = sighting.longitude,
+        exitLatitude = sighting.latitude,
+        exitLongitude = sighting.longitude,
+        centroidLatitude = sighting.latitude,
+        centroidLongitude = sighting.longitude,
+        pathLengthMeters = 0f,
+        maxDisplacementMeters = 0f
+    )
+
+    /** Whether a sighting at [timestamp] belongs to [encounter] rather than starting a new one. */
+    fun continues(encounter: Encounter, timestamp: Long, streakGapMs: Long): Boolean =
+        timestamp - encounter.endTimestamp <= streakGapMs
+
+    fun extend(encounter: Encounter, sighting: DeviceSighting): Encounter {
+        val n = encounter.sightingCount + 1
+        val r = sighting.rssi.toDouble()
+        val delta = r - encounter.rssiMean
+        val mean = encounter.rssiMean + delta / n
+        val m2 = encounter.rssiVariance * encounter.sightingCount + delta * (r - mean)
+
+        val lat = sighting.latitude
+        val lon = sighting.longitude
+        val latest = sighting.timestamp >= encounter.endTimestamp
+        val step = if (latest) {
+            distanceMeters(encounter.exitLatitude, encounter.exitLongitude, lat, lon)
+        } else 0f
+
+        return encounter.copy(
+            endTimestamp = maxOf(encounter.endTimestamp, sighting.timestamp),
+            sightingCount = n,
+            rssiMin = minOf(encounter.rssiMin, sighting.rssi),
+            rssiMax = maxOf(encounter.rssiMax, sighting.rssi),
+            rssiMean = mean,
+            rssiVariance = m2 / n,
+            exitLatitude = if (latest) lat else encounter.exitLatitude,
+            exitLongitude = if (latest) lon else encounter.exitLongitude,
+            centroidLatitude = encounter.centroidLatitude + (lat - encounter.centroidLatitude) / n,
+            centroidLongitude = encounter.centroidLongitude + (lon - encounter.centroidLongitude) / n,
+            pathLengthMeters = encounter.pathLengthMeters + step,
+            maxDisplacementMeters = maxOf(
+                encounter.maxDisplacementMeters,
+                distanceMeters(encounter.entryLatitude, encounter.entryLongitude, lat, lon)
+            )
+        )
+    }
+
+    /** Mean RSSI over all sightings of [encounters], or 0 if there are none. */
+    fun averageRssi(encounters: List<Encounter>): Float {
+        var count = 0L
+        var sum = 0.0
+        for (e in encounters) {
+            count += e.sightingCount
+            sum += e.rssiMean * e.sightingCount
+        }
+        return if (count == 0L) 0f else (sum / count).toFloat()
+    }
+}
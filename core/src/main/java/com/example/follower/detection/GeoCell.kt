@@ -0,0 +1,28 @@
+package com.example.follower.detection
+
+import kotlin.math.floor
+
+/**
+ * Fixed lat/lon grid of 1/[CELLS_PER_DEGREE]° cells (≈500 m north-south;
+ * narrower east-west away from the equator), packed into one Long as
+ * `row << 32 | col`.
+ *
+ * Computed once per sighting at ingest and stored with it
+ * (`DeviceSighting.geocell`), so queries group on an integer column
+ * instead of re-deriving cells from coordinates.
+ */
+object GeoCell {
+
+    const val CELLS_PER_DEGREE = 200
+
+    fun of(latitude: Double, longitude: Double): Long = pack(
+        floor(latitude * CELLS_PER_DEGREE).toInt(),
+        floor(longitude * CELLS_PER_DEGREE).toInt()
+    )
+
+    fun pack(row: Int, col: Int): Long = (row.toLong() shl 32) or (col.toLong() and 0xffffffffL)
+
+    fun row(cell: Long): Int = (cell shr 32).toInt()
+
+    fun col(cell: Long): Int = cell.toInt()
+}
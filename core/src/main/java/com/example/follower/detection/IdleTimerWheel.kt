@@ -0,0 +1,151 @@
+package com.example.follower.detection
+
+/**
+ * Hierarchical timer wheel that reports keys whose deadline has passed.
+ *
+ * [LEVELS] wheels of [SLOTS] slots each; level 0 slots are [tickMs] wide and
+ * every level above is [SLOTS] times coarser, so four levels of 64 cover
+ * 64^4 ticks (about 194 days at one-second ticks).  Each slot is an
+ * intrusive doubly-linked list, and a slot on a higher level is cascaded
+ * down when the level below wraps.
+ *
+ * [schedule] for a key that is already pending only moves its deadline
+ * later; the node stays in its slot and is re-filed when that slot fires.
+ * Refreshing a key on every observation is therefore a hash lookup and a
+ * field write, and each key is re-filed at most about once per interval.
+ * Expiry is accurate to one tick.  Not thread-safe.
+ */
+class IdleTimerWheel<K : Any>(private val tickMs: Long = DEFAULT_TICK_MS) {
+
+    companion object {
+        const val DEFAULT_TICK_MS = 1_000L
+
+        private const val LEVEL_BITS = 6
+        private const val SLOTS = 1 shl LEVEL_BITS
+        private const val SLOT_MASK = SLOTS - 1L
+        private const val LEVELS = 4
+
+        /** Furthest a deadline can be filed ahead of the current tick. */
+        private const val MAX_DELTA_TICKS = (1L shl (LEVEL_BITS * LEVELS)) - 1
+    }
+
+    private class Node<K>(val key: K) {
+        var deadline = 0L
+        var slot = -1
+        var prev: Node<K>? = null
+        var next: Node<K>? = null
+    }
+
+    private val nodes = HashMap<K, Node<K>>()
+    private val heads = arrayOfNulls<Node<K>>(LEVELS * SLOTS)
+
+    /** Last tick processed by [advance]; set from the first call. */
+    private var currentTick = Long.MIN_VALUE
+
+    val size: Int get() = nodes.size
+
+    /** Expire [key] at [deadline] (ms), or later if it is already due later. */
+    fun schedule(key: K, deadline: Long) {
+        if (currentTick == Long.MIN_VALUE) currentTick = deadline / tickMs - 1
+        val node = nodes[key]
+        if (node != null) {
+            if (deadline > node.deadline) node.deadline = deadline
+            return
+        }
+        val created = Node(key)
+        created.deadline = deadline
+        nodes[key] = created
+        file(created)
+    }
+
+    /** Forget [key] without reporting it. */
+    fun cancel(key: K) {
+        nodes.remove(key)?.let { unlink(it) }
+    }
+
+    /**
+     * Process every tick up to [now] and pass each key whose deadline is at
+     * or before [now] to [onExpire], which may call [schedule] or [cancel].
+     */
+    fun advance(now: Long, onExpire: (K) -> Unit) {
+        val target = now / tickMs
+        if (currentTick == Long.MIN_VALUE || nodes.isEmpty()) {
+            if (target > currentTick) currentTick = target
+            return
+        }
+        while (currentTick < target) {
+            currentTick++
+
+            // Cascade each level whose lower levels just wrapped
+            var level = 1
+            while (level < LEVELS && currentTick and ((1L shl (level * LEVEL_BITS)) - 1) == 0L) {
+                refile(level * SLOTS + ((currentTick ushr (level * LEVEL_BITS)) and SLOT_MASK).toInt())
+                level++
+            }
+
+            val slot = (currentTick and SLOT_MASK).toInt()
+            var node = heads[slot]
+            heads[slot] = null
+            val dueBy = currentTick * tickMs
+            while (node != null) {
+                val next = node.next
+                node.prev = null
+                node.next = null
+                node.slot = -1
+                if (node.deadline <= dueBy) {
+                    nodes.remove(node.key)
+                    onExpire(node.key)
+                } else {
+                    file(node)
+                }
+                node = next
+            }
+            if (nodes.isEmpty()) currentTick = target
+        }
+    }
+
+    fun clear() {
+        nodes.clear()
+        heads.fill(null)
+    }
+
+    // ---- Internals ------------------------------------------------------------------
+
+    private fun refile(slot: Int) {
+        var node = heads[slot]
+        heads[slot] = null
+        while (node != null) {
+            val next = node.next
+            node.prev = null
+            node.next = null
+            file(node)
+            node = next
+        }
+    }
+
+    private fun file(node: Node<K>) {
+        // First tick at which the deadline has passed, at least one tick ahead
+        val due = maxOf(Math.floorDiv(node.deadline + tickMs - 1, tickMs), currentTick + 1)
+        val delta = minOf(due - currentTick, MAX_DELTA_TICKS)
+        val tick = currentTick + delta
+        var level = 0
+        while (level < LEVELS - 1 && delta >= (1L shl ((level + 1) * LEVEL_BITS))) level++
+        val slot = level * SLOTS + ((tick ushr (level * LEVEL_BITS)) and SLOT_MASK).toInt()
+
+        node.slot = slot
+        node.prev = null
+        node.next = heads[slot]
+        heads[slot]?.prev = node
+        heads[slot] = node
+    }
+
+    private fun unlink(node: Node<K>) {
+        val prev = node.prev
+        val next = node.next
+        if (prev != null) prev.next = next else if (node.slot >= 0) heads[node.slot] = next
+        next?.prev = prev
+        node.prev = null
+        node.next = null
+        node.slot = -1
+    }
+}
@@ -0,0 +1,404 @@
+package com.example.follower.detection
+
+import com.example.follower.data.model.DeviceSighting
+import kotlin.math.sqrt
+
+/**
+ * Streaming per-device accumulators for incremental scoring.
+ *
+ * Instead of re-sorting and re-scanning the whole scoring window on every
+ * rescore, each new [DeviceSighting] is folded into running totals:
+ *
+ *  - exposure and streak segments (split by the streak gap threshold)
+ *  - nearest-centroid clusters in a [CentroidGrid], with first/last times
+ *  - reacquisition events and route-order transitions between clusters
+ *  - RSSI sum / sum of squares and user path length
+ *  - a sliding maximum of displacement, for the static penalty
+ *
+ * [append] is O(1) amortised through the grid.  [expireBefore] subtracts
+ * each expired sighting from the totals and from its cluster's sums in
+ * O(1).  [SuspicionCalculator.calculate] then reads a result in
+ * O(streaks + clusters).
+ *
+ * Sightings must be appended in timestamp order; [append] returns false for
+ * an out-of-order sighting so the caller can rebuild from storage.
+ *
+ * Agreement with the batch path: without expiry every factor's inputs are
+ * exactly what the batch path computes.  Expiry can't fully unwind
+ * nearest-centroid clustering — the batch path would re-seed a cluster from
+ * its oldest surviving sighting rather than the expired one — so clusters
+ * are kept while that new seed stays within [SEED_TOLERANCE_FRACTION] of
+ * the cluster threshold of the original seed, and the window is re-clustered
+ * from its head (O(n) through the grid) only when a cluster empties or its
+ * seed moves further.  In between, a sighting the batch path would assign
+ * under a slightly different centroid history can land in a neighbouring
+ * cluster, so the cluster-dependent inputs are bounded rather than exact:
+ * the distinct-location count within [LOCATION_TOLERANCE], the pattern
+ * factor within [PATTERN_TOLERANCE] and the score within [SCORE_TOLERANCE].
+ * Duration, RSSI and the static penalty stay exact.
+ */
+class IncrementalSuspicionState(
+    val streakGapMs: Long,
+    val clusterThresholdMeters: Float
+) {
+    companion object {
+        /** How far a cluster's seed may move under expiry, as a fraction of the threshold. */
+        const val SEED_TOLERANCE_FRACTION = 0.1f
+
+        /** Largest distinct-location difference from the batch path after expiry. */
+        const val LOCATION_TOLERANCE = 1
+
+        /** Largest pattern-factor difference from the batch path after expiry. */
+        const val PATTERN_TOLERANCE = 10f
+
+        /**
+         * Largest total-score difference from the batch path after expiry:
+         * one location's 10 points plus [PATTERN_TOLERANCE], scaled by the
+         * RSSI and correlation modifiers (at most 1.15 × 1.3).
+         */
+        const val SCORE_TOLERANCE = 30
+
+        /** Covers the fast distance kernel's departure from the triangle inequality. */
+        private const val DISPLACEMENT_SLACK_METERS = 1f
+
+        fun from(settings: SuspicionConfig) = IncrementalSuspicionState(
+            streakGapMs = settings.streakGapThresholdMinutes * 60_000L,
+            clusterThresholdMeters = settings.locationClusterThresholdMeters
+        )
+    }
+
+    private class Entry(
+        val timestamp: Long,
+        val latitude: Double,
+        val longitude: Double,
+        val rssi: Int
+    ) {
+        var clusterId = -1
+
+        /** Next younger sighting in the same cluster. */
+        var nextInCluster: Entry? = null
+
+        /** Distance from the previous entry in the window (0 for the head). */
+        var stepMeters = 0f
+
+        /** Distance from the displacement origin. */
+        var displacementMeters = 0f
+    }
+
+    private class Streak(var entryCount: Int, var lengthMs: Long)
+
+    private val entries = ArrayDeque<Entry>()
+    private val streaks = ArrayDeque<Streak>()
+
+    private val seedToleranceMeters = clusterThresholdMeters * SEED_TOLERANCE_FRACTION
+
+    // ---- Clusters -------------------------------------------------------------------
+
+    private var grid = CentroidGrid(clusterThresholdMeters)
+    private var clusterFirst = LongArray(16)
+    private var clusterLast = LongArray(16)
+    private var clusterTail = arrayOfNulls<Entry>(16)
+    private var seedLat = DoubleArray(16)
+    private var seedLon = DoubleArray(16)
+
+    /** Set when expiry emptied a cluster or moved its seed past the tolerance. */
+    private var clustersStale = false
+
+    private var reacquisitionCount = 0
+    private var transitionCount = 0
+    private var inOrderTransitionCount = 0
+
+    // ---- Running totals -------------------------------------------------------------
+
+    var totalExposureMs = 0L
+        private set
+
+    // Summed in double so that subtracting expired steps doesn't drift
+    private var pathLength = 0.0
+
+    val pathLengthMeters: Float get() = pathLength.toFloat()
+
+    // Integer sums are exact, so adding and removing sightings never drifts
+    private var rssiSum = 0L
+    private var rssiSumSquares = 0L
+
+    // Sliding maximum of displacement from an origin at or near the head:
+    // entries with strictly decreasing displacement, oldest first
+    private val displacementPeaks = ArrayDeque<Entry>()
+    private var originLat = 0.0
+    private var originLon = 0.0
+
+    val sightingCount: Int get() = entries.size
+
+    val distinctLocationCount: Int
+        get() {
+            ensureClusters()
+            return grid.size
+        }
+
+    val reacquisitions: Int
+        get() {
+            ensureClusters()
+            return reacquisitionCount
+        }
+
+    val transitions: Int
+        get() {
+            ensureClusters()
+            return transitionCount
+        }
+
+    val inOrderTransitions: Int
+        get() {
+            ensureClusters()
+            return inOrderTransitionCount
+        }
+
+    /** First-sighting time per cluster, in creation order. */
+    internal val clusterFirstTimestamps: LongArray
+        get() {
+            ensureClusters()
+            return clusterFirst
+        }
+
+    /** Last-sighting time per cluster, in the same order as [clusterFirstTimestamps]. */
+    internal val clusterLastTimestamps: LongArray
+        get() {
+            ensureClusters()
+            return clusterLast
+        }
+
+    val longestStreakMs: Long
+        get() {
+            var longest = 0L
+            for (s in streaks) if (s.lengthMs > longest) longest = s.lengthMs
+            return longest
+        }
+
+    val averageRssi: Float
+        get() = if (entries.isEmpty()) 0f else (rssiSum.toDouble() / entries.size).toFloat()
+
+    /** Population standard deviation of RSSI over the window. */
+    val rssiStdDev: Float
+        get() {
+            if (entries.isEmpty()) return 0f
+            val n = entries.size
+            val mean = rssiSum.toDouble() / n
+            val variance = rssiSumSquares.toDouble() / n - mean * mean
+            return sqrt(variance.coerceAtLeast(0.0)).toFloat()
+        }
+
+    /** True if these accumulators were built with the current [settings]. */
+    fun matches(settings: SuspicionConfig): Boolean =
+        streakGapMs == settings.streakGapThresholdMinutes * 60_000L &&
+            clusterThresholdMeters == settings.locationClusterThresholdMeters
+
+    // ---- Updates --------------------------------------------------------------------
+
+    /**
+     * Fold a new sighting into the accumulators.
+     *
+     * @return false if [sighting] is older than the newest sighting already
+     *         appended; the state is left unchanged in that case.
+     */
+    fun append(sighting: DeviceSighting): Boolean =
+        append(sighting.timestamp, sighting.latitude, sighting.longitude, sighting.rssi)
+
+    /** [append] for a sighting held column-wise, e.g. one row of a [SightingWindow]. */
+    fun append(timestamp: Long, lat: Double, lon: Double, rssi: Int): Boolean {
+        val prev = entries.lastOrNull()
+        if (prev != null && timestamp < prev.timestamp) return false
+        ensureClusters()
+
+        val entry = Entry(timestamp, lat, lon, rssi)
+        assignCluster(entry)
+
+        if (prev == null) {
+            streaks.addLast(Streak(1, 0L))
+            originLat = lat
+            originLon = lon
+        } else {
+            val gap = timestamp - prev.timestamp
+            if (gap in 1..streakGapMs) {
+                totalExposureMs += gap
+                val current = streaks.last()
+                current.entryCount++
+                current.lengthMs += gap
+            } else {
+                streaks.addLast(Streak(1, 0L))
+            }
+            countTransition(prev, entry, 1)
+            entry.stepMeters = distanceMeters(prev.latitude, prev.longitude, lat, lon)
+            pathLength += entry.stepMeters
+        }
+
+        val r = rssi.toLong()
+        rssiSum += r
+        rssiSumSquares += r * r
+
+        entries.addLast(entry)
+        addDisplacementPeak(entry)
+        return true
+    }
+
+    /** Slide the window: drop every sighting with a timestamp before [cutoff]. */
+    fun expireBefore(cutoff: Long) {
+        while (entries.isNotEmpty() && entries.first().timestamp < cutoff) {
+            removeHead()
+        }
+    }
+
+    private fun removeHead() {
+        val head = entries.removeFirst()
+        val next = entries.firstOrNull()
+
+        // Streaks / exposure
+        val streak = streaks.first()
+        if (streak.entryCount == 1) {
+            streaks.removeFirst()
+        } else if (next != null) {
+            val gap = next.timestamp - head.timestamp
+            streak.entryCount--
+            streak.lengthMs -= gap
+            totalExposureMs -= gap
+        }
+
+        if (next != null) {
+            countTransition(head, next, -1)
+            pathLength -= next.stepMeters
+            next.stepMeters = 0f
+        } else {
+            pathLength = 0.0
+        }
+
+        val r = head.rssi.toLong()
+        rssiSum -= r
+        rssiSumSquares -= r * r
+
+        if (displacementPeaks.firstOrNull() === head) displacementPeaks.removeFirst()
+
+        if (!clustersStale) removeFromCluster(head)
+    }
+
+    /**
+     * Whether any sighting lies more than [meters] from the first one in the
+     * window.  Displacements are held against an origin that stays put while
+     * the head expires, which puts them within the origin's distance from
+     * the head of the true value; only an answer inside that band re-measures
+     * the window from the head, O(n).
+     */
+    fun displacedBeyond(meters: Float): Boolean {
+        val head = entries.firstOrNull() ?: return false
+        val max = displacementPeaks.first().displacementMeters
+        val error = distanceMeters(originLat, originLon, head.latitude, head.longitude) +
+            DISPLACEMENT_SLACK_METERS
+        if (max - error > meters) return true
+        if (max + error <= meters) return false
+
+        originLat = head.latitude
+        originLon = head.longitude
+        displacementPeaks.clear()
+        for (e in entries) addDisplacementPeak(e)
+        return displacementPeaks.first().displacementMeters > meters
+    }
+
+    // ---- Internals ------------------------------------------------------------------
+
+    private fun addDisplacementPeak(entry: Entry) {
+        entry.displacementMeters =
+            distanceMeters(originLat, originLon, entry.latitude, entry.longitude)
+        while (displacementPeaks.isNotEmpty() &&
+            displacementPeaks.last().displacementMeters <= entry.displacementMeters
+        ) {
+            displacementPeaks.removeLast()
+        }
+        displacementPeaks.addLast(entry)
+    }
+
+    /**
+     * Take an expired head out of its cluster.  Its successor in the cluster
+     * becomes the cluster's first sighting, and the seed the batch path
+     * would start from; if there is none, or it lies beyond the tolerance of
+     * the seed the cluster was built from, the window is re-clustered.
+     */
+    private fun removeFromCluster(head: Entry) {
+        val id = head.clusterId
+        grid.removeFrom(id, head.latitude, head.longitude)
+        val successor = head.nextInCluster
+        if (successor == null ||
+            distanceMeters(seedLat[id], seedLon[id], successor.latitude, successor.longitude) >
+            seedToleranceMeters
+        ) {
+            clustersStale = true
+        } else {
+            clusterFirst[id] = successor.timestamp
+        }
+    }
+
+    /**
+     * Re-cluster the window from its current head if expiry invalidated the
+     * clusters.  Path length is re-summed in window order too, so it carries
+     * no subtraction drift.
+     */
+    private fun ensureClusters() {
+        if (!clustersStale) return
+        clustersStale = false
+        grid = CentroidGrid(clusterThresholdMeters)
+        clusterTail.fill(null)
+        reacquisitionCount = 0
+        transitionCount = 0
+        inOrderTransitionCount = 0
+        pathLength = 0.0
+
+        var prev: Entry? = null
+        for (e in entries) {
+            e.nextInCluster = null
+            assignCluster(e)
+            if (prev != null) countTransition(prev, e, 1)
+            pathLength += e.stepMeters
+            prev = e
+        }
+    }
+
+    /** Nearest-centroid assignment with running-sum centroid update. */
+    private fun assignCluster(entry: Entry) {
+        val lat = entry.latitude
+        val lon = entry.longitude
+        val nearest = grid.nearestWithin(lat, lon)
+        val id = if (nearest >= 0) {
+            grid.addTo(nearest, lat, lon)
+            clusterTail[nearest]!!.nextInCluster = entry
+            nearest
+        } else {
+            grid.add(lat, lon).also { created ->
+                if (created == clusterFirst.size) {
+                    val capacity = created * 2
+                    clusterFirst = clusterFirst.copyOf(capacity)
+                    clusterLast = clusterLast.copyOf(capacity)
+                    clusterTail = clusterTail.copyOf(capacity)
+                    seedLat = seedLat.copyOf(capacity)
+                    seedLon = seedLon.copyOf(capacity)
+                }
+                clusterFirst[created] = entry.timestamp
+                seedLat[created] = lat
+                seedLon[created] = lon
+            }
+        }
+        clusterLast[id] = entry.timestamp
+        clusterTail[id] = entry
+        entry.clusterId = id
+    }
+
+    /**
+     * Reacquisition and route-order bookkeeping for the step [prev] → [next],
+     * added with [sign] 1 and taken back out with -1.
+     */
+    private fun countTransition(prev: Entry, next: Entry, sign: Int) {
+        val gap = next.timestamp - prev.timestamp
+        if (gap > streakGapMs && prev.clusterId != next.clusterId) reacquisitionCount += sign
+        if (prev.clusterId != next.clusterId) {
+            transitionCount += sign
+            if (next.clusterId > prev.clusterId) inOrderTransitionCount += sign
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package com.example.follower.detection
 
-import android.util.Log
 import com.example.follower.data.model.ScanResult
 
 /**
@@ -62,7 +61,7 @@ class KnownTrackerDetector {
         result.manufacturerData?.let { data ->
             val match = matchManufacturerData(data)
             if (match != null) {
-                Log.i(TAG, "Known tracker detected: ${match.trackerType} " +
+                DetectionLog.i(TAG, "Known tracker detected: ${match.trackerType} " +
                     "(${result.macAddress}, confidence=${match.confidence})")
                 return match
             }
@@ -72,7 +71,7 @@ class KnownTrackerDetector {
         result.serviceUuids?.let { uuids ->
             val match = matchServiceUuids(uuids)
             if (match != null) {
-                Log.i(TAG, "Known tracker by UUID: ${match.trackerType} " +
+                DetectionLog.i(TAG, "Known tracker by UUID: ${match.trackerType} " +
                     "(${result.macAddress}, confidence=${match.confidence})")
                 return match
             }
@@ -81,6 +80,14 @@ class KnownTrackerDetector {
         return null
     }
 
+    /**
+     * Cheap, log-free signature check used to prioritise results in the
+     * scanner ingest queue before they reach [detect].
+     */
+    fun hasTrackerSignature(result: ScanResult): Boolean =
+        result.manufacturerData?.let { matchManufacturerData(it) } != null ||
+            result.serviceUuids?.let { matchServiceUuids(it) } != null
+
     private fun matchManufacturerData(data: ByteArray): TrackerMatch? {
         if (data.size < 2) return null
 
@@ -0,0 +1,95 @@
+package com.example.follower.detection
+
+import com.example.follower.data.model.SightingRollup
+
+data class LongHorizonResult(
+    val score: Int,
+    /** UTC days with at least one sighting. */
+    val activeDays: Int,
+    val distinctLocationCount: Int,
+    /** Days on which the device was seen at two or more distinct locations. */
+    val multiLocationDays: Int,
+    val sightingCount: Int,
+    val firstTimestamp: Long,
+    val lastTimestamp: Long
+)
+
+/**
+ * Scores multi-day following from [SightingRollup]s, the pattern the 6 h
+ * [SuspicionCalculator] window cannot see: the same device turning up on
+ * several days, at several of the places the user went.
+ *
+ * Score breakdown (0-100):
+ *   Recurrence:        0-40 pts  (10 per active day beyond the first)
+ *   Location spread:   0-30 pts  (5 per distinct location beyond the first)
+ *   Moving days:       0-30 pts  (10 per day seen at two or more locations)
+ *
+ * A device seen on a single day scores 0; that case belongs to the short
+ * window.  Rollup centroids are clustered with the same [CentroidGrid] and
+ * threshold as sightings, one member per rollup, and rollups of mixed
+ * resolution may be passed together.  O(rollups).
+ */
+class LongHorizonScorer(private val settings: SuspicionConfig) {
+
+    companion object {
+        private const val DAY_MS = 24 * 60 * 60 * 1000L
+
+        /** Marks a day on which more than one cluster was seen. */
+        private const val MULTIPLE = -1
+    }
+
+    fun score(rollups: List<SightingRollup>): LongHorizonResult {
+        val grid = CentroidGrid(settings.locationClusterThresholdMeters)
+
+        // Per day: the first cluster seen, or MULTIPLE once a second one shows up
+        val dayClusters = HashMap<Long, Int>()
+        var sightingCount = 0
+        var firstTimestamp = Long.MAX_VALUE
+        var lastTimestamp = Long.MIN_VALUE
+
+        for (r in rollups) {
+            val lat = r.centroidLatitude
+            val lon = r.centroidLongitude
+            val nearest = grid.nearestWithin(lat, lon)
+            val id = if (nearest >= 0) {
+                grid.addTo(nearest, lat, lon)
+                nearest
+            } else {
+                grid.add(lat, lon)
+            }
+
+            val day = r.bucketStart / DAY_MS
+            val seen = dayClusters[day]
+            if (seen == null) {
+                dayClusters[day] = id
+            } else if (seen != id) {
+                dayClusters[day] = MULTIPLE
+            }
+
+            sightingCount += r.sightingCount
+            firstTimestamp = minOf(firstTimestamp, r.firstTimestamp)
+            lastTimestamp = maxOf(lastTimestamp, r.lastTimestamp)
+        }
+
+        val activeDays = dayClusters.size
+        val distinct = grid.size
+        val multiLocationDays = dayClusters.values.count { it == MULTIPLE }
+
+        val score = if (activeDays < 2) 0f else {
+            val recurrence = ((activeDays - 1) * 10f).coerceAtMost(40f)
+            val spread = ((distinct - 1) * 5f).coerceIn(0f, 30f)
+            val moving = (multiLocationDays * 10f).coerceAtMost(30f)
+            recurrence + spread + moving
+        }
+
+        return LongHorizonResult(
+            score = score.toInt().coerceIn(0, 100),
+            activeDays = activeDays,
+            distinctLocationCount = distinct,
+            multiLocationDays = multiLocationDays,
+            sightingCount = sightingCount,
+            firstTimestamp = if (rollups.isEmpty()) 0L else firstTimestamp,
+            lastTimestamp = if (rollups.isEmpty()) 0L else lastTimestamp
+        )
+    }
+}
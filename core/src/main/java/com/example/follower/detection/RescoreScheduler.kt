@@ -0,0 +1,233 @@
+package com.example.follower.detection
+
+import kotlin.math.abs
+
+/**
+ * Decides which devices get rescored, and when.
+ *
+ * The ingest path only marks a device dirty ([markDirty]); a periodic tick
+ * takes up to a budget of due devices ([pollDue]) and scores them off the
+ * ingest path.  Each dirty device waits in a min-heap keyed by a deadline:
+ *
+ * ```
+ * deadline = lastScoredAt + minInterval × (1 + (MAX_BACKOFF − 1) × (1 − urgency))
+ * ```
+ *
+ * so an urgent device is rescored as soon as the old fixed throttle would
+ * have allowed, and noise waits up to [MAX_BACKOFF] times longer.  Devices
+ * never scored before are due immediately.  Urgency (0-1) is the strongest of:
+ *  - **threshold proximity** — last score within [PROXIMITY_BAND] points of
+ *    the low or high threshold, where the next score may flip the level;
+ *  - **score velocity** — how fast the score moved between the last two
+ *    scorings, relative to [VELOCITY_SCALE] points per minute;
+ *  - **tracker hint** — confidence of a known-tracker match too weak for
+ *    the immediate alert path.
+ *
+ * Because the deadline is fixed when a device is queued, the heap never
+ * needs re-keying as time passes, and a low-urgency device is delayed, not
+ * starved.  All methods are synchronised; callers are engine shards and the
+ * tick loop.
+ */
+class RescoreScheduler(private val config: SuspicionConfig) {
+
+    companion object {
+        /** A device with zero urgency waits this many minimum intervals. */
+        const val MAX_BACKOFF = 8
+
+        /** Score distance to a threshold below which proximity urgency starts. */
+        const val PROXIMITY_BAND = 15f
+
+        /** Score change per minute that counts as full velocity urgency. */
+        const val VELOCITY_SCALE = 2f
+
+        private const val INITIAL_CAPACITY = 64
+    }
+
+    /** Snapshot for dashboards and logs. */
+    data class Metrics(
+        /** Devices waiting to be rescored. */
+        val queueDepth: Int,
+        /** Budget the last tick was given. */
+        val lastTickBudget: Int,
+        /** Devices the last tick actually took. */
+        val lastTickScored: Int,
+        /** How far the most overdue device still queued after the last tick was past its deadline. */
+        val lastTickLagMs: Long,
+        val ticks: Long,
+        val totalScored: Long
+    )
+
+    private class Profile {
+        var lastScore = 0
+        var lastScoredAt = 0L
+        var previousScore = 0
+        var previousScoredAt = 0L
+        var scored = false
+        var trackerHint = 0f
+        var heapIndex = -1
+    }
+
+    private val profiles = HashMap<String, Profile>()
+
+    // Binary min-heap on deadline; profiles carry their heap index
+    private var heapIds = arrayOfNulls<String>(INITIAL_CAPACITY)
+    private var heapDeadlines = LongArray(INITIAL_CAPACITY)
+    private var heapSize = 0
+
+    private var lastTickBudget = 0
+    private var lastTickScored = 0
+    private var lastTickLagMs = 0L
+    private var ticks = 0L
+    private var totalScored = 0L
+
+    /**
+     * Note new evidence for [id] at [now].  [trackerHint] is the confidence
+     * of a sub-threshold known-tracker match, or 0.
+     */
+    @Synchronized
+    fun markDirty(id: String, now: Long, minIntervalMs: Long, trackerHint: Float = 0f) {
+        val profile = profiles.getOrPut(id) { Profile() }
+        profile.trackerHint = maxOf(profile.trackerHint, trackerHint)
+
+        val deadline = if (!profile.scored) now else {
+            val backoff = 1f + (MAX_BACKOFF - 1) * (1f - urgency(profile))
+            profile.lastScoredAt + (minIntervalMs * backoff).toLong()
+        }
+
+        val index = profile.heapIndex
+        if (index < 0) {
+            push(id, deadline, profile)
+        } else if (deadline < heapDeadlines[index]) {
+            heapDeadlines[index] = deadline
+            siftUp(index)
+        }
+    }
+
+    /** Remove and return up to [budget] device ids whose deadline is at or before [now], most overdue first. */
+    @Synchronized
+    fun pollDue(now: Long, budget: Int): List<String> {
+        val due = ArrayList<String>(minOf(budget, heapSize))
+        while (due.size < budget && heapSize > 0 && heapDeadlines[0] <= now) {
+            due.add(pop())
+        }
+        ticks++
+        lastTickBudget = budget
+        lastTickScored = due.size
+        lastTickLagMs = if (heapSize > 0 && heapDeadlines[0] <= now) now - heapDeadlines[0] else 0L
+        totalScored += due.size
+        return due
+    }
+
+    /** Record the outcome of scoring [id]; [score] is the one alert decisions use. */
+    @Synchronized
+    fun onScored(id: String, score: Int, now: Long) {
+        val profile = profiles.getOrPut(id) { Profile() }
+        profile.previousScore = profile.lastScore
+        profile.previousScoredAt = profile.lastScoredAt
+        profile.lastScore = score
+        profile.lastScoredAt = now
+        profile.scored = true
+        profile.trackerHint = 0f
+    }
+
+    @Synchronized
+    fun isTracked(id: String): Boolean = id in profiles
+
+    /** Forget devices neither queued nor scored since [cutoff]. */
+    @Synchronized
+    fun prune(cutoff: Long) {
+        profiles.entries.removeAll { (_, p) -> p.heapIndex < 0 && p.lastScoredAt < cutoff }
+    }
+
+    @Synchronized
+    fun metrics(): Metrics = Metrics(
+        queueDepth = heapSize,
+        lastTickBudget = lastTickBudget,
+        lastTickScored = lastTickScored,
+        lastTickLagMs = lastTickLagMs,
+        ticks = ticks,
+        totalScored = totalScored
+    )
+
+    // ---- Urgency --------------------------------------------------------------------
+
+    private fun urgency(p: Profile): Float {
+        val toThreshold = minOf(
+            abs(p.lastScore - config.lowThreshold),
+            abs(p.lastScore - config.highThreshold)
+        )
+        val proximity = 1f - (toThreshold / PROXIMITY_BAND).coerceAtMost(1f)
+
+        val velocity = if (p.previousScoredAt == 0L || p.lastScoredAt <= p.previousScoredAt) 0f else {
+            val minutes = (p.lastScoredAt - p.previousScoredAt) / 60_000f
+            (abs(p.lastScore - p.previousScore) / minutes / VELOCITY_SCALE).coerceAtMost(1f)
+        }
+
+        return maxOf(proximity, velocity, p.trackerHint.coerceIn(0f, 1f))
+    }
+
+    // ---- Heap -----------------------------------------------------------------------
+
+    private fun push(id: String, deadline: Long, profile: Profile) {
+        if (heapSize == heapIds.size) {
+            heapIds = heapIds.copyOf(heapSize * 2)
+            heapDeadlines = heapDeadlines.copyOf(heapSize * 2)
+        }
+        heapIds[heapSize] = id
+        heapDeadlines[heapSize] = deadline
+        profile.heapIndex = heapSize
+        siftUp(heapSize++)
+    }
+
+    private fun pop(): String {
+        val id = heapIds[0]!!
+        profiles[id]?.heapIndex = -1
+        heapSize--
+        if (heapSize > 0) {
+            move(heapSize, 0)
+            siftDown(0)
+        }
+        heapIds[heapSize] = null
+        return id
+    }
+
+    private fun siftUp(start: Int) {
+        var i = start
+        while (i > 0) {
+            val parent = (i - 1) / 2
+            if (heapDeadlines[parent] <= heapDeadlines[i]) break
+            swap(i, parent)
+            i = parent
+        }
+    }
+
+    private fun siftDown(start: Int) {
+        var i = start
+        while (true) {
+            val left = 2 * i + 1
+            if (left >= heapSize) break
+            val right = left + 1
+            val child = if (right < heapSize && heapDeadlines[right] < heapDeadlines[left]) right else left
+            if (heapDeadlines[i] <= heapDeadlines[child]) break
+            swap(i, child)
+            i = child
+        }
+    }
+
+    private fun move(from: Int, to: Int) {
+        heapIds[to] = heapIds[from]
+        heapDeadlines[to] = heapDeadlines[from]
+        profiles[heapIds[to]!!]?.heapIndex = to
+    }
+
+    private fun swap(a: Int, b: Int) {
+        val id = heapIds[a]
+        val deadline = heapDeadlines[a]
+        heapIds[a] = heapIds[b]
+        heapDeadlines[a] = heapDeadlines[b]
+        heapIds[b] = id
+        heapDeadlines[b] = deadline
+        profiles[heapIds[a]!!]?.heapIndex = a
+        profiles[heapIds[b]!!]?.heapIndex = b
+    }
+}
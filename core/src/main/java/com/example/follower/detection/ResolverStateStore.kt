@@ -0,0 +1,464 @@
+package com.example.follower.detection
+
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.zip.CRC32
+import java.util.zip.CheckedInputStream
+
+/**
+ * Crash-safe on-disk state for [DeviceIdentityResolver]: a versioned binary
+ * snapshot plus an append-only delta log, both in [dir].
+ *
+ * ```
+ * snapshot := MAGIC_SNAPSHOT VERSION idBound:varint count:varint entry* crc32:i32
+ * log      := MAGIC_LOG VERSION record*
+ * record   := length:i32 payload crc32(payload):i32
+ * payload  := TAG_MAPPING entry | TAG_RESERVE idBound:varint
+ * entry    := mac id
+ * mac      := 0 + 6 raw bytes | 1 + UTF string
+ * id       := ID_COUNTER n:varint           ("ble_<n>")
+ *           | ID_FINGERPRINT hi:i64 lo:i64  ("ble_fp_<32 hex>")
+ *           | ID_STRING UTF
+ * ```
+ *
+ * Loading replays the log over the snapshot and stops at the first torn or
+ * corrupt record, truncating it away so later appends stay readable.
+ * Mappings are buffered and reach the file at most [FLUSH_INTERVAL_MS]
+ * after being appended (a lost mapping only costs history, the fingerprint
+ * path re-derives the same ID); counter reservations are synced before
+ * [reserve] returns, so an ID is never handed out twice across a crash.
+ * If the snapshot or the log header is unreadable, reservations may have
+ * been lost with it, so the counter restarts from the current time in
+ * milliseconds, above any value a slower-than-1-per-ms counter reached.
+ * [compact] writes a fresh snapshot beside the old one, renames it into
+ * place, syncs the directory and then resets the log.
+ *
+ * IO errors are logged and degrade the resolver to memory-only; they never
+ * reach the scan path.  Not thread-safe; the resolver's lock covers it.
+ */
+class ResolverStateStore(private val dir: File, private val clock: Clock = Clock.SYSTEM) {
+
+    companion object {
+        private const val TAG = "ResolverStateStore"
+
+        const val SNAPSHOT_FILE = "resolver.snap"
+        const val LOG_FILE = "resolver.log"
+
+        const val VERSION = 1
+        const val FLUSH_INTERVAL_MS = 1_000L
+
+        private val MAGIC_SNAPSHOT = byteArrayOf('F'.code.toByte(), 'R'.code.toByte(), 'S'.code.toByte(), 'S'.code.toByte())
+        private val MAGIC_LOG = byteArrayOf('F'.code.toByte(), 'R'.code.toByte(), 'S'.code.toByte(), 'L'.code.toByte())
+        private const val HEADER_BYTES = 5
+
+        private const val TAG_MAPPING = 1
+        private const val TAG_RESERVE = 2
+
+        private const val MAC_BYTES = 0
+        private const val MAC_STRING = 1
+
+        private const val ID_COUNTER = 0
+        private const val ID_FINGERPRINT = 1
+        private const val ID_STRING = 2
+
+        private const val COUNTER_PREFIX = "ble_"
+        private const val FINGERPRINT_PREFIX = "ble_fp_"
+
+        private const val MAX_RECORD_BYTES = 4096
+
+        /** Smallest encoded entry: an empty MAC string (3 bytes) and a one-byte counter ID (2). */
+        private const val MIN_ENTRY_BYTES = 5
+
+        fun counterId(n: Long): String = COUNTER_PREFIX + n
+
+        /** The stable ID for a 128-bit [AdvertisingFingerprint]. */
+        fun fingerprintId(hi: Long, lo: Long): String =
+            FINGERPRINT_PREFIX + hex64(hi) + hex64(lo)
+
+        private fun hex64(value: Long): String = java.lang.Long.toHexString(value).padStart(16, '0')
+    }
+
+    /** What [load] found on disk. */
+    class Loaded(val idBound: Long, val mappings: Int, val logRecords: Int)
+
+    private val snapshotFile = File(dir, SNAPSHOT_FILE)
+    private val logFile = File(dir, LOG_FILE)
+
+    private var log: FileOutputStream? = null
+    private var logOut: DataOutputStream? = null
+    private var lastFlush = 0L
+    private var failed = false
+
+    /** Records appended since the last [compact]. */
+    var logRecords = 0
+        private set
+
+    private val record = ByteArrayOutputStream(64)
+    private val recordOut = DataOutputStream(record)
+    private val crc = CRC32()
+
+    // ---- Loading --------------------------------------------------------------------
+
+    /**
+     * Read the snapshot and replay the log, passing every MAC → ID mapping
+     * to [onMapping] in order (later ones win), and open the log for
+     * appending.  Returns the smallest counter value not yet reserved.
+     */
+    fun load(onMapping: (mac: String, stableId: String) -> Unit): Loaded {
+        var idBound = 1L
+        var mappings = 0
+        var damaged = false
+        try {
+            dir.mkdirs()
+            if (snapshotFile.exists()) {
+                val (bound, count) = readSnapshot(onMapping)
+                idBound = bound
+                mappings = count
+            }
+        } catch (e: IOException) {
+            DetectionLog.i(TAG, "Ignoring unreadable resolver snapshot: ${e.message}")
+            damaged = true
+        }
+
+        var replayed = 0
+        try {
+            if (logFile.exists()) {
+                val (bound, count, goodLength) = replayLog(onMapping)
+                if (goodLength == 0L && logFile.length() > 0L) damaged = true
+                idBound = maxOf(idBound, bound)
+                replayed = count
+                mappings += count
+                if (goodLength < logFile.length()) {
+                    DetectionLog.i(TAG, "Truncating torn resolver log at $goodLength bytes")
+                    RandomAccessFile(logFile, "rw").use { it.setLength(goodLength) }
+                }
+            }
+            openLog(append = logFile.length() >= HEADER_BYTES)
+        } catch (e: IOException) {
+            fail("open resolver log", e)
+        }
+
+        if (damaged) idBound = maxOf(idBound, clock.now())
+        logRecords = replayed
+        return Loaded(idBound, mappings, replayed)
+    }
+
+    private fun readSnapshot(onMapping: (String, String) -> Unit): Pair<Long, Int> {
+        val checked = CheckedInputStream(BufferedInputStream(FileInputStream(snapshotFile)), CRC32())
+        DataInputStream(checked).use { input ->
+            readHeader(input, MAGIC_SNAPSHOT)
+            val bound = readVarLong(input)
+            val count = readVarLong(input)
+            if (count < 0 || count > snapshotFile.length() / MIN_ENTRY_BYTES) {
+                throw IOException("Snapshot mapping count $count out of range")
+            }
+            // Collect first so a bad checksum applies nothing
+            val macs = arrayOfNulls<String>(count.toInt())
+            val ids = arrayOfNulls<String>(count.toInt())
+            for (i in macs.indices) {
+                macs[i] = readMac(input)
+                ids[i] = readId(input)
+            }
+            val expected = checked.checksum.value.toInt()
+            if (input.readInt() != expected) throw IOException("Snapshot checksum mismatch")
+            for (i in macs.indices) onMapping(macs[i]!!, ids[i]!!)
+            return bound to macs.size
+        }
+    }
+
+    private data class Replay(val idBound: Long, val mappings: Int, val goodLength: Long)
+
+    private fun replayLog(onMapping: (String, String) -> Unit): Replay {
+        var bound = 1L
+        var count = 0
+        var good = 0L
+        DataInputStream(BufferedInputStream(FileInputStream(logFile))).use { input ->
+            try {
+                readHeader(input, MAGIC_LOG)
+            } catch (e: IOException) {
+                return Replay(bound, 0, 0L)
+            }
+            good = HEADER_BYTES.toLong()
+            val buffer = ByteArray(MAX_RECORD_BYTES)
+            while (true) {
+                val length = try {
+                    input.readInt()
+                } catch (e: EOFException) {
+                    break
+                }
+                if (length <= 0 || length > MAX_RECORD_BYTES) break
+                try {
+                    input.readFully(buffer, 0, length)
+                    crc.reset()
+                    crc.update(buffer, 0, length)
+                    if (input.readInt() != crc.value.toInt()) break
+                } catch (e: EOFException) {
+                    break
+                }
+
+                val payload = DataInputStream(buffer.inputStream(0, length))
+                when (payload.readUnsignedByte()) {
+                    TAG_MAPPING -> {
+                        onMapping(readMac(payload), readId(payload))
+                        count++
+                    }
+                    TAG_RESERVE -> bound = maxOf(bound, readVarLong(payload))
+                    else -> break
+                }
+                good += 4 + length + 4
+            }
+        }
+        return Replay(bound, count, good)
+    }
+
+    // ---- Appending ------------------------------------------------------------------
+
+    /** Log a new MAC → ID mapping; buffered, see the class comment. */
+    fun appendMapping(mac: String, stableId: String) {
+        val out = logOut ?: return
+        beginRecord(TAG_MAPPING)
+        writeMac(recordOut, mac)
+        writeId(recordOut, stableId)
+        try {
+            endRecord(out)
+            val now = clock.now()
+            if (now - lastFlush >= FLUSH_INTERVAL_MS) {
+                out.flush()
+                lastFlush = now
+            }
+        } catch (e: IOException) {
+            fail("append to resolver log", e)
+        }
+    }
+
+    /** Durably record that counter IDs below [idBound] may be in use. */
+    fun reserve(idBound: Long) {
+        val out = logOut ?: return
+        beginRecord(TAG_RESERVE)
+        writeVarLong(recordOut, idBound)
+        try {
+            endRecord(out)
+            out.flush()
+            log?.fd?.sync()
+        } catch (e: IOException) {
+            fail("reserve resolver ids", e)
+        }
+    }
+
+    /** Push buffered records to the file. */
+    fun flush() {
+        try {
+            logOut?.flush()
+            lastFlush = clock.now()
+        } catch (e: IOException) {
+            fail("flush resolver log", e)
+        }
+    }
+
+    // ---- Compaction -----------------------------------------------------------------
+
+    /**
+     * Replace the snapshot with the [count] mappings [forEachMapping] emits
+     * and [idBound], then reset the log.  A crash in between leaves the old
+     * log on top of the new snapshot, which replays to the same state.
+     */
+    fun compact(
+        idBound: Long,
+        count: Int,
+        forEachMapping: (emit: (mac: String, stableId: String) -> Unit) -> Unit
+    ) {
+        if (failed) return
+        val tmp = File(dir, "$SNAPSHOT_FILE.tmp")
+        try {
+            val crc = CRC32()
+            FileOutputStream(tmp).use { file ->
+                val out = DataOutputStream(BufferedOutputStream(java.util.zip.CheckedOutputStream(file, crc)))
+                out.write(MAGIC_SNAPSHOT)
+                out.writeByte(VERSION)
+                writeVarLong(out, idBound)
+                writeVarLong(out, count.toLong())
+                var written = 0
+                forEachMapping { mac, id ->
+                    writeMac(out, mac)
+                    writeId(out, id)
+                    written++
+                }
+                if (written != count) throw IOException("Expected $count mappings, got $written")
+                out.flush()
+                DataOutputStream(file).writeInt(crc.value.toInt())
+                file.fd.sync()
+            }
+            if (!tmp.renameTo(snapshotFile)) throw IOException("Could not replace ${snapshotFile.path}")
+            syncDirectory()
+
+            logOut?.close()
+            openLog(append = false)
+            logRecords = 0
+        } catch (e: IOException) {
+            tmp.delete()
+            fail("compact resolver state", e)
+        }
+    }
+
+    fun close() {
+        try {
+            logOut?.close()
+        } catch (e: IOException) {
+            DetectionLog.i(TAG, "Closing resolver log failed: ${e.message}")
+        }
+        logOut = null
+        log = null
+    }
+
+    // ---- Internals ------------------------------------------------------------------
+
+    private fun openLog(append: Boolean) {
+        val file = FileOutputStream(logFile, append)
+        log = file
+        logOut = DataOutputStream(BufferedOutputStream(file)).also { out ->
+            if (!append) {
+                out.write(MAGIC_LOG)
+                out.writeByte(VERSION)
+                out.flush()
+                file.fd.sync()
+            }
+        }
+    }
+
+    /** Make the snapshot rename durable before the log it supersedes is reset. */
+    private fun syncDirectory() {
+        FileChannel.open(dir.toPath(), StandardOpenOption.READ).use { it.force(true) }
+    }
+
+    private fun fail(what: String, e: IOException) {
+        DetectionLog.i(TAG, "Could not $what, continuing in memory only: ${e.message}")
+        failed = true
+        try {
+            logOut?.close()
+        } catch (ignored: IOException) {
+        }
+        logOut = null
+        log = null
+    }
+
+    private fun beginRecord(tag: Int) {
+        record.reset()
+        recordOut.writeByte(tag)
+    }
+
+    private fun endRecord(out: DataOutputStream) {
+        val bytes = record.toByteArray()
+        crc.reset()
+        crc.update(bytes)
+        out.writeInt(bytes.size)
+        out.write(bytes)
+        out.writeInt(crc.value.toInt())
+        logRecords++
+    }
+
+    private fun readHeader(input: DataInputStream, magic: ByteArray) {
+        val found = ByteArray(magic.size)
+        input.readFully(found)
+        if (!found.contentEquals(magic)) throw IOException("Bad magic")
+        val version = input.readUnsignedByte()
+        if (version != VERSION) throw IOException("Unsupported resolver state version $version")
+    }
+
+    private fun writeMac(out: DataOutputStream, mac: String) {
+        if (mac.length == 17 && isCanonicalMac(mac)) {
+            out.writeByte(MAC_BYTES)
+            for (i in 0 until 6) {
+                out.writeByte((Character.digit(mac[i * 3], 16) shl 4) or Character.digit(mac[i * 3 + 1], 16))
+            }
+        } else {
+            out.writeByte(MAC_STRING)
+            out.writeUTF(mac)
+        }
+    }
+
+    private fun readMac(input: DataInputStream): String {
+        if (input.readUnsignedByte() == MAC_STRING) return input.readUTF()
+        val hex = "0123456789ABCDEF"
+        val chars = CharArray(17)
+        for (i in 0 until 6) {
+            val v = input.readUnsignedByte()
+            chars[i * 3] = hex[v ushr 4]
+            chars[i * 3 + 1] = hex[v and 0x0F]
+            if (i < 5) chars[i * 3 + 2] = ':'
+        }
+        return String(chars)
+    }
+
+    /** Upper-case `AA:BB:CC:DD:EE:FF`, the only shape that round-trips through 6 bytes. */
+    private fun isCanonicalMac(mac: String): Boolean {
+        for (i in mac.indices) {
+            val c = mac[i]
+            val ok = if (i % 3 == 2) c == ':' else (c in '0'..'9' || c in 'A'..'F')
+            if (!ok) return false
+        }
+        return true
+    }
+
+    private fun writeId(out: DataOutputStream, id: String) {
+        if (id.startsWith(FINGERPRINT_PREFIX) && id.length == FINGERPRINT_PREFIX.length + 32) {
+            val mid = FINGERPRINT_PREFIX.length + 16
+            val hi = id.substring(FINGERPRINT_PREFIX.length, mid).toULongOrNull(16)
+            val lo = id.substring(mid).toULongOrNull(16)
+            if (hi != null && lo != null && fingerprintId(hi.toLong(), lo.toLong()) == id) {
+                out.writeByte(ID_FINGERPRINT)
+                out.writeLong(hi.toLong())
+                out.writeLong(lo.toLong())
+                return
+            }
+        }
+        if (id.startsWith(COUNTER_PREFIX)) {
+            val n = id.substring(COUNTER_PREFIX.length).toLongOrNull()
+            if (n != null && n >= 0 && counterId(n) == id) {
+                out.writeByte(ID_COUNTER)
+                writeVarLong(out, n)
+                return
+            }
+        }
+        out.writeByte(ID_STRING)
+        out.writeUTF(id)
+    }
+
+    private fun readId(input: DataInputStream): String = when (input.readUnsignedByte()) {
+        ID_COUNTER -> counterId(readVarLong(input))
+        ID_FINGERPRINT -> fingerprintId(input.readLong(), input.readLong())
+        ID_STRING -> input.readUTF()
+        else -> throw IOException("Bad id kind")
+    }
+
+    private fun writeVarLong(out: DataOutputStream, value: Long) {
+        var v = value
+        while (v and 0x7FL.inv() != 0L) {
+            out.writeByte(((v and 0x7F) or 0x80).toInt())
+            v = v ushr 7
+        }
+        out.writeByte(v.toInt())
+    }
+
+    private fun readVarLong(input: DataInputStream): Long {
+        var result = 0L
+        var shift = 0
+        while (shift < 64) {
+            val b = input.readUnsignedByte()
+            result = result or ((b and 0x7F).toLong() shl shift)
+            if (b and 0x80 == 0) return result
+            shift += 7
+        }
+        throw IOException("Malformed varint")
+    }
+}
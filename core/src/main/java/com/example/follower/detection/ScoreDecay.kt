@@ -0,0 +1,39 @@
+package com.example.follower.detection
+
+import com.example.follower.data.model.DetectedDevice
+
+/**
+ * Time decay of a stored suspicion score.
+ *
+ * `DetectedDevice.threatScore` holds the score *before* decay.  Readers
+ * apply the decay for the moment they read at, so a device fades out of the
+ * suspicious lists on its own instead of being rescored: the DAO queries
+ * inline [SQL_MODIFIER], the repository's device reads use [decayed], and
+ * everything else calls [decayedScore].  The scoring path uses [modifier]
+ * for the same curve.
+ *
+ * The score decays linearly to zero over [WINDOW_MS] since the device was
+ * last seen, not since it was scored: rescoring a device that has not been
+ * heard again must not make it look fresh.
+ */
+object ScoreDecay {
+
+    const val WINDOW_MS = 24 * 60 * 60 * 1000L
+
+    /**
+     * [modifier] as an SQLite expression over `detected_devices`, with the
+     * read time bound to `:now`.
+     */
+    const val SQL_MODIFIER =
+        "MAX(0.0, MIN(1.0, 1.0 - (:now - lastSeenTimestamp) / ${WINDOW_MS}.0))"
+
+    fun modifier(lastSeenTimestamp: Long, now: Long): Float =
+        (1f - (now - lastSeenTimestamp) / WINDOW_MS.toFloat()).coerceIn(0f, 1f)
+
+    fun decayedScore(rawScore: Float, lastSeenTimestamp: Long, now: Long): Float =
+        rawScore * modifier(lastSeenTimestamp, now)
+
+    /** [device] with its stored score decayed to [now]. */
+    fun decayed(device: DetectedDevice, now: Long): DetectedDevice =
+        device.copy(threatScore = decayedScore(device.threatScore, device.lastSeenTimestamp, now))
+}
@@ -0,0 +1,117 @@
+package com.example.follower.detection
+
+import com.example.follower.data.model.DeviceSighting
+
+/**
+ * Columnar, reusable scoring window: one device's sightings as parallel
+ * primitive arrays, ordered by timestamp.
+ *
+ * [SuspicionCalculator] scores straight off these arrays, so a calculate()
+ * allocates per window (a handful of arrays) rather than per sighting
+ * (boxed fields, sorted copies, mapped lists).  Fill it from a Room cursor
+ * with [add], or from entities with [addAll]; call [sortByTimestamp] if the
+ * rows did not arrive in order.  [clear] keeps the capacity, so a window
+ * owned by a single thread (e.g. per engine shard) can be reused forever.
+ *
+ * [clusterIds] is scratch space written by the calculator's clustering
+ * pass: after calculate(), `clusterIds[i]` is the location cluster that
+ * sighting `i` was assigned to.
+ */
+class SightingWindow(initialCapacity: Int = DEFAULT_CAPACITY) {
+
+    companion object {
+        const val DEFAULT_CAPACITY = 64
+
+        fun of(sightings: List<DeviceSighting>): SightingWindow =
+            SightingWindow(maxOf(sightings.size, 1)).apply {
+                addAll(sightings)
+                sortByTimestamp()
+            }
+    }
+
+    var size = 0
+        private set
+
+    var timestamps = LongArray(initialCapacity)
+        private set
+    var latitudes = DoubleArray(initialCapacity)
+        private set
+    var longitudes = DoubleArray(initialCapacity)
+        private set
+    var rssi = ShortArray(initialCapacity)
+        private set
+    var clusterIds = IntArray(initialCapacity)
+        private set
+
+    fun clear() {
+        size = 0
+    }
+
+    fun add(timestamp: Long, latitude: Double, longitude: Double, rssi: Int) {
+        ensureCapacity(size + 1)
+        timestamps[size] = timestamp
+        latitudes[size] = latitude
+        longitudes[size] = longitude
+        this.rssi[size] = rssi.toShort()
+        clusterIds[size] = -1
+        size++
+    }
+
+    fun addAll(sightings: List<DeviceSighting>) {
+        ensureCapacity(size + sightings.size)
+        for (s in sightings) add(s.timestamp, s.latitude, s.longitude, s.rssi)
+    }
+
+    /** Mean RSSI, or 0 for an empty window. */
+    fun averageRssi(): Float {
+        if (size == 0) return 0f
+        var sum = 0L
+        for (i in 0 until size) sum += rssi[i]
+        return sum.toFloat() / size
+    }
+
+    /**
+     * Stable in-place sort by timestamp.  Free when already ordered (the
+     * cursor path); insertion sort otherwise, which is linear for the usual
+     * case of a few buffered rows appended after the persisted ones.
+     */
+    fun sortByTimestamp() {
+        var sorted = true
+        for (i in 1 until size) {
+            if (timestamps[i] < timestamps[i - 1]) {
+                sorted = false
+                break
+            }
+        }
+        if (sorted) return
+
+        for (i in 1 until size) {
+            val t = timestamps[i]
+            val lat = latitudes[i]
+            val lon = longitudes[i]
+            val r = rssi[i]
+            var j = i - 1
+            while (j >= 0 && timestamps[j] > t) {
+                timestamps[j + 1] = timestamps[j]
+                latitudes[j + 1] = latitudes[j]
+                longitudes[j + 1] = longitudes[j]
+                rssi[j + 1] = rssi[j]
+                j--
+            }
+            timestamps[j + 1] = t
+            latitudes[j + 1] = lat
+            longitudes[j + 1] = lon
+            rssi[j + 1] = r
+        }
+    }
+
+    private fun ensureCapacity(n: Int) {
+        if (n <= timestamps.size) return
+        val cap = maxOf(n, timestamps.size * 2)
+        timestamps = timestamps.copyOf(cap)
+        latitudes = latitudes.copyOf(cap)
+        longitudes = longitudes.copyOf(cap)
+        rssi = rssi.copyOf(cap)
+        clusterIds = clusterIds.copyOf(cap)
+    }
+}
@@ -0,0 +1,645 @@
+package com.example.follower.detection
+
+import com.example.follower.data.model.DetectedDevice
+import com.example.follower.data.model.DeviceSighting
+import com.example.follower.data.model.Encounter
+import com.example.follower.data.model.ThreatLevel
+import kotlin.math.abs
+import kotlin.math.ln
+import kotlin.math.roundToInt
+import kotlin.math.sqrt
+
+data class SuspicionResult(
+    val totalScore: Int,
+    /** [totalScore] without the time decay; this is what gets persisted. */
+    val undecayedScore: Int,
+    val durationFactor: Float,
+    val locationFactor: Float,
+    val patternFactor: Float,
+    val rssiModifier: Float,
+    val correlationModifier: Float,
+    val decayModifier: Float,
+    val densityModifier: Float,
+    val distinctLocationCount: Int,
+    val totalExposureMinutes: Float,
+    val longestStreakMinutes: Float,
+    val level: ThreatLevel,
+    val isKnownTracker: Boolean = false
+)
+
+/**
+ * Calculates a 0-100 suspicion score for a device based on sighting history.
+ *
+ * Score breakdown:
+ *   Duration factor:  0-30 pts  (total exposure time + longest continuous streak)
+ *   Location factor:  0-50 pts  (distinct locations via nearest-centroid clustering)
+ *   Pattern factor:   0-20 pts  (intermittent reappearance / leapfrog + route order)
+ *
+ * Modifiers:
+ *   RSSI trajectory:       1.0-1.15x  (constant RSSI during movement = following)
+ *   Movement correlation:  1.0-1.3x   (proportional to correlated transitions)
+ *   Time decay:            0.0-1.0x   (linear decay over 24h since last seen)
+ *   Density normalization: 0.5-1.0x   (reduces score in high-device-density areas)
+ *   Static penalty:        0.3x       (device stays put while user moves)
+ */
+class SuspicionCalculator(
+    private val settings: SuspicionConfig,
+    private val clock: Clock = Clock.SYSTEM
+) {
+
+    companion object {
+        /** User displacement beyond which a one-cluster device counts as static. */
+        const val STATIC_DISPLACEMENT_METERS = 200f
+    }
+
+    /**
+     * Ambient device count at the time of scoring, set by [DetectionEngine].
+     * Used for density normalization — crowded environments reduce scores.
+     * Volatile because engine shards set and read it concurrently; the value
+     * is a slowly changing estimate, so last-writer-wins is fine.
+     */
+    @Volatile
+    var ambientDeviceCount: Int = 0
+
+    /** Batch path over entity objects; copies them into a [SightingWindow]. */
+    fun calculate(device: DetectedDevice, sightings: List<DeviceSighting>): SuspicionResult {
+        if (device.isWhitelisted || sightings.size < 2) {
+            return emptySuspicion()
+        }
+        return calculate(device, SightingWindow.of(sightings))
+    }
+
+    /**
+     * Batch path: re-clusters the full [window] and scores every factor in
+     * the same linear pass over its primitive columns (see [scanWindow]).
+     * Allocates per call (the centroid grid and per-cluster spans), never
+     * per sighting.  Sorts [window] by timestamp if it isn't already, and
+     * overwrites its cluster ids.
+     */
+    fun calculate(device: DetectedDevice, window: SightingWindow): SuspicionResult {
+        if (device.isWhitelisted || window.size < 2) {
+            return emptySuspicion()
+        }
+
+        window.sortByTimestamp()
+        return score(device, scanWindow(window), window.size)
+    }
+
+    /**
+     * Encounter path: scores from per-encounter summaries, O(encounters)
+     * regardless of how many sightings they cover.  See [scanEncounters]
+     * for how the summaries stand in for the raw sightings.
+     */
+    @JvmName("calculateEncounters")
+    fun calculate(device: DetectedDevice, encounters: List<Encounter>): SuspicionResult {
+        var sightingCount = 0
+        for (e in encounters) sightingCount += e.sightingCount
+        if (device.isWhitelisted || sightingCount < 2) {
+            return emptySuspicion()
+        }
+        val ordered = encounters.sortedBy { it.startTimestamp }
+        return score(device, scanEncounters(ordered), sightingCount)
+    }
+
+    /** Shared tail of the batch and encounter paths. */
+    private fun score(device: DetectedDevice, scan: WindowScan, sightingCount: Int): SuspicionResult {
+        val distinct = scan.clusterCount
+
+        val totalMin = scan.totalExposureMs / 60_000f
+        val streakMin = scan.longestStreakMs / 60_000f
+        val durationScore = durationScore(totalMin, streakMin)
+
+        val locationScore = calculateLocationFactor(distinct).score
+        val pattern = if (distinct < 2 || sightingCount < 3) 0f else patternScore(
+            scan.reacquisitions,
+            scan.inOrderTransitions,
+            scan.sequenceLength
+        )
+
+        val rawScore = (durationScore + locationScore + pattern).coerceIn(0f, 100f)
+
+        val rssiMod = if (sightingCount < 4) 1f
+            else rssiModifier(scan.pathLengthMeters, scan.rssiStdDev)
+        val correlationMod = correlationModifier(scan.firstTimestamps, scan.lastTimestamps, distinct)
+        val decayMod = calculateDecayModifier(device)
+        val densityMod = calculateDensityModifier()
+        val staticPenalty = if (distinct > 1) 1f
+            else staticPenalty(scan.maxDisplacementMeters)
+
+        val undecayed = rawScore * rssiMod * correlationMod * densityMod * staticPenalty
+        val finalScore = (undecayed * decayMod).roundToInt().coerceIn(0, 100)
+
+        return SuspicionResult(
+            totalScore = finalScore,
+            undecayedScore = undecayed.roundToInt().coerceIn(0, 100),
+            durationFactor = durationScore,
+            locationFactor = locationScore,
+            patternFactor = pattern,
+            rssiModifier = rssiMod,
+            correlationModifier = correlationMod,
+            decayModifier = decayMod,
+            densityModifier = densityMod,
+            distinctLocationCount = distinct,
+            totalExposureMinutes = totalMin,
+            longestStreakMinutes = streakMin,
+            level = levelFromScore(finalScore)
+        )
+    }
+
+    /**
+     * Incremental path: reads the running accumulators in [state] instead of
+     * re-processing raw sightings.  O(streaks + clusters) regardless of how
+     * many sightings the window holds.  Agrees with the batch path over the
+     * same window, exactly until sightings expire and within the stated
+     * tolerances after; see [IncrementalSuspicionState].
+     */
+    fun calculate(device: DetectedDevice, state: IncrementalSuspicionState): SuspicionResult {
+        if (device.isWhitelisted || state.sightingCount < 2) {
+            return emptySuspicion()
+        }
+
+        val totalMin = state.totalExposureMs / 60_000f
+        val streakMin = state.longestStreakMs / 60_000f
+        val durationScore = durationScore(totalMin, streakMin)
+
+        val distinct = state.distinctLocationCount
+        val locationScore = calculateLocationFactor(distinct).score
+        val pattern = if (distinct < 2 || state.sightingCount < 3) 0f else patternScore(
+            state.reacquisitions,
+            state.inOrderTransitions,
+            state.transitions + 1
+        )
+
+        val rawScore = (durationScore + locationScore + pattern).coerceIn(0f, 100f)
+
+        val rssiMod = if (state.sightingCount < 4) 1f
+            else rssiModifier(state.pathLengthMeters, state.rssiStdDev)
+        val correlationMod = correlationModifier(
+            state.clusterFirstTimestamps,
+            state.clusterLastTimestamps,
+            distinct
+        )
+        val decayMod = calculateDecayModifier(device)
+        val densityMod = calculateDensityModifier()
+        val staticPenalty = if (distinct > 1) 1f
+            else staticPenalty(state.displacedBeyond(STATIC_DISPLACEMENT_METERS))
+
+        val undecayed = rawScore * rssiMod * correlationMod * densityMod * staticPenalty
+        val finalScore = (undecayed * decayMod).roundToInt().coerceIn(0, 100)
+
+        return SuspicionResult(
+            totalScore = finalScore,
+            undecayedScore = undecayed.roundToInt().coerceIn(0, 100),
+            durationFactor = durationScore,
+            locationFactor = locationScore,
+            patternFactor = pattern,
+            rssiModifier = rssiMod,
+            correlationModifier = correlationMod,
+            decayModifier = decayMod,
+            densityModifier = densityMod,
+            distinctLocationCount = distinct,
+            totalExposureMinutes = totalMin,
+            longestStreakMinutes = streakMin,
+            level = levelFromScore(finalScore)
+        )
+    }
+
+    fun levelFromScore(score: Int): ThreatLevel = when {
+        score >= settings.highThreshold -> ThreatLevel.HIGH
+        score > settings.lowThreshold -> ThreatLevel.MEDIUM
+        else -> ThreatLevel.LOW
+    }
+
+    // ---- Duration Factor (0-30 pts) ------------------------------------------------
+
+    private fun durationScore(totalMin: Float, streakMin: Float): Float {
+        // Base: linear scale 0-15 pts over 0-60 min total exposure
+        val base = ((totalMin / 60f) * 15f).coerceAtMost(15f)
+
+        // Streak bonus: linear scale 0-15 pts over 0-30 min longest streak
+        val bonus = ((streakMin / 30f) * 15f).coerceAtMost(15f)
+
+        return (base + bonus).coerceAtMost(30f)
+    }
+
+    // ---- Location Factor (0-50 pts) ------------------------------------------------
+
+    private data class LocationCalc(val score: Float, val distinctLocations: Int)
+
+    private fun calculateLocationFactor(n: Int): LocationCalc {
+        // Each additional location beyond the first adds 10 points, up to 50
+        val score = ((n - 1) * 10f).coerceIn(0f, 50f)
+        return LocationCalc(score, n)
+    }
+
+    // ---- Single pass ----------------------------------------------------------------
+
+    /** Everything the batch factors need, accumulated in one traversal. */
+    private class WindowScan(
+        val clusterCount: Int,
+        val firstTimestamps: LongArray,
+        val lastTimestamps: LongArray,
+        val totalExposureMs: Long,
+        val longestStreakMs: Long,
+        val reacquisitions: Int,
+        val inOrderTransitions: Int,
+        val sequenceLength: Int,
+        val pathLengthMeters: Float,
+        val maxDisplacementMeters: Float,
+        /** Population standard deviation over every sighting. */
+        val rssiStdDev: Float
+    )
+
+    private fun stdDev(count: Long, sum: Double, sumSquares: Double): Float {
+        val mean = sum / count
+        val variance = sumSquares / count - mean * mean
+        return sqrt(variance.coerceAtLeast(0.0)).toFloat()
+    }
+
+    /**
+     * Cluster the time-ordered [window] and accumulate every factor's inputs
+     * in the same loop.
+     *
+     * Clustering is nearest-centroid with running centroid updates: each
+     * sighting is assigned to the **nearest** existing cluster if within the
+     * threshold distance, otherwise it seeds a new one, and the centroid
+     * moves to the mean of its members.  Lookups go through a
+     * [CentroidGrid], so a stationary history is O(n) rather than O(n²).
+     * The assignment is written to [SightingWindow.clusterIds] and is final
+     * the moment it is made, so the pattern, route-sequence and correlation
+     * inputs read it directly instead of re-querying moved centroids.
+     */
+    private fun scanWindow(window: SightingWindow): WindowScan {
+        val grid = CentroidGrid(settings.locationClusterThresholdMeters)
+        val streakGapMs = settings.streakGapThresholdMinutes * 60_000L
+        val n = window.size
+        val ts = window.timestamps
+        val lats = window.latitudes
+        val lons = window.longitudes
+        val rssi = window.rssi
+        val ids = window.clusterIds
+
+        var first = LongArray(16)
+        var last = LongArray(16)
+
+        var totalExposureMs = 0L
+        var currentStreakMs = 0L
+        var longestStreakMs = 0L
+        var reacquisitions = 0
+        var inOrderTransitions = 0
+        var sequenceLength = 0
+        var pathLength = 0f
+        var maxDisplacement = 0f
+        var rssiSum = 0L
+        var rssiSumSquares = 0L
+
+        for (i in 0 until n) {
+            val lat = lats[i]
+            val lon = lons[i]
+
+            // Location: assign to the nearest cluster or seed a new one
+            val nearest = grid.nearestWithin(lat, lon)
+            val id = if (nearest >= 0) {
+                grid.addTo(nearest, lat, lon)
+                nearest
+            } else {
+                grid.add(lat, lon).also { created ->
+                    if (created == first.size) {
+                        first = first.copyOf(created * 2)
+                        last = last.copyOf(created * 2)
+                    }
+                    first[created] = ts[i]
+                }
+            }
+            ids[i] = id
+            last[id] = ts[i]
+
+            val r = rssi[i].toLong()
+            rssiSum += r
+            rssiSumSquares += r * r
+
+            if (i == 0) {
+                sequenceLength = 1
+                continue
+            }
+
+            // Duration: exposure and streaks from inter-sighting gaps
+            val gap = ts[i] - ts[i - 1]
+            if (gap in 1..streakGapMs) {
+                totalExposureMs += gap
+                currentStreakMs += gap
+            } else {
+                longestStreakMs = maxOf(longestStreakMs, currentStreakMs)
+                currentStreakMs = 0L
+            }
+
+            // Pattern: reappearance at a different cluster after a gap
+            val previous = ids[i - 1]
+            if (gap > streakGapMs && previous != id) reacquisitions++
+
+            // Route sequence: deduped consecutive clusters, counting moves to
+            // a later-created cluster as in-order transitions
+            if (id != previous) {
+                sequenceLength++
+                if (id > previous) inOrderTransitions++
+            }
+
+            // RSSI trajectory and static penalty: user path and displacement
+            pathLength += distanceMeters(lats[i - 1], lons[i - 1], lat, lon)
+            maxDisplacement = maxOf(maxDisplacement, distanceMeters(lats[0], lons[0], lat, lon))
+        }
+        longestStreakMs = maxOf(longestStreakMs, currentStreakMs)
+
+        return WindowScan(
+            clusterCount = grid.size,
+            firstTimestamps = first,
+            lastTimestamps = last,
+            totalExposureMs = totalExposureMs,
+            longestStreakMs = longestStreakMs,
+            reacquisitions = reacquisitions,
+            inOrderTransitions = inOrderTransitions,
+            sequenceLength = sequenceLength,
+            pathLengthMeters = pathLength,
+            maxDisplacementMeters = maxDisplacement,
+            // The integer sums are exact
+            rssiStdDev = stdDev(n.toLong(), rssiSum.toDouble(), rssiSumSquares.toDouble())
+        )
+    }
+
+    /**
+     * [scanWindow] over encounter summaries instead of sightings.
+     *
+     * Duration is exact: sightings within an encounter are by construction
+     * no further apart than the streak gap, so each encounter is one streak
+     * and contributes its whole span; encounters closer together than the
+     * current gap (the setting was raised since) are joined back up.
+     *
+     * Location is approximated by three anchors per encounter — entry at its
+     * start, centroid at its midpoint, exit at its end — clustered exactly
+     * as sightings are, one member each.  Reacquisition compares the
+     * previous exit's cluster with the next entry's, which is what the
+     * sighting pass compares too; route order and correlation spans read the
+     * anchor assignments.  Path length is exact; displacement from the first
+     * sighting is the best of the anchors and each encounter's own
+     * [Encounter.maxDisplacementMeters] less its entry's offset, a lower
+     * bound.  RSSI spread pools the per-encounter means and variances.
+     */
+    private fun scanEncounters(encounters: List<Encounter>): WindowScan {
+        val grid = CentroidGrid(settings.locationClusterThresholdMeters)
+        val streakGapMs = settings.streakGapThresholdMinutes * 60_000L
+        val origin = encounters[0]
+
+        var first = LongArray(16)
+        var last = LongArray(16)
+
+        var totalExposureMs = 0L
+        var currentStreakMs = 0L
+        var longestStreakMs = 0L
+        var reacquisitions = 0
+        var inOrderTransitions = 0
+        var sequenceLength = 0
+        var previousId = -1
+        var pathLength = 0f
+        var maxDisplacement = 0f
+        var rssiCount = 0L
+        var rssiSum = 0.0
+        var rssiSumSquares = 0.0
+
+        // Assign one anchor to a cluster and extend the route sequence
+        fun visit(lat: Double, lon: Double, timestamp: Long): Int {
+            val nearest = grid.nearestWithin(lat, lon)
+            val id = if (nearest >= 0) {
+                grid.addTo(nearest, lat, lon)
+                nearest
+            } else {
+                grid.add(lat, lon).also { created ->
+                    if (created == first.size) {
+                        first = first.copyOf(created * 2)
+                        last = last.copyOf(created * 2)
+                    }
+                    first[created] = timestamp
+                }
+            }
+            last[id] = timestamp
+            if (id != previousId) {
+                sequenceLength++
+                if (previousId >= 0 && id > previousId) inOrderTransitions++
+                previousId = id
+            }
+            maxDisplacement = maxOf(
+                maxDisplacement,
+                distanceMeters(origin.entryLatitude, origin.entryLongitude, lat, lon)
+            )
+            return id
+        }
+
+        var previous: Encounter? = null
+        var previousExitId = -1
+        for (e in encounters) {
+            val span = e.endTimestamp - e.startTimestamp
+
+            // Duration: each encounter is a streak; rejoin if the gap allows
+            val gap = if (previous == null) -1L else e.startTimestamp - previous.endTimestamp
+            if (gap in 1..streakGapMs) {
+                totalExposureMs += gap + span
+                currentStreakMs += gap + span
+            } else {
+                longestStreakMs = maxOf(longestStreakMs, currentStreakMs)
+                totalExposureMs += span
+                currentStreakMs = span
+            }
+
+            val entryId = visit(e.entryLatitude, e.entryLongitude, e.startTimestamp)
+            if (e.sightingCount > 1) {
+                visit(e.centroidLatitude, e.centroidLongitude, e.startTimestamp + span / 2)
+            }
+            val exitId = if (e.sightingCount > 1) {
+                visit(e.exitLatitude, e.exitLongitude, e.endTimestamp)
+            } else entryId
+
+            if (previous != null) {
+                // Pattern: reappearance at a different cluster after a gap
+                if (gap > streakGapMs && previousExitId != entryId) reacquisitions++
+                pathLength += distanceMeters(
+                    previous.exitLatitude, previous.exitLongitude,
+                    e.entryLatitude, e.entryLongitude
+                )
+            }
+            pathLength += e.pathLengthMeters
+            maxDisplacement = maxOf(
+                maxDisplacement,
+                e.maxDisplacementMeters - distanceMeters(
+                    origin.entryLatitude, origin.entryLongitude,
+                    e.entryLatitude, e.entryLongitude
+                )
+            )
+
+            val n = e.sightingCount.toLong()
+            rssiCount += n
+            rssiSum += e.rssiMean * n
+            rssiSumSquares += (e.rssiVariance + e.rssiMean * e.rssiMean) * n
+
+            previous = e
+            previousExitId = exitId
+        }
+        longestStreakMs = maxOf(longestStreakMs, currentStreakMs)
+
+        return WindowScan(
+            clusterCount = grid.size,
+            firstTimestamps = first,
+            lastTimestamps = last,
+            totalExposureMs = totalExposureMs,
+            longestStreakMs = longestStreakMs,
+            reacquisitions = reacquisitions,
+            inOrderTransitions = inOrderTransitions,
+            sequenceLength = sequenceLength,
+            pathLengthMeters = pathLength,
+            maxDisplacementMeters = maxDisplacement,
+            rssiStdDev = stdDev(rssiCount, rssiSum, rssiSumSquares)
+        )
+    }
+
+    // ---- Pattern Factor (0-20 pts) -------------------------------------------------
+
+    /**
+     * Detects intermittent reappearance ("leapfrog") patterns and route ordering.
+     *
+     * A sophisticated follower may lose contact and reacquire the target at
+     * the next location.  Each time a device disappears for longer than the
+     * streak gap and then reappears at a *different* cluster, that counts as
+     * a "reacquisition event" — a strong indicator of intentional following.
+     *
+     * Also awards points for route-sequence matching — the device visiting
+     * the same clusters in the same temporal order as the user's movement.
+     */
+    private fun patternScore(
+        reacquisitions: Int,
+        inOrderTransitions: Int,
+        sequenceLength: Int
+    ): Float {
+        // Reacquisition score: 5 pts each, up to 10 pts
+        val reacquisitionScore = (reacquisitions * 5f).coerceAtMost(10f)
+
+        val totalTransitions = (sequenceLength - 1).coerceAtLeast(1)
+        val routeOrderRatio = inOrderTransitions.toFloat() / totalTransitions
+
+        // Route order score: up to 10 pts
+        val routeScore = (routeOrderRatio * 10f).coerceAtMost(10f)
+
+        return (reacquisitionScore + routeScore).coerceAtMost(20f)
+    }
+
+    // ---- Modifiers ------------------------------------------------------------------
+
+    /**
+     * RSSI trajectory analysis.
+     *
+     * A following device maintains roughly constant RSSI as it moves with
+     * the user.  A stationary device's RSSI changes predictably as the user
+     * walks away or toward it.  Low RSSI variance combined with significant
+     * user movement is a strong following indicator.
+     *
+     * Returns 1.0-1.15x.
+     */
+    private fun rssiModifier(pathLength: Float, stdDev: Float): Float {
+        if (pathLength < 100f) return 1f
+
+        // Low RSSI std dev during significant movement = following
+        return when {
+            stdDev < 5f -> 1.15f
+            stdDev < 8f -> 1.08f
+            else -> 1f
+        }
+    }
+
+    /**
+     * Proportional movement correlation modifier.
+     *
+     * Awards a bonus proportional to how many location transitions are
+     * correlated (device appears at new location within a time window
+     * after the user moves there).
+     *
+     * Returns 1.0-1.3x (proportional, not binary).
+     *
+     * @param first first-sighting timestamp per cluster, ascending
+     * @param last last-sighting timestamp per cluster, in the same order
+     */
+    private fun correlationModifier(first: LongArray, last: LongArray, count: Int): Float {
+        if (count < 2) return 1f
+
+        val windowMs = settings.movementCorrelationWindowMinutes * 60_000L
+
+        var correlated = 0
+        var total = 0
+
+        for (i in 1 until count) {
+            val lastInPrev = last[i - 1]
+            val firstInCurr = first[i]
+            total++
+            if ((firstInCurr - lastInPrev) in 0..windowMs) {
+                correlated++
+            }
+        }
+
+        if (total == 0) return 1f
+
+        val correlationRatio = correlated.toFloat() / total
+        // Scale proportionally: 0% → 1.0x, 100% → 1.3x
+        return 1f + (correlationRatio * 0.3f)
+    }
+
+    /**
+     * Score decays linearly to zero over 24 hours since the device was last
+     * seen.  Stored scores are undecayed; readers apply the same curve via
+     * [ScoreDecay].
+     */
+    private fun calculateDecayModifier(device: DetectedDevice): Float =
+        ScoreDecay.modifier(device.lastSeenTimestamp, clock.now())
+
+    /**
+     * Density normalization — reduces scores in high-device-density areas.
+     *
+     * In a crowded subway car, dozens of BLE devices travel the same route.
+     * On an empty suburban road, even one device consistently nearby is
+     * suspicious.  Logarithmic dampening prevents over-suppression.
+     */
+    private fun calculateDensityModifier(): Float {
+        if (ambientDeviceCount <= 5) return 1f
+
+        val dampening = 1f / (ln((ambientDeviceCount + 1).toFloat()) / ln(2f))
+        return dampening.coerceIn(0.5f, 1f)
+    }
+
+    /**
+     * Penalises devices that never change location while the user is moving.
+     *
+     * Uses **max displacement** from the first sighting at any point during
+     * the observation window, not just first-vs-last (which fails for round
+     * trips where the user returns to the starting location).
+     */
+    private fun staticPenalty(maxDisplacement: Float): Float =
+        staticPenalty(maxDisplacement > STATIC_DISPLACEMENT_METERS)
+
+    private fun staticPenalty(displaced: Boolean): Float {
+        // User moved >200m at some point but device stayed in one cluster → likely static
+        return if (displaced) 0.3f else 1f
+    }
+
+    // ---- Helpers ---------------------------------------------------------------------
+
+    private fun emptySuspicion() = SuspicionResult(
+        totalScore = 0,
+        undecayedScore = 0,
+        durationFactor = 0f,
+        locationFactor = 0f,
+        patternFactor = 0f,
+        rssiModifier = 1f,
+        correlationModifier = 1f,
+        decayModifier = 1f,
+        densityModifier = 1f,
+        distinctLocationCount = 0,
+        totalExposureMinutes = 0f,
+        longestStreakMinutes = 0f,
+        level = ThreatLevel.LOW
+    )
+}
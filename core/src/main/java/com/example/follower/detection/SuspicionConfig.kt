@@ -0,0 +1,15 @@
+package com.example.follower.detection
+
+/**
+ * The tunables [SuspicionCalculator] and [IncrementalSuspicionState] read.
+ *
+ * On device this is the SharedPreferences-backed `SuspicionSettings`;
+ * benchmarks and JVM tools supply a fixed implementation.
+ */
+interface SuspicionConfig {
+    val locationClusterThresholdMeters: Float
+    val streakGapThresholdMinutes: Int
+    val lowThreshold: Int
+    val highThreshold: Int
+    val movementCorrelationWindowMinutes: Int
+}
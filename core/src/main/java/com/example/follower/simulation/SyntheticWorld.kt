@@ -0,0 +1,161 @@
+package com.example.follower.simulation
+
+import com.example.follower.data.model.DeviceType
+import com.example.follower.data.model.ScanResult
+import kotlin.math.cos
+import kotlin.math.floor
+
+/**
+ * Deterministic synthetic radio environment for virtual-time simulation.
+ *
+ * The user follows a fixed weekday routine: home overnight, a commute to
+ * work, a working day, and a commute back.  Around them:
+ *  - **ambient** devices are fixed to home, work, or a stretch of the commute
+ *    route, and are only heard while the user is close by;
+ *  - **followers** are heard everywhere, all week, with a strong signal.
+ *    Half of them rotate their BLE MAC every [Config.macRotationMs] while
+ *    keeping their advertising payload, exercising identity resolution.
+ *
+ * Everything is a pure function of the timestamp and [seed], so two runs
+ * with the same inputs produce the same scan stream.
+ */
+class SyntheticWorld(
+    private val config: Config = Config(),
+    private val seed: Long = 1L
+) {
+    data class Config(
+        val homeLatitude: Double = 51.5000,
+        val homeLongitude: Double = -0.1200,
+        /** Work is this far east of home. */
+        val commuteMeters: Double = 10_000.0,
+        val ambientDevicesPerPlace: Int = 30,
+        /** Ambient devices heard per [ROUTE_SEGMENT_METERS] of commute. */
+        val ambientDevicesPerSegment: Int = 8,
+        val followers: Int = 2,
+        val macRotationMs: Long = 15 * 60 * 1000L
+    )
+
+    data class Position(val latitude: Double, val longitude: Double, val accuracy: Float)
+
+    companion object {
+        private const val DAY_MS = 24 * 60 * 60 * 1000L
+        private const val HOUR_MS = 60 * 60 * 1000L
+        private const val ROUTE_SEGMENT_METERS = 500.0
+        private const val METERS_PER_DEGREE_LAT = 111_320.0
+
+        /** Apple company ID, so rotating followers look like common BLE trackers. */
+        private const val FOLLOWER_COMPANY_ID = 0x004C
+    }
+
+    private val metersPerDegreeLon = METERS_PER_DEGREE_LAT * cos(Math.toRadians(config.homeLatitude))
+
+    /** Where the user is at [timestamp]. */
+    fun positionAt(timestamp: Long): Position {
+        val meters = commuteProgressMeters(timestamp)
+        return Position(
+            latitude = config.homeLatitude,
+            longitude = config.homeLongitude + meters / metersPerDegreeLon,
+            accuracy = 10f + jitter(timestamp, 0x51) * 10f
+        )
+    }
+
+    /** Everything the radios would hear in one scan at [timestamp]. */
+    fun scanAt(timestamp: Long): List<ScanResult> {
+        val position = positionAt(timestamp)
+        val meters = commuteProgressMeters(timestamp)
+        val results = ArrayList<ScanResult>(config.ambientDevicesPerPlace + config.followers)
+
+        // Ambient devices of whatever place (or route segment) the user is at
+        when {
+            meters <= 0.0 -> addAmbient(results, "home", config.ambientDevicesPerPlace, position, timestamp)
+            meters >= config.commuteMeters -> addAmbient(results, "work", config.ambientDevicesPerPlace, position, timestamp)
+            else -> {
+                val segment = floor(meters / ROUTE_SEGMENT_METERS).toInt()
+                addAmbient(results, "route$segment", config.ambientDevicesPerSegment, position, timestamp)
+            }
+        }
+
+        for (i in 0 until config.followers) {
+            val rotating = i % 2 == 0
+            val epoch = if (rotating) timestamp / config.macRotationMs else 0L
+            results += ScanResult(
+                macAddress = mac("follower$i", epoch, randomized = rotating),
+                deviceType = DeviceType.BLUETOOTH_LE,
+                rssi = -55 + (jitter(timestamp, i) * 10).toInt() - 5,
+                timestamp = timestamp,
+                latitude = position.latitude,
+                longitude = position.longitude,
+                locationAccuracy = position.accuracy,
+                manufacturerData = byteArrayOf(
+                    (FOLLOWER_COMPANY_ID and 0xFF).toByte(), (FOLLOWER_COMPANY_ID shr 8).toByte(),
+                    0x12, 0x19, i.toByte(), 0x00
+                ),
+                txPowerLevel = -12
+            )
+        }
+        return results
+    }
+
+    /**
+     * Metres along the commute at [timestamp]: 0 at home, [Config.commuteMeters]
+     * at work.  Weekdays only; 08:00–09:00 out, 17:00–18:00 back.
+     */
+    private fun commuteProgressMeters(timestamp: Long): Double {
+        val day = Math.floorDiv(timestamp, DAY_MS)
+        // 1970-01-01 was a Thursday: day % 7 of 2 and 3 are Saturday / Sunday
+        if (Math.floorMod(day, 7L) in 2..3) return 0.0
+        val hourOfDay = Math.floorMod(timestamp, DAY_MS).toDouble() / HOUR_MS
+        val fraction = when {
+            hourOfDay < 8.0 -> 0.0
+            hourOfDay < 9.0 -> hourOfDay - 8.0
+            hourOfDay < 17.0 -> 1.0
+            hourOfDay < 18.0 -> 18.0 - hourOfDay
+            else -> 0.0
+        }
+        return fraction * config.commuteMeters
+    }
+
+    private fun addAmbient(
+        out: MutableList<ScanResult>,
+        place: String,
+        count: Int,
+        position: Position,
+        timestamp: Long
+    ) {
+        for (i in 0 until count) {
+            // Not every device is heard in every scan
+            if (jitter(timestamp, place.hashCode() * 31 + i) < 0.2f) continue
+            val wifi = i % 3 == 0
+            out += ScanResult(
+                macAddress = mac("$place/$i", 0L, randomized = false),
+                deviceType = if (wifi) DeviceType.WIFI_ACCESS_POINT else DeviceType.BLUETOOTH_LE,
+                deviceName = if (wifi) null else "dev-$place-$i",
+                rssi = -90 + (jitter(timestamp, i + 7) * 35).toInt(),
+                timestamp = timestamp,
+                latitude = position.latitude,
+                longitude = position.longitude,
+                locationAccuracy = position.accuracy,
+                ssid = if (wifi) "net-$place-$i" else null
+            )
+        }
+    }
+
+    /** Deterministic MAC for a device identity; randomized MACs set the locally-administered bit. */
+    private fun mac(identity: String, epoch: Long, randomized: Boolean): String {
+        val h = mix(seed xor identity.hashCode().toLong() * -0x61c8864680b583ebL xor epoch)
+        val bytes = IntArray(6) { ((h ushr (it * 8)) and 0xFF).toInt() }
+        bytes[0] = if (randomized) (bytes[0] or 0x02) and 0xFE else bytes[0] and 0xFC
+        return bytes.joinToString(":") { "%02X".format(it) }
+    }
+
+    /** Uniform [0, 1) derived from ([timestamp], [salt]). */
+    private fun jitter(timestamp: Long, salt: Int): Float =
+        (mix(seed + timestamp * 31 + salt) ushr 40).toFloat() / (1L shl 24)
+
+    private fun mix(value: Long): Long {
+        var z = value + -0x61c8864680b583ebL
+        z = (z xor (z ushr 30)) * -0x40a7b892e31b1a47L
+        z = (z xor (z ushr 27)) * -0x6b2fb644ecceee15L
+        return z xor (z ushr 31)
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.follower.trace
+
+import com.example.follower.data.model.DeviceType
+import com.example.follower.data.model.ScanResult
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import kotlin.math.roundToInt
+
+/**
+ * One entry of a scan trace.
+ */
+sealed class TraceEvent {
+    abstract val timestamp: Long
+
+    data class Scan(val result: ScanResult) : TraceEvent() {
+        override val timestamp: Long get() = result.timestamp
+    }
+
+    data class LocationFix(
+        override val timestamp: Long,
+        val latitude: Double,
+        val longitude: Double,
+        val accuracy: Float
+    ) : TraceEvent()
+}
+
+/**
+ * Compact binary encoding of a [ScanResult] / location stream.
+ *
+ * ```
+ * file    := MAGIC VERSION record*
+ * record  := tag:u8  dt:zigzag-varint  body
+ * LOCATION body := lat:i32(1e-7°) lon:i32(1e-7°) accuracy:f32
+ * SCAN     body := type:u8 flags:varint mac rssi:zigzag-varint
+ *                  lat:i32 lon:i32 accuracy:f32 [optional fields in flag order]
+ * mac     := 6 raw bytes, or a UTF string when FLAG_MAC_STRING is set
+ * ```
+ *
+ * Timestamps are delta-encoded against the previous record (signed, since
+ * scanners deliver slightly out of order).  Coordinates are fixed-point at
+ * 1e-7° (~1 cm), which is far below GPS noise.  A typical BLE advertisement
+ * with manufacturer data encodes in ~40 bytes.
+ */
+object ScanTraceFormat {
+
+    val MAGIC = byteArrayOf('F'.code.toByte(), 'L'.code.toByte(), 'T'.code.toByte(), 'R'.code.toByte())
+    const val VERSION = 1
+
+    const val TAG_SCAN = 1
+    const val TAG_LOCATION = 2
+
+    private const val FLAG_MAC_STRING = 1 shl 0
+    private const val FLAG_NAME = 1 shl 1
+    private const val FLAG_SSID = 1 shl 2
+    private const val FLAG_CHANNEL = 1 shl 3
+    private const val FLAG_FREQUENCY = 1 shl 4
+    private const val FLAG_BT_CLASS = 1 shl 5
+    private const val FLAG_BOND_STATE = 1 shl 6
+    private const val FLAG_MANUFACTURER_DATA = 1 shl 7
+    private const val FLAG_SERVICE_UUIDS = 1 shl 8
+    private const val FLAG_TX_POWER = 1 shl 9
+    private const val FLAG_ADV_INTERVAL = 1 shl 10
+    private const val FLAG_PROBE_REQUEST = 1 shl 11
+    private const val FLAG_PROBED_SSIDS = 1 shl 12
+    private const val FLAG_RAW_FRAME = 1 shl 13
+
+    private const val E7 = 10_000_000.0
+
+    private val DEVICE_TYPES = DeviceType.values()
+
+    // ---- Header ---------------------------------------------------------------------
+
+    fun writeHeader(out: DataOutputStream) {
+        out.write(MAGIC)
+        out.writeByte(VERSION)
+    }
+
+    fun readHeader(input: DataInputStream) {
+        val magic = ByteArray(MAGIC.size)
+        input.readFully(magic)
+        if (!magic.contentEquals(MAGIC)) throw IOException("Not a scan trace")
+        val version = input.readUnsignedByte()
+        if (version != VERSION) throw IOException("Unsupported scan trace version $version")
+    }
+
+    // ---- Bodies ---------------------------------------------------------------------
+
+    fun writeLocation(out: DataOutputStream, latitude: Double, longitude: Double, accuracy: Float) {
+        out.writeInt(toE7(latitude))
+        out.writeInt(toE7(longitude))
+        out.writeFloat(accuracy)
+    }
+
+    fun readLocation(input: DataInputStream, timestamp: Long): TraceEvent.LocationFix =
+        TraceEvent.LocationFix(
+            timestamp = timestamp,
+            latitude = input.readInt() / E7,
+            longitude = input.readInt() / E7,
+            accuracy = input.readFloat()
+        )
+
+    fun writeScan(out: DataOutputStream, r: ScanResult) {
+        val macBytes = parseMac(r.macAddress)
+        var flags = 0
+        if (macBytes == null) flags = flags or FLAG_MAC_STRING
+        if (r.deviceName != null) flags = flags or FLAG_NAME
+        if (r.ssid != null) flags = flags or FLAG_SSID
+        if (r.channel != null) flags = flags or FLAG_CHANNEL
+        if (r.frequency != null) flags = flags or FLAG_FREQUENCY
+        if (r.bluetoothClass != null) flags = flags or FLAG_BT_CLASS
+        if (r.bondState != null) flags = flags or FLAG_BOND_STATE
+        if (r.manufacturerData != null) flags = flags or FLAG_MANUFACTURER_DATA
+        if (r.serviceUuids != null) flags = flags or FLAG_SERVICE_UUIDS
+        if (r.txPowerLevel != null) flags = flags or FLAG_TX_POWER
+        if (r.advertisingInterval != null) flags = flags or FLAG_ADV_INTERVAL
+        if (r.isProbeRequest) flags = flags or FLAG_PROBE_REQUEST
+        if (r.probedSsids != null) flags = flags or FLAG_PROBED_SSIDS
+        if (r.rawFrameData != null) flags = flags or FLAG_RAW_FRAME
+
+        out.writeByte(r.deviceType.ordinal)
+        writeVarLong(out, flags.toLong())
+        if (macBytes != null) out.write(macBytes) else out.writeUTF(r.macAddress)
+        writeSignedVarLong(out, r.rssi.toLong())
+        writeLocation(out, r.latitude, r.longitude, r.locationAccuracy)
+
+        r.deviceName?.let { out.writeUTF(it) }
+        r.ssid?.let { out.writeUTF(it) }
+        r.channel?.let { writeSignedVarLong(out, it.toLong()) }
+        r.frequency?.let { writeSignedVarLong(out, it.toLong()) }
+        r.bluetoothClass?.let { writeSignedVarLong(out, it.toLong()) }
+        r.bondState?.let { writeSignedVarLong(out, it.toLong()) }
+        r.manufacturerData?.let { writeBytes(out, it) }
+        r.serviceUuids?.let { writeStrings(out, it) }
+        r.txPowerLevel?.let { writeSignedVarLong(out, it.toLong()) }
+        r.advertisingInterval?.let { writeSignedVarLong(out, it.toLong()) }
+        r.probedSsids?.let { writeStrings(out, it) }
+        r.rawFrameData?.let { writeBytes(out, it) }
+    }
+
+    fun readScan(input: DataInputStream, timestamp: Long): TraceEvent.Scan {
+        val type = DEVICE_TYPES[input.readUnsignedByte()]
+        val flags = readVarLong(input).toInt()
+        fun has(flag: Int) = flags and flag != 0
+
+        val mac = if (has(FLAG_MAC_STRING)) input.readUTF() else {
+            val bytes = ByteArray(6)
+            input.readFully(bytes)
+            formatMac(bytes)
+        }
+        val rssi = readSignedVarLong(input).toInt()
+        val location = readLocation(input, timestamp)
+
+        val result = ScanResult(
+            macAddress = mac,
+            deviceType = type,
+            deviceName = if (has(FLAG_NAME)) input.readUTF() else null,
+            rssi = rssi,
+            timestamp = timestamp,
+            latitude = location.latitude,
+            longitude = location.longitude,
+            locationAccuracy = location.accuracy,
+            ssid = if (has(FLAG_SSID)) input.readUTF() else null,
+            channel = if (has(FLAG_CHANNEL)) readSignedVarLong(input).toInt() else null,
+            frequency = if (has(FLAG_FREQUENCY)) readSignedVarLong(input).toInt() else null,
+            bluetoothClass = if (has(FLAG_BT_CLASS)) readSignedVarLong(input).toInt() else null,
+            bondState = if (has(FLAG_BOND_STATE)) readSignedVarLong(input).toInt() else null,
+            manufacturerData = if (has(FLAG_MANUFACTURER_DATA)) readBytes(input) else null,
+            serviceUuids = if (has(FLAG_SERVICE_UUIDS)) readStrings(input) else null,
+            txPowerLevel = if (has(FLAG_TX_POWER)) readSignedVarLong(input).toInt() else null,
+            advertisingInterval = if (has(FLAG_ADV_INTERVAL)) readSignedVarLong(input).toInt() else null,
+            isProbeRequest = has(FLAG_PROBE_REQUEST),
+            probedSsids = if (has(FLAG_PROBED_SSIDS)) readStrings(input) else null,
+            rawFrameData = if (has(FLAG_RAW_FRAME)) readBytes(input) else null
+        )
+        return TraceEvent.Scan(result)
+    }
+
+    // ---- Primitives -----------------------------------------------------------------
+
+    fun writeVarLong(out: DataOutputStream, value: Long) {
+        var v = value
+        while (v and 0x7FL.inv() != 0L) {
+            out.writeByte(((v and 0x7F) or 0x80).toInt())
+            v = v ushr 7
+        }
+        out.writeByte(v.toInt())
+    }
+
+    fun readVarLong(input: DataInputStream): Long {
+        var result = 0L
+        var shift = 0
+        while (shift < 64) {
+            val b = input.readUnsignedByte()
+            result = result or ((b and 0x7F).toLong() shl shift)
+            if (b and 0x80 == 0) return result
+            shift += 7
+        }
+        throw IOException("Malformed varint")
+    }
+
+    fun writeSignedVarLong(out: DataOutputStream, value: Long) =
+        writeVarLong(out, (value shl 1) xor (value shr 63))
+
+    fun readSignedVarLong(input: DataInputStream): Long {
+        val raw = readVarLong(input)
+        return (raw ushr 1) xor -(raw and 1)
+    }
+
+    private fun writeBytes(out: DataOutputStream, bytes: ByteArray) {
+        writeVarLong(out, bytes.size.toLong())
+        out.write(bytes)
+    }
+
+    private fun readBytes(input: DataInputStream): ByteArray {
+        val bytes = ByteArray(readVarLong(input).toInt())
+        input.readFully(bytes)
+        return bytes
+    }
+
+    private fun writeStrings(out: DataOutputStream, values: List<String>) {
+        writeVarLong(out, values.size.toLong())
+        values.forEach { out.writeUTF(it) }
+    }
+
+    private fun readStrings(input: DataInputStream): List<String> =
+        List(readVarLong(input).toInt()) { input.readUTF() }
+
+    private fun toE7(degrees: Double): Int = (degrees * E7).roundToInt()
+
+    /** Parse `AA:BB:CC:DD:EE:FF` (either case) to 6 bytes, or null if not that shape. */
+    private fun parseMac(mac: String): ByteArray? {
+        if (mac.length != 17) return null
+        val out = ByteArray(6)
+        for (i in 0 until 6) {
+            val hi = Character.digit(mac[i * 3], 16)
+            val lo = Character.digit(mac[i * 3 + 1], 16)
+            if (hi < 0 || lo < 0) return null
+            if (i < 5 && mac[i * 3 + 2] != ':') return null
+            out[i] = ((hi shl 4) or lo).toByte()
+        }
+        // Round-trip check keeps lower-case MACs on the string path
+        return if (formatMac(out) == mac) out else null
+    }
+
+    private fun formatMac(bytes: ByteArray): String {
+        val hex = "0123456789ABCDEF"
+        val sb = StringBuilder(17)
+        for (i in bytes.indices) {
+            if (i > 0) sb.append(':')
+            val v = bytes[i].toInt() and 0xFF
+            sb.append(hex[v ushr 4]).append(hex[v and 0x0F])
+        }
+        return sb.toString()
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.follower.trace
+
+import java.io.BufferedInputStream
+import java.io.Closeable
+import java.io.DataInputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.IOException
+import java.io.InputStream
+
+/**
+ * Sequential reader for a [ScanTraceFormat] stream.
+ *
+ * A trace cut short by a crash or a killed service ends in a partial record;
+ * that record is dropped and reading stops cleanly.
+ */
+class ScanTraceReader(input: InputStream) : Closeable {
+
+    companion object {
+        private const val BUFFER_BYTES = 64 * 1024
+
+        fun open(file: File): ScanTraceReader = ScanTraceReader(FileInputStream(file))
+    }
+
+    private val input = DataInputStream(BufferedInputStream(input, BUFFER_BYTES))
+    private var lastTimestamp = 0L
+    private var finished = false
+
+    init {
+        ScanTraceFormat.readHeader(this.input)
+    }
+
+    /** Next event, or null at end of trace. */
+    fun next(): TraceEvent? {
+        if (finished) return null
+        val tag = input.read()
+        if (tag < 0) {
+            finished = true
+            return null
+        }
+        return try {
+            val timestamp = lastTimestamp + ScanTraceFormat.readSignedVarLong(input)
+            lastTimestamp = timestamp
+            when (tag) {
+                ScanTraceFormat.TAG_SCAN -> ScanTraceFormat.readScan(input, timestamp)
+                ScanTraceFormat.TAG_LOCATION -> ScanTraceFormat.readLocation(input, timestamp)
+                else -> throw IOException("Unknown trace record tag $tag")
+            }
+        } catch (e: EOFException) {
+            finished = true
+            null
+        }
+    }
+
+    fun events(): Sequence<TraceEvent> = generateSequence { next() }
+
+    override fun close() = input.close()
+}
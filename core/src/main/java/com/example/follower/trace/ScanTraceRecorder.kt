@@ -0,0 +1,72 @@
+package com.example.follower.trace
+
+import com.example.follower.data.model.ScanResult
+import java.io.BufferedOutputStream
+import java.io.Closeable
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.OutputStream
+
+/**
+ * Appends scan results and location fixes to a [ScanTraceFormat] stream.
+ *
+ * Thread-safe: the Bluetooth and WiFi collectors and the location collector
+ * all record into the same instance.  Output is buffered; records reach the
+ * file on [flush] / [close] or when the buffer fills.
+ */
+class ScanTraceRecorder(output: OutputStream) : Closeable {
+
+    companion object {
+        private const val BUFFER_BYTES = 64 * 1024
+
+        fun open(file: File): ScanTraceRecorder {
+            file.parentFile?.mkdirs()
+            return ScanTraceRecorder(FileOutputStream(file))
+        }
+    }
+
+    private val out = DataOutputStream(BufferedOutputStream(output, BUFFER_BYTES))
+    private var lastTimestamp = 0L
+    private var closed = false
+
+    var recordCount = 0L
+        private set
+
+    init {
+        ScanTraceFormat.writeHeader(out)
+    }
+
+    @Synchronized
+    fun recordScan(result: ScanResult) {
+        if (closed) return
+        writeRecordHeader(ScanTraceFormat.TAG_SCAN, result.timestamp)
+        ScanTraceFormat.writeScan(out, result)
+    }
+
+    @Synchronized
+    fun recordLocation(latitude: Double, longitude: Double, accuracy: Float, timestamp: Long) {
+        if (closed) return
+        writeRecordHeader(ScanTraceFormat.TAG_LOCATION, timestamp)
+        ScanTraceFormat.writeLocation(out, latitude, longitude, accuracy)
+    }
+
+    @Synchronized
+    fun flush() {
+        if (!closed) out.flush()
+    }
+
+    @Synchronized
+    override fun close() {
+        if (closed) return
+        closed = true
+        out.close()
+    }
+
+    private fun writeRecordHeader(tag: Int, timestamp: Long) {
+        out.writeByte(tag)
+        ScanTraceFormat.writeSignedVarLong(out, timestamp - lastTimestamp)
+        lastTimestamp = timestamp
+        recordCount++
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.follower.usb
+
+/**
+ * A probe request captured in monitor mode.
+ */
+data class ProbeRequestFrame(
+    val sourceMac: String,
+    val destinationMac: String,
+    val ssid: String?,
+    val rssi: Int,
+    val channel: Int,
+    val timestamp: Long = System.currentTimeMillis(),
+    val rawFrame: ByteArray? = null
+) {
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (javaClass != other?.javaClass) return false
+        other as ProbeRequestFrame
+        return sourceMac == other.sourceMac && timestamp == other.timestamp
+    }
+
+    override fun hashCode(): Int {
+        var result = sourceMac.hashCode()
+        result = 31 * result + timestamp.hashCode()
+        return result
+    }
+}
+
+/**
+ * Pure 802.11 frame parsing, kept free of the USB transport so it can be
+ * benchmarked and exercised on a plain JVM.
+ */
+object Ieee80211Parser {
+
+    // 802.11 Frame Types
+    const val FRAME_TYPE_MANAGEMENT = 0x00
+    const val FRAME_TYPE_CONTROL = 0x01
+    const val FRAME_TYPE_DATA = 0x02
+
+    // Management Frame Subtypes
+    const val SUBTYPE_PROBE_REQUEST = 0x04
+    const val SUBTYPE_PROBE_RESPONSE = 0x05
+    const val SUBTYPE_BEACON = 0x08
+
+    /** Minimum 802.11 MAC header size. */
+    const val MAC_HEADER_LENGTH = 24
+
+    private const val ELEMENT_ID_SSID = 0
+
+    fun isProbeRequest(data: ByteArray): Boolean {
+        if (data.size < MAC_HEADER_LENGTH) return false
+        val frameControl = ((data[1].toInt() and 0xFF) shl 8) or (data[0].toInt() and 0xFF)
+        val frameType = (frameControl shr 2) and 0x03
+        val frameSubtype = (frameControl shr 4) and 0x0F
+        return frameType == FRAME_TYPE_MANAGEMENT && frameSubtype == SUBTYPE_PROBE_REQUEST
+    }
+
+    /**
+     * Parse a probe request frame, or null if [data] is not one.
+     *
+     * RSSI and channel are not in the 802.11 frame itself (they come from
+     * the radiotap header / the driver's tuning), so the caller supplies them.
+     */
+    fun parseProbeRequest(
+        data: ByteArray,
+        rssi: Int,
+        channel: Int,
+        timestamp: Long = System.currentTimeMillis()
+    ): ProbeRequestFrame? {
+        if (!isProbeRequest(data)) return null
+
+        // Address 1 (bytes 4-9): Destination (usually broadcast)
+        // Address 2 (bytes 10-15): Source MAC
+        // Address 3 (bytes 16-21): BSSID
+        val sourceMac = extractMacAddress(data, 10)
+        val destMac = extractMacAddress(data, 4)
+
+        // Parse information elements to get SSID
+        var ssid: String? = null
+        var offset = MAC_HEADER_LENGTH
+
+        while (offset + 2 < data.size) {
+            val elementId = data[offset].toInt() and 0xFF
+            val elementLen = data[offset + 1].toInt() and 0xFF
+
+            if (offset + 2 + elementLen > data.size) break
+
+            if (elementId == ELEMENT_ID_SSID && elementLen > 0) {
+                ssid = String(data, offset + 2, elementLen, Charsets.UTF_8)
+            }
+
+            offset += 2 + elementLen
+        }
+
+        return ProbeRequestFrame(
+            sourceMac = sourceMac,
+            destinationMac = destMac,
+            ssid = ssid,
+            rssi = rssi,
+            channel = channel,
+            timestamp = timestamp,
+            rawFrame = data
+        )
+    }
+
+    /**
+     * Extract MAC address from frame data.
+     */
+    fun extractMacAddress(data: ByteArray, offset: Int): String {
+        return String.format(
+            "%02X:%02X:%02X:%02X:%02X:%02X",
+            data[offset].toInt() and 0xFF,
+            data[offset + 1].toInt() and 0xFF,
+            data[offset + 2].toInt() and 0xFF,
+            data[offset + 3].toInt() and 0xFF,
+            data[offset + 4].toInt() and 0xFF,
+            data[offset + 5].toInt() and 0xFF
+        )
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.follower.detection
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+/**
+ * [ContinuityIndex.nearest] as documented: closest RSSI first, and among
+ * equally close entries the one that disappeared first, on either side.
+ */
+class ContinuityIndexTest {
+
+    private companion object {
+        const val WINDOW_MS = 30_000L
+        const val THRESHOLD_DBM = 8
+        const val NOW = 1_700_000_000_000L
+    }
+
+    @Test
+    fun equalDistanceAboveWinsWhenItDisappearedFirst() {
+        val index = ContinuityIndex(WINDOW_MS, THRESHOLD_DBM)
+        index.add("below", -63, NOW - 1_000, "ble_1")
+        index.add("above", -57, NOW - 5_000, "ble_2")
+        assertEquals("above", index.nearest(-60, NOW)?.macAddress)
+    }
+
+    @Test
+    fun equalDistanceBelowWinsWhenItDisappearedFirst() {
+        val index = ContinuityIndex(WINDOW_MS, THRESHOLD_DBM)
+        index.add("above", -57, NOW - 1_000, "ble_1")
+        index.add("below", -63, NOW - 5_000, "ble_2")
+        assertEquals("below", index.nearest(-60, NOW)?.macAddress)
+    }
+
+    @Test
+    fun closerRssiBeatsEarlierDisappearance() {
+        val index = ContinuityIndex(WINDOW_MS, THRESHOLD_DBM)
+        index.add("far", -66, NOW - 20_000, "ble_1")
+        index.add("near", -58, NOW - 1_000, "ble_2")
+        assertEquals("near", index.nearest(-60, NOW)?.macAddress)
+    }
+
+    @Test
+    fun ignoresEntriesOutsideWindowAndThreshold() {
+        val index = ContinuityIndex(WINDOW_MS, THRESHOLD_DBM)
+        index.add("stale", -60, NOW - WINDOW_MS - 1, "ble_1")
+        index.add("weak", -60 - THRESHOLD_DBM - 1, NOW - 1_000, "ble_2")
+        assertNull(index.nearest(-60, NOW))
+    }
+}
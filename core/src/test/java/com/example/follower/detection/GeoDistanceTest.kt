@@ -0,0 +1,103 @@
+package com.example.follower.detection
+
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import kotlin.math.abs
+import kotlin.math.cos
+import kotlin.math.sin
+
+/**
+ * The accuracy bounds documented on [GeoDistance], checked against
+ * [GeoDistance.vincentyMeters] over a latitude × longitude × bearing ×
+ * distance grid that reaches ±80° and straddles the antimeridian.
+ */
+class GeoDistanceTest {
+
+    private companion object {
+        const val METERS_PER_DEG = 111_000.0
+
+        /** Fast path: 0.05 % + 1 cm. */
+        const val FAST_RELATIVE_ERROR = 0.0005
+        const val FAST_ABSOLUTE_ERROR_METERS = 0.01
+
+        /** Haversine fallback: 0.6 %. */
+        const val HAVERSINE_RELATIVE_ERROR = 0.006
+
+        val LATITUDES = (-80..80 step 10).map { it.toDouble() } + listOf(-79.999, 79.999)
+
+        /** Includes points a few metres either side of ±180°. */
+        val LONGITUDES = listOf(-179.9999, -179.99, -120.0, -0.0005, 0.0, 45.0, 179.99, 179.9999)
+
+        val BEARINGS = (0 until 360 step 15).map { Math.toRadians(it.toDouble()) }
+
+        /** Kept under [GeoDistance.FAST_PATH_MAX_METERS] after the spherical offset. */
+        val FAST_DISTANCES = listOf(0.5, 1.0, 10.0, 100.0, 500.0, 950.0)
+
+        val LONG_DISTANCES = listOf(1_100.0, 10_000.0, 100_000.0, 1_000_000.0, 5_000_000.0)
+    }
+
+    private class Points(val lat1: Double, val lon1: Double, val lat2: Double, val lon2: Double)
+
+    /** Every grid origin offset by each distance along each bearing, wrapped into [-180, 180]. */
+    private fun grid(distances: List<Double>): List<Points> {
+        val pairs = ArrayList<Points>()
+        for (lat in LATITUDES) for (lon in LONGITUDES) for (bearing in BEARINGS) for (meters in distances) {
+            val lat2 = lat + meters * cos(bearing) / METERS_PER_DEG
+            var lon2 = lon + meters * sin(bearing) / (METERS_PER_DEG * cos(Math.toRadians(lat)))
+            if (lat2 !in -89.0..89.0) continue
+            while (lon2 > 180.0) lon2 -= 360.0
+            while (lon2 < -180.0) lon2 += 360.0
+            pairs += Points(lat, lon, lat2, lon2)
+        }
+        return pairs
+    }
+
+    private fun assertWithin(name: String, p: Points, actual: Float, reference: Float, bound: Double) {
+        assertTrue(
+            "$name(${p.lat1}, ${p.lon1} → ${p.lat2}, ${p.lon2}) = $actual, Vincenty $reference",
+            abs(actual.toDouble() - reference) <= bound
+        )
+    }
+
+    @Test
+    fun fastPathWithinDocumentedBound() {
+        val pairs = grid(FAST_DISTANCES)
+        assertTrue(pairs.any { abs(it.lon1 - it.lon2) > 180.0 })
+
+        for (p in pairs) {
+            val reference = GeoDistance.vincentyMeters(p.lat1, p.lon1, p.lat2, p.lon2)
+            assertTrue(reference <= GeoDistance.FAST_PATH_MAX_METERS)
+            val bound = reference * FAST_RELATIVE_ERROR + FAST_ABSOLUTE_ERROR_METERS
+
+            assertWithin("meters", p, GeoDistance.meters(p.lat1, p.lon1, p.lat2, p.lon2), reference, bound)
+            val scaled = GeoDistance.metersScaled(
+                p.lat2, p.lon2, p.lat1, p.lon1,
+                GeoDistance.metersPerDegLat(p.lat1), GeoDistance.metersPerDegLon(p.lat1)
+            )
+            assertWithin("metersScaled", p, scaled, reference, bound)
+        }
+    }
+
+    @Test
+    fun haversineWithinDocumentedBound() {
+        val pairs = grid(FAST_DISTANCES + LONG_DISTANCES)
+        assertTrue(pairs.any { abs(it.lon1 - it.lon2) > 180.0 })
+
+        for (p in pairs) {
+            val reference = GeoDistance.vincentyMeters(p.lat1, p.lon1, p.lat2, p.lon2)
+            val bound = reference * HAVERSINE_RELATIVE_ERROR
+            assertWithin("haversineMeters", p, GeoDistance.haversineMeters(p.lat1, p.lon1, p.lat2, p.lon2), reference, bound)
+            if (reference > GeoDistance.FAST_PATH_MAX_METERS) {
+                assertWithin("meters", p, GeoDistance.meters(p.lat1, p.lon1, p.lat2, p.lon2), reference, bound)
+            }
+        }
+    }
+
+    @Test
+    fun antimeridianIsShortWayRound() {
+        val across = GeoDistance.meters(0.0, 179.9995, 0.0, -179.9995)
+        val reference = GeoDistance.vincentyMeters(0.0, 179.9995, 0.0, -179.9995)
+        assertTrue("across = $across, Vincenty $reference", abs(across - reference) <= reference * FAST_RELATIVE_ERROR + FAST_ABSOLUTE_ERROR_METERS)
+        assertTrue(reference in 100f..120f)
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.follower.detection
+
+import com.example.follower.data.model.DetectedDevice
+import com.example.follower.data.model.DeviceSighting
+import com.example.follower.data.model.DeviceType
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+import kotlin.math.abs
+
+/**
+ * Differential test: the incremental accumulators must score exactly what
+ * the batch path scores over the same growing window, and within
+ * [IncrementalSuspicionState]'s stated tolerances once sightings expire out
+ * of it.
+ */
+class IncrementalSuspicionStateTest {
+
+
+    private object Config : SuspicionConfig {
+        override val locationClusterThresholdMeters = 500f
+        override val streakGapThresholdMinutes = 10
+        override val lowThreshold = 30
+        override val highThreshold = 61
+        override val movementCorrelationWindowMinutes = 5
+    }
+
+    private companion object {
+        const val BASE_TIME = 1_700_000_000_000L
+        const val WINDOW_MS = 3 * 60 * 60_000L
+        const val METERS_PER_DEG = 111_000.0
+    }
+
+    @Test
+    fun matchesBatchWithoutExpiry() {
+        for (seed in 1L..50L) {
+            val sightings = randomTrack(Random(seed), 300)
+            val state = IncrementalSuspicionState.from(Config)
+            val calculator = SuspicionCalculator(Config, Clock { sightings.last().timestamp })
+            for ((i, s) in sightings.withIndex()) {
+                assertTrue(state.append(s))
+                assertSame(seed, calculator, sightings.subList(0, i + 1), state)
+            }
+        }
+    }
+
+    @Test
+    fun matchesBatchAcrossExpiry() {
+        for (seed in 1L..50L) {
+            val random = Random(seed)
+            val sightings = randomTrack(random, 600)
+            val state = IncrementalSuspicionState.from(Config)
+            var now = BASE_TIME
+            val calculator = SuspicionCalculator(Config, Clock { now })
+            var appended = 0
+            while (appended < sightings.size) {
+                // Append a burst, then slide the window and compare
+                val burst = 1 + random.nextInt(20)
+                repeat(burst) {
+                    if (appended < sightings.size) assertTrue(state.append(sightings[appended++]))
+                }
+                now = sightings[appended - 1].timestamp
+                val cutoff = now - WINDOW_MS
+                state.expireBefore(cutoff)
+                val window = sightings.subList(0, appended).filter { it.timestamp >= cutoff }
+                assertWithinTolerance(seed, calculator, window, state)
+            }
+        }
+    }
+
+    @Test
+    fun tightClustersAcrossExpiry() {
+        // A small threshold relative to the step size forms and splits many
+        // clusters, so expired seeds change the clustering most
+        val tight = object : SuspicionConfig by Config {
+            override val locationClusterThresholdMeters = 120f
+        }
+        for (seed in 100L..130L) {
+            val random = Random(seed)
+            val sightings = randomTrack(random, 400)
+            val state = IncrementalSuspicionState.from(tight)
+            var now = BASE_TIME
+            val calculator = SuspicionCalculator(tight, Clock { now })
+            for ((i, s) in sightings.withIndex()) {
+                assertTrue(state.append(s))
+                now = s.timestamp
+                val cutoff = now - WINDOW_MS / 4
+                state.expireBefore(cutoff)
+                val window = sightings.subList(0, i + 1).filter { it.timestamp >= cutoff }
+                assertWithinTolerance(seed, calculator, window, state)
+            }
+        }
+    }
+
+    @Test
+    fun rejectsOutOfOrderSighting() {
+        val state = IncrementalSuspicionState.from(Config)
+        assertTrue(state.append(sighting(BASE_TIME + 60_000L, 51.5, -0.12, -60)))
+        assertEquals(false, state.append(sighting(BASE_TIME, 51.5, -0.12, -60)))
+        assertEquals(1, state.sightingCount)
+    }
+
+    // ---- Helpers ---------------------------------------------------------------------
+
+    private fun assertSame(
+        seed: Long,
+        calculator: SuspicionCalculator,
+        window: List<DeviceSighting>,
+        state: IncrementalSuspicionState
+    ) {
+        val device = device(window.lastOrNull()?.timestamp ?: BASE_TIME)
+        val batch = calculator.calculate(device, window)
+        val incremental = calculator.calculate(device, state)
+        assertEquals("seed $seed, ${window.size} sightings", batch, incremental)
+    }
+
+    /**
+     * Expiry may shift cluster-dependent inputs within the stated tolerances, never
+     * the exact ones: duration, RSSI and the static penalty.
+     */
+    private fun assertWithinTolerance(
+        seed: Long,
+        calculator: SuspicionCalculator,
+        window: List<DeviceSighting>,
+        state: IncrementalSuspicionState
+    ) {
+        val device = device(window.lastOrNull()?.timestamp ?: BASE_TIME)
+        val batch = calculator.calculate(device, window)
+        val incremental = calculator.calculate(device, state)
+        val message = "seed $seed, ${window.size} sightings: $batch vs $incremental"
+        assertEquals(message, batch.durationFactor, incremental.durationFactor, 0f)
+        assertEquals(message, batch.totalExposureMinutes, incremental.totalExposureMinutes, 0f)
+        assertEquals(message, batch.longestStreakMinutes, incremental.longestStreakMinutes, 0f)
+        assertEquals(message, batch.rssiModifier, incremental.rssiModifier, 0f)
+        assertTrue(
+            message,
+            abs(batch.distinctLocationCount - incremental.distinctLocationCount) <=
+                IncrementalSuspicionState.LOCATION_TOLERANCE
+        )
+        assertEquals(
+            message,
+            batch.patternFactor,
+            incremental.patternFactor,
+            IncrementalSuspicionState.PATTERN_TOLERANCE
+        )
+        assertTrue(
+            message,
+            abs(batch.totalScore - incremental.totalScore) <= IncrementalSuspicionState.SCORE_TOLERANCE
+        )
+    }
+
+    /**
+     * A walk that alternates dwelling, moving and dropping out: steps of
+     * 0-900 m, gaps from seconds up to past the streak gap, and repeated
+     * timestamps now and then.
+     */
+    private fun randomTrack(random: Random, count: Int): List<DeviceSighting> {
+        var lat = 51.5
+        var lon = -0.12
+        var t = BASE_TIME
+        return List(count) {
+            when (random.nextInt(10)) {
+                0 -> t += (11 + random.nextInt(60)) * 60_000L
+                1 -> {}
+                else -> t += (5 + random.nextInt(180)) * 1000L
+            }
+            if (random.nextInt(3) == 0) {
+                val step = random.nextDouble() * 900.0
+                val bearing = random.nextDouble() * 2 * Math.PI
+                lat += step * Math.cos(bearing) / METERS_PER_DEG
+                lon += step * Math.sin(bearing) / (METERS_PER_DEG * Math.cos(Math.toRadians(lat)))
+            }
+            sighting(t, lat, lon, -90 + random.nextInt(50))
+        }
+    }
+
+    private fun sighting(timestamp: Long, lat: Double, lon: Double, rssi: Int) = DeviceSighting(
+        deviceMacAddress = "AA:BB:CC:DD:EE:FF",
+        timestamp = timestamp,
+        latitude = lat,
+        longitude = lon,
+        locationAccuracy = 10f,
+        rssi = rssi,
+        deviceType = DeviceType.BLUETOOTH_LE
+    )
+
+    private fun device(lastSeen: Long) = DetectedDevice(
+        macAddress = "AA:BB:CC:DD:EE:FF",
+        deviceType = DeviceType.BLUETOOTH_LE,
+        firstSeenTimestamp = BASE_TIME,
+        lastSeenTimestamp = lastSeen
+    )
+}
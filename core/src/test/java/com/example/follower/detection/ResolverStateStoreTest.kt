@@ -0,0 +1,120 @@
+package com.example.follower.detection
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.io.RandomAccessFile
+import java.nio.file.Files
+
+/**
+ * [ResolverStateStore] round trips: fingerprint IDs keep all 128 bits
+ * through the snapshot and the log; a damaged snapshot is rejected before
+ * its mapping count is trusted, and restarts the counter above anything it
+ * may have reserved.
+ */
+class ResolverStateStoreTest {
+
+    private companion object {
+        const val MAC_A = "C0:00:00:00:00:01"
+        const val MAC_B = "C0:00:00:00:00:02"
+        const val MAC_C = "c0-00-00-00-00-03"
+    }
+
+    private lateinit var dir: File
+    private val clock = ManualClock(1_700_000_000_000L)
+
+    @Before
+    fun setUp() {
+        dir = Files.createTempDirectory("resolver-store").toFile()
+    }
+
+    @After
+    fun tearDown() {
+        dir.deleteRecursively()
+    }
+
+    private fun reload(): Map<String, String> {
+        val restored = LinkedHashMap<String, String>()
+        ResolverStateStore(dir, clock).apply {
+            load { mac, id -> restored[mac] = id }
+            close()
+        }
+        return restored
+    }
+
+    @Test
+    fun fingerprintIdsKeepBothHalves() {
+        val a = ResolverStateStore.fingerprintId(0x0123456789ABCDEFL, 1L)
+        val b = ResolverStateStore.fingerprintId(0x0123456789ABCDEFL, -1L)
+        assertNotEquals(a, b)
+        assertEquals("ble_fp_0123456789abcdef0000000000000001", a)
+
+        val store = ResolverStateStore(dir, clock)
+        store.load { _, _ -> }
+        store.compact(5L, 1) { emit -> emit(MAC_A, a) }
+        store.appendMapping(MAC_B, b)
+        store.appendMapping(MAC_C, ResolverStateStore.counterId(4L))
+        store.close()
+
+        assertEquals(mapOf(MAC_A to a, MAC_B to b, MAC_C to "ble_4"), reload())
+    }
+
+    /** Snapshot of two mappings with counter reservations up to [bound], and a fresh log. */
+    private fun writeSnapshot(bound: Long) {
+        ResolverStateStore(dir, clock).apply {
+            load { _, _ -> }
+            compact(bound, 2) { emit ->
+                emit(MAC_A, ResolverStateStore.counterId(1L))
+                emit(MAC_B, ResolverStateStore.counterId(2L))
+            }
+            close()
+        }
+    }
+
+    @Test
+    fun hugeMappingCountIsRejectedBeforeAllocating() {
+        writeSnapshot(bound = 3L)
+        // Header is 5 bytes, then idBound (1 byte), then the count varint
+        RandomAccessFile(File(dir, ResolverStateStore.SNAPSHOT_FILE), "rw").use { file ->
+            file.seek(6)
+            file.write(byteArrayOf(0xFF.toByte(), 0xFF.toByte(), 0xFF.toByte(), 0xFF.toByte(), 0x07))
+        }
+
+        val store = ResolverStateStore(dir, clock)
+        val loaded = store.load { _, _ -> }
+        store.close()
+        assertEquals(0, loaded.mappings)
+    }
+
+    @Test
+    fun damagedSnapshotSeedsCounterAboveReservations() {
+        writeSnapshot(bound = 5_000L)
+        val snapshot = File(dir, ResolverStateStore.SNAPSHOT_FILE)
+        RandomAccessFile(snapshot, "rw").use { file ->
+            file.seek(file.length() - 1)
+            val last = file.read()
+            file.seek(file.length() - 1)
+            file.write(last xor 0xFF)
+        }
+
+        val store = ResolverStateStore(dir, clock)
+        val loaded = store.load { _, _ -> }
+        store.close()
+        assertEquals(0, loaded.mappings)
+        assertTrue("idBound ${loaded.idBound}", loaded.idBound >= clock.now())
+    }
+
+    @Test
+    fun intactStateKeepsItsCounter() {
+        writeSnapshot(bound = 5_000L)
+        val store = ResolverStateStore(dir, clock)
+        val loaded = store.load { _, _ -> }
+        store.close()
+        assertEquals(2, loaded.mappings)
+        assertEquals(5_000L, loaded.idBound)
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.follower.trace
+
+import com.example.follower.data.model.DeviceType
+import com.example.follower.data.model.ScanResult
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+
+/**
+ * Round trip through [ScanTraceRecorder] and [ScanTraceReader]: every field
+ * survives (coordinates to 1e-7°), timestamps may run backwards, and a
+ * trace cut off mid-record ends cleanly at the last whole record.
+ */
+class ScanTraceFormatTest {
+
+    private companion object {
+        const val BASE_TIME = 1_700_000_000_000L
+        const val E7_TOLERANCE = 1e-7
+    }
+
+    private val full = ScanResult(
+        macAddress = "5A:11:22:33:44:55",
+        deviceType = DeviceType.BLUETOOTH_LE,
+        deviceName = "Tag ü",
+        rssi = -71,
+        timestamp = BASE_TIME,
+        latitude = 51.5007292,
+        longitude = -0.1246254,
+        locationAccuracy = 12.5f,
+        bluetoothClass = 0x1F00,
+        bondState = 10,
+        manufacturerData = byteArrayOf(0x4C, 0x00, 0x12, 0x19, -1),
+        serviceUuids = listOf("0000fd44-0000-1000-8000-00805f9b34fb"),
+        txPowerLevel = -12,
+        advertisingInterval = 2_000
+    )
+
+    private val wifi = ScanResult(
+        // Lower case stays on the string path so it round-trips verbatim
+        macAddress = "a4:2b:b0:01:02:03",
+        deviceType = DeviceType.WIFI_PROBE_REQUEST,
+        rssi = -88,
+        timestamp = BASE_TIME - 1_500,
+        latitude = -33.8567844,
+        longitude = 151.2152967,
+        locationAccuracy = 30f,
+        ssid = "cafe",
+        channel = 6,
+        frequency = 2437,
+        isProbeRequest = true,
+        probedSsids = listOf("home", "work"),
+        rawFrameData = byteArrayOf(0x40, 0x00)
+    )
+
+    private fun record(block: ScanTraceRecorder.() -> Unit): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        ScanTraceRecorder(bytes).use(block)
+        return bytes.toByteArray()
+    }
+
+    private fun read(bytes: ByteArray): List<TraceEvent> =
+        ScanTraceReader(ByteArrayInputStream(bytes)).use { it.events().toList() }
+
+    private fun assertSameResult(expected: ScanResult, actual: ScanResult) {
+        assertEquals(expected.macAddress, actual.macAddress)
+        assertEquals(expected.deviceType, actual.deviceType)
+        assertEquals(expected.deviceName, actual.deviceName)
+        assertEquals(expected.rssi, actual.rssi)
+        assertEquals(expected.timestamp, actual.timestamp)
+        assertEquals(expected.latitude, actual.latitude, E7_TOLERANCE)
+        assertEquals(expected.longitude, actual.longitude, E7_TOLERANCE)
+        assertEquals(expected.locationAccuracy, actual.locationAccuracy, 0f)
+        assertEquals(expected.ssid, actual.ssid)
+        assertEquals(expected.channel, actual.channel)
+        assertEquals(expected.frequency, actual.frequency)
+        assertEquals(expected.bluetoothClass, actual.bluetoothClass)
+        assertEquals(expected.bondState, actual.bondState)
+        assertArrayEquals(expected.manufacturerData, actual.manufacturerData)
+        assertEquals(expected.serviceUuids, actual.serviceUuids)
+        assertEquals(expected.txPowerLevel, actual.txPowerLevel)
+        assertEquals(expected.advertisingInterval, actual.advertisingInterval)
+        assertEquals(expected.isProbeRequest, actual.isProbeRequest)
+        assertEquals(expected.probedSsids, actual.probedSsids)
+        assertArrayEquals(expected.rawFrameData, actual.rawFrameData)
+    }
+
+    @Test
+    fun roundTripsEveryField() {
+        val bytes = record {
+            recordLocation(51.5007292, -0.1246254, 12.5f, BASE_TIME - 10_000)
+            recordScan(full)
+            recordScan(wifi)
+            recordLocation(51.5010000, -0.1240000, 8f, BASE_TIME + 60_000)
+        }
+
+        val events = read(bytes)
+        assertEquals(4, events.size)
+        val first = events[0] as TraceEvent.LocationFix
+        assertEquals(BASE_TIME - 10_000, first.timestamp)
+        assertEquals(51.5007292, first.latitude, E7_TOLERANCE)
+        assertEquals(12.5f, first.accuracy, 0f)
+        assertSameResult(full, (events[1] as TraceEvent.Scan).result)
+        assertSameResult(wifi, (events[2] as TraceEvent.Scan).result)
+        assertEquals(BASE_TIME + 60_000, events[3].timestamp)
+    }
+
+    @Test
+    fun truncatedTraceStopsAtLastWholeRecord() {
+        val bytes = record {
+            recordScan(full)
+            recordScan(full.copy(timestamp = BASE_TIME + 1_000))
+        }
+        val wholeFirst = record { recordScan(full) }.size
+
+        for (cut in wholeFirst until bytes.size) {
+            val events = read(bytes.copyOf(cut))
+            assertEquals("cut at $cut", 1, events.size)
+        }
+        assertEquals(2, read(bytes).size)
+    }
+
+    @Test
+    fun rejectsForeignHeader() {
+        val bytes = record { recordScan(full) }
+        bytes[0] = 'X'.code.toByte()
+        val error = runCatching { read(bytes) }.exceptionOrNull()
+        assertTrue(error is IOException)
+    }
+
+    @Test
+    fun emptyTraceHasNoEvents() {
+        val reader = ScanTraceReader(ByteArrayInputStream(record { }))
+        assertNull(reader.next())
+        assertNull(reader.next())
+    }
+}
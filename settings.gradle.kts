@@ -16,3 +16,4 @@ dependencyResolutionManagement {
 
 rootProject.name = "Follower"
 include(":app")
+include(":core")